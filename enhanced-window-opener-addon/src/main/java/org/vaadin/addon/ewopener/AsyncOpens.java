@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.vaadin.server.Resource;
+
+/**
+ * Resources being computed in background for an opener, whose completions are collected
+ * so that many of them are delivered to the UI in a single access.
+ */
+final class AsyncOpens {
+
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private final List<Resource> resources = new ArrayList<>();
+    private final List<Throwable> failures = new ArrayList<>();
+    private boolean scheduled;
+
+    /**
+     * Tracks a resource being computed.
+     *
+     * @param pending  the resource being computed
+     * @param schedule invoked when a completion needs to be delivered, with this object,
+     *                 at most once until {@link #drain(List, List)} is called
+     */
+    void track(CompletableFuture<? extends Resource> pending, Consumer<AsyncOpens> schedule) {
+        inFlight.add(pending);
+        pending.whenComplete((resource, failure) -> {
+            if (pending.isCancelled()) {
+                inFlight.remove(pending);
+                return;
+            }
+            if (failure instanceof CompletionException && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            boolean first = completed(resource, failure);
+            // removed once collected, so the opens are never seen as idle before delivery
+            inFlight.remove(pending);
+            if (first) {
+                schedule.accept(this);
+            }
+        });
+    }
+
+    private synchronized boolean completed(Resource resource, Throwable failure) {
+        if (failure == null) {
+            resources.add(resource);
+        } else {
+            failures.add(failure);
+        }
+        boolean schedule = !scheduled;
+        scheduled = true;
+        return schedule;
+    }
+
+    /**
+     * Moves the collected completions to the given lists.
+     *
+     * @param resources the list to fill with the computed resources, possibly {@literal null}
+     * @param failures  the list to fill with the failures
+     */
+    synchronized void drain(List<Resource> resources, List<Throwable> failures) {
+        resources.addAll(this.resources);
+        failures.addAll(this.failures);
+        this.resources.clear();
+        this.failures.clear();
+        scheduled = false;
+    }
+
+    /**
+     * Tells whether there are no computations in progress and no completions waiting to be delivered.
+     *
+     * @return {@literal true} if there is nothing left to deliver
+     */
+    synchronized boolean isIdle() {
+        return inFlight.isEmpty() && !scheduled;
+    }
+
+    /**
+     * Cancels the computations in progress and discards the collected completions.
+     */
+    void cancel() {
+        for (CompletableFuture<?> pending : inFlight) {
+            // tasks not yet started will not run
+            pending.cancel(false);
+        }
+        drain(new ArrayList<>(), new ArrayList<>());
+    }
+}
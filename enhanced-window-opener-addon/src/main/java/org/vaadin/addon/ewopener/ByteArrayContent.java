@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * {@link MaterializedContent} held in memory.
+ */
+final class ByteArrayContent implements MaterializedContent {
+
+    private final byte[] bytes;
+    private final int length;
+    private volatile String digest;
+
+    ByteArrayContent(byte[] bytes, int length) {
+        this.bytes = bytes;
+        this.length = length;
+    }
+
+    @Override
+    public long size() {
+        return length;
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new ByteArrayInputStream(bytes, 0, length);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    @Override
+    public void writeTo(OutputStream out, long offset, long length) throws IOException {
+        out.write(bytes, (int) offset, (int) length);
+    }
+
+    @Override
+    public String getDigest() {
+        if (digest == null) {
+            MessageDigest messageDigest = MaterializedContent.newDigest();
+            messageDigest.update(bytes, 0, length);
+            digest = MaterializedContent.toHex(messageDigest.digest());
+        }
+        return digest;
+    }
+}
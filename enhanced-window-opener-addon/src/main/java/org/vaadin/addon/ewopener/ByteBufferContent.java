@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * {@link MaterializedContent} held in a {@link ByteBuffer}, for example a direct or memory-mapped buffer.
+ *
+ * The bytes between the position and the limit of the buffer, when the content is created, are the content;
+ * they are only read through duplicates of the buffer and must not be changed while the content is used.
+ * Heap buffers are written with a single call on their backing array; other buffers are handed over
+ * to the servlet container when it supports it, see {@link ContainerTransfer}, or copied to the response
+ * stream through a channel.
+ */
+final class ByteBufferContent implements MaterializedContent {
+
+    private final ByteBuffer buffer;
+    private volatile String digest;
+
+    ByteBufferContent(ByteBuffer buffer) {
+        // duplicated so that position and limit of the given buffer could change without affecting the content
+        this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public long size() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public InputStream openStream() {
+        ByteBuffer source = buffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return source.hasRemaining() ? source.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!source.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(len, source.remaining());
+                source.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return source.remaining();
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, 0, size());
+    }
+
+    @Override
+    public void writeTo(OutputStream out, long offset, long length) throws IOException {
+        ByteBuffer source = slice(offset, length);
+        if (source.hasArray()) {
+            out.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+            return;
+        }
+        WritableByteChannel target = Channels.newChannel(out);
+        while (source.hasRemaining()) {
+            target.write(source);
+        }
+    }
+
+    @Override
+    public String getDigest() {
+        if (digest == null) {
+            MessageDigest messageDigest = MaterializedContent.newDigest();
+            messageDigest.update(buffer.duplicate());
+            digest = MaterializedContent.toHex(messageDigest.digest());
+        }
+        return digest;
+    }
+
+    ByteBuffer slice(long offset, long length) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(source.position() + (int) offset);
+        source.limit(source.position() + (int) length);
+        return source;
+    }
+}
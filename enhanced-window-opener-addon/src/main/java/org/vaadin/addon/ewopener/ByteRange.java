@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+/**
+ * A single byte range requested through the HTTP {@code Range} header.
+ *
+ * Only single ranges are supported; requests for multiple ranges are served
+ * with the whole content, as allowed by RFC 7233.
+ */
+final class ByteRange {
+
+    /**
+     * Marker for a range that cannot be satisfied by the content.
+     */
+    static final ByteRange UNSATISFIABLE = new ByteRange(-1, 0);
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long start;
+    private final long length;
+
+    private ByteRange(long start, long length) {
+        this.start = start;
+        this.length = length;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return start + length - 1;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Parses the value of a {@code Range} header.
+     *
+     * @param header the value of the header, may be {@literal null}
+     * @param size   the size of the content
+     * @return the requested range, {@link #UNSATISFIABLE} if the range cannot be satisfied, or
+     * {@literal null} if the header is missing, malformed or requests multiple ranges.
+     */
+    static ByteRange parse(String header, long size) {
+        if (header == null || !header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        String spec = header.substring(BYTES_UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (!first.isEmpty() && !isDigits(first) || !last.isEmpty() && !isDigits(last)) {
+                return null;
+            }
+            if (first.isEmpty()) {
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                long length = Math.min(suffixLength, size);
+                return new ByteRange(size - length, length);
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (end < start) {
+                return null;
+            }
+            if (start >= size) {
+                return UNSATISFIABLE;
+            }
+            return new ByteRange(start, Math.min(end, size - 1) - start + 1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return !value.isEmpty();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+/**
+ * Tells a content generator whether the content it is producing is still wanted.
+ *
+ * A generation is cancelled when writing to the client fails, when the window opened for it is
+ * closed before content is received, or when the UI of the opener is detached.
+ * Writes to the stream of a cancelled generation throw {@link GenerationCancelledException}
+ * and the thread running the generator is interrupted; generators that spend long time without
+ * writing, as while waiting for a database, should check the token from time to time:
+ *
+ * <pre>{@code
+ * opener.withStreamingContent("export.csv", out -> {
+ *     CancellationToken cancellation = CancellationToken.current();
+ *     try (ResultSet rows = query()) {
+ *         while (rows.next()) {
+ *             cancellation.throwIfCancelled();
+ *             writeRow(out, rows);
+ *         }
+ *     }
+ * });
+ * }</pre>
+ */
+@FunctionalInterface
+public interface CancellationToken {
+
+    /**
+     * Gets whether the generation has been cancelled.
+     *
+     * @return true if the generation has been cancelled, otherwise false.
+     */
+    boolean isCancelled();
+
+    /**
+     * Stops the generation if it has been cancelled.
+     *
+     * @throws GenerationCancelledException if the generation has been cancelled
+     */
+    default void throwIfCancelled() throws GenerationCancelledException {
+        if (isCancelled()) {
+            throw new GenerationCancelledException("Generation cancelled");
+        }
+    }
+
+    /**
+     * Gets the token of the generation running on the current thread.
+     *
+     * @return the token of the current generation, or a token never cancelled
+     * if no generation is running.
+     */
+    static CancellationToken current() {
+        return GenerationTask.current();
+    }
+}
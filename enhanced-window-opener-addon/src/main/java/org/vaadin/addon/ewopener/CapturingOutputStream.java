@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An {@link OutputStream} that writes through to the target stream keeping a copy
+ * of the written bytes in a {@link ContentBuffer}, as long as they do not exceed a given limit.
+ */
+class CapturingOutputStream extends FilterOutputStream {
+
+    private final long limit;
+    private ContentBuffer capture;
+
+    CapturingOutputStream(OutputStream out, ContentBuffer capture, long limit) {
+        super(out);
+        this.capture = capture;
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        if (ensureCapacity(1)) {
+            capture.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        if (ensureCapacity(len)) {
+            capture.write(b, off, len);
+        }
+    }
+
+    /**
+     * Gets the captured content.
+     *
+     * @return the captured content, or {@literal null} if the written bytes exceeded the limit.
+     * @throws IOException if the captured content cannot be completed
+     */
+    MaterializedContent getCaptured() throws IOException {
+        return capture == null ? null : capture.toContent();
+    }
+
+    /**
+     * Discards the captured content.
+     */
+    void discard() {
+        if (capture != null) {
+            capture.discard();
+            capture = null;
+        }
+    }
+
+    private boolean ensureCapacity(int len) {
+        if (capture != null && capture.size() + (long) len > limit) {
+            discard();
+        }
+        return capture != null;
+    }
+}
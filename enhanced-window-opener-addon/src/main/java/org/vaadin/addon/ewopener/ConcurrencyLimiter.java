@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vaadin.server.VaadinSession;
+
+/**
+ * Limits the number of content generations running at the same time.
+ *
+ * Generations over the limit wait in a fair queue up to the queue timeout of the opener;
+ * if no slot frees up in time, the download is answered with {@code 503 Service Unavailable}.
+ * An instance is thread safe and could be shared by many openers and sessions,
+ * for example to bound the generations running on the whole node.
+ *
+ * <pre>{@code
+ * static final ConcurrencyLimiter EXPORTS = new ConcurrencyLimiter(8);
+ * ...
+ * new EnhancedBrowserWindowOpener()
+ *     .withConcurrencyLimiter(EXPORTS)
+ *     .withConcurrencyLimits(2, 0)
+ *     .withGeneratedContent("report.pdf", this::makeReport)
+ * }</pre>
+ */
+public class ConcurrencyLimiter implements Serializable {
+
+    private final int maxConcurrent;
+    private final Semaphore semaphore;
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates a new limiter.
+     *
+     * @param maxConcurrent the maximum number of generations running at the same time
+     */
+    public ConcurrencyLimiter(int maxConcurrent) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be greater than zero");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.semaphore = new Semaphore(maxConcurrent, true);
+    }
+
+    static ConcurrencyLimiter forSession(VaadinSession session, int maxConcurrent) {
+        SessionLimiters limiters = session.getAttribute(SessionLimiters.class);
+        if (limiters == null) {
+            limiters = new SessionLimiters();
+            session.setAttribute(SessionLimiters.class, limiters);
+        }
+        return limiters.get(maxConcurrent);
+    }
+
+    boolean tryAcquire(long timeoutNanos) throws InterruptedException {
+        // the timed variant honors fairness, an untimed tryAcquire would overtake queued generations
+        if (semaphore.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            return true;
+        }
+        if (timeoutNanos > 0) {
+            queued.incrementAndGet();
+            try {
+                if (semaphore.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    void release() {
+        semaphore.release();
+    }
+
+    /**
+     * Gets the maximum number of generations running at the same time.
+     *
+     * @return the maximum number of generations running at the same time
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Gets the number of generations currently running.
+     *
+     * @return the number of generations currently running
+     */
+    public int getActive() {
+        return maxConcurrent - semaphore.availablePermits();
+    }
+
+    /**
+     * Gets the number of generations waiting for a slot.
+     *
+     * @return the number of generations waiting for a slot
+     */
+    public long getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the number of generations rejected since the limiter has been created.
+     *
+     * @return the number of rejected generations
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * The limiters of a session, stored as session attribute.
+     *
+     * Limiters are not serialized with the session: permits are held by generations running
+     * on the node, so after deserialization, for example on another node, they are created again.
+     */
+    private static final class SessionLimiters implements Serializable {
+
+        private transient Map<Integer, ConcurrencyLimiter> limiters;
+
+        synchronized ConcurrencyLimiter get(int maxConcurrent) {
+            if (limiters == null) {
+                limiters = new HashMap<>();
+            }
+            return limiters.computeIfAbsent(maxConcurrent, ConcurrencyLimiter::new);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+
+/**
+ * Sends materialized content through the zero-copy facilities of the servlet container, when available.
+ *
+ * On Tomcat, with a connector supporting sendfile, files are handed over through the
+ * {@code org.apache.tomcat.sendfile.*} request attributes and sent by the container after the request
+ * has been processed. On Jetty, files are mapped in memory and, as direct buffers, passed to
+ * {@code HttpOutput.sendContent(ByteBuffer)}, which writes them to the socket without heap copies.
+ * Elsewhere content is copied to the response stream.
+ */
+final class ContainerTransfer {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final ClassValue<Optional<Method>> SEND_CONTENT = new ClassValue<Optional<Method>>() {
+        @Override
+        protected Optional<Method> computeValue(Class<?> type) {
+            try {
+                return Optional.of(type.getMethod("sendContent", ByteBuffer.class));
+            } catch (NoSuchMethodException | SecurityException e) {
+                return Optional.empty();
+            }
+        }
+    };
+
+    private ContainerTransfer() {
+    }
+
+    /**
+     * Sends a part of the content without writing it to the response stream, if the container allows it.
+     *
+     * Headers, including {@code Content-Length}, must have been set; if this method returns
+     * {@literal false} nothing has been sent and the content should be written to the response stream.
+     *
+     * @param request  the download request
+     * @param response the download response
+     * @param content  the content
+     * @param offset   the offset of the part to send
+     * @param length   the length of the part to send
+     * @return true if the content has been sent, or will be sent by the container
+     * @throws IOException if the content cannot be sent
+     */
+    static boolean send(VaadinRequest request, VaadinResponse response, MaterializedContent content,
+                        long offset, long length) throws IOException {
+        if (content instanceof FileContent) {
+            FileContent file = (FileContent) content;
+            // temporary files could be deleted before the container sends them
+            if (!file.isTemporary() && sendFile(request, file, offset, length)) {
+                return true;
+            }
+            OutputStream out = response.getOutputStream();
+            Optional<Method> sendContent = SEND_CONTENT.get(out.getClass());
+            if (sendContent.isPresent() && length <= Integer.MAX_VALUE) {
+                try (FileChannel channel = FileChannel.open(file.getFile(), StandardOpenOption.READ)) {
+                    invoke(sendContent.get(), out, channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+                }
+                return true;
+            }
+        } else if (content instanceof ByteBufferContent) {
+            ByteBuffer buffer = ((ByteBufferContent) content).slice(offset, length);
+            OutputStream out = response.getOutputStream();
+            Optional<Method> sendContent = SEND_CONTENT.get(out.getClass());
+            // heap buffers are already written with a single copy
+            if (buffer.isDirect() && sendContent.isPresent()) {
+                invoke(sendContent.get(), out, buffer);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean sendFile(VaadinRequest request, FileContent file, long offset, long length) {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME, file.getFile().toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START, offset);
+        request.setAttribute(SENDFILE_END, offset + length);
+        return true;
+    }
+
+    private static void invoke(Method sendContent, OutputStream out, ByteBuffer buffer) throws IOException {
+        try {
+            sendContent.invoke(out, buffer);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Content not sent by the container", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException("Content not sent by the container", e);
+        }
+    }
+}
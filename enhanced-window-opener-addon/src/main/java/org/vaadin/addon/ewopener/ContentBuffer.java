@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * An {@link OutputStream} that collects generated content in order to
+ * turn it into {@link MaterializedContent}.
+ *
+ * Content is kept in memory up to a threshold; when the threshold is exceeded
+ * it is moved to a temporary file and further bytes are written to the file.
+ * With a {@link ContentStore} the content is completed into the store, that keeps a single
+ * copy of identical contents.
+ */
+class ContentBuffer extends OutputStream {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final int threshold;
+    private final File directory;
+    private final ContentStore store;
+    private final MessageDigest digest;
+    private byte[] heap;
+    private int count;
+    private Path file;
+    private OutputStream fileOut;
+    private long size;
+
+    /**
+     * Creates a new buffer.
+     *
+     * @param threshold the maximum number of bytes kept in memory
+     * @param directory the directory for the temporary file, or {@literal null} for the default
+     *                  temporary directory
+     */
+    ContentBuffer(int threshold, File directory) {
+        this(threshold, directory, null);
+    }
+
+    /**
+     * Creates a new buffer that completes its content into the given store.
+     *
+     * @param threshold the maximum number of bytes kept in memory
+     * @param directory the directory for the temporary file, or {@literal null} for the default
+     *                  temporary directory
+     * @param store     the store for the completed content, or {@literal null}
+     */
+    ContentBuffer(int threshold, File directory, ContentStore store) {
+        this.threshold = Math.max(0, threshold);
+        this.directory = directory;
+        this.store = store;
+        this.digest = store == null ? null : MaterializedContent.newDigest();
+        this.heap = new byte[Math.min(INITIAL_CAPACITY, this.threshold)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (fileOut == null && count + 1L > threshold) {
+            spill();
+        }
+        if (fileOut == null) {
+            ensureCapacity(1);
+            heap[count++] = (byte) b;
+        } else {
+            fileOut.write(b);
+        }
+        if (digest != null) {
+            digest.update((byte) b);
+        }
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (fileOut == null && count + (long) len > threshold) {
+            spill();
+        }
+        if (fileOut == null) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, heap, count, len);
+            count += len;
+        } else {
+            fileOut.write(b, off, len);
+        }
+        if (digest != null) {
+            digest.update(b, off, len);
+        }
+        size += len;
+    }
+
+    private void ensureCapacity(int len) {
+        if (count + len > heap.length) {
+            heap = Arrays.copyOf(heap, (int) Math.min(threshold, Math.max(heap.length * 2L, count + (long) len)));
+        }
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     *
+     * @return the number of bytes written so far
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Gets whether the content has been moved to a temporary file.
+     *
+     * @return true if the content has been moved to a temporary file, otherwise false.
+     */
+    boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Completes the buffer and gets its content.
+     *
+     * The temporary file, if any, is deleted when the returned content is released;
+     * with a store it is moved into the store, or deleted if the store already has the same content.
+     *
+     * @return the buffered content
+     * @throws IOException if the temporary file cannot be completed
+     */
+    MaterializedContent toContent() throws IOException {
+        close();
+        if (store != null) {
+            return store.store(MaterializedContent.toHex(digest.digest()), heap, count, file, size);
+        }
+        if (file == null) {
+            return new ByteArrayContent(heap, count);
+        }
+        return new FileContent(file, size, true);
+    }
+
+    /**
+     * Discards the buffered content, deleting the temporary file if any.
+     */
+    void discard() {
+        heap = null;
+        try {
+            close();
+        } catch (IOException e) {
+            // content is discarded anyway
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileOut != null) {
+            fileOut.close();
+        }
+    }
+
+    private void spill() throws IOException {
+        file = directory == null
+            ? Files.createTempFile("ewopener-", ".tmp")
+            : Files.createTempFile(directory.toPath(), "ewopener-", ".tmp");
+        fileOut = new BufferedOutputStream(Files.newOutputStream(file), INITIAL_CAPACITY);
+        fileOut.write(heap, 0, count);
+        heap = null;
+        count = 0;
+    }
+}
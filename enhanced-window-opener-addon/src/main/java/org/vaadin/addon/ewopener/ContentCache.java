@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache for generated content, bounded by total size and with a time to live for entries.
+ *
+ * When the size limit is reached the least recently used entries are evicted.
+ * Content larger than the buffer threshold of the opener is stored in temporary files,
+ * that are deleted when the entry is evicted and no download is using it.
+ * An instance is thread safe and could be shared by many openers and sessions;
+ * it is usually created once per application.
+ *
+ * <pre>{@code
+ * static final ContentCache REPORTS = new ContentCache(50 * 1024 * 1024, Duration.ofMinutes(5));
+ * ...
+ * new EnhancedBrowserWindowOpener()
+ *     .withContentCache(REPORTS, "monthly-reports")
+ *     .withGeneratedContent("report.pdf", this::makeReport)
+ * }</pre>
+ */
+public class ContentCache {
+
+    private final long maxSize;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+    private final LinkedHashMap<ContentCacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long size;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize    the maximum size in bytes of the cached content
+     * @param timeToLive the time an entry stays in the cache after it has been added
+     */
+    public ContentCache(long maxSize, Duration timeToLive) {
+        this(maxSize, timeToLive, System::nanoTime);
+    }
+
+    ContentCache(long maxSize, Duration timeToLive, LongSupplier nanoClock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than zero");
+        }
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = Objects.requireNonNull(timeToLive).toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Gets the maximum size in bytes of the cached content.
+     *
+     * @return the maximum size in bytes of the cached content
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the content for the given key.
+     *
+     * The returned content is retained on behalf of the caller, that must
+     * call {@link MaterializedContent#release()} when it is no longer needed.
+     *
+     * @param key the key of the content
+     * @return the cached content, or {@literal null} if it is not in the cache or it is expired
+     */
+    public synchronized MaterializedContent get(ContentCacheKey key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isExpired(nanoClock.getAsLong())) {
+            remove(key);
+            evictions.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.content.retain();
+    }
+
+    /**
+     * Adds content to the cache, evicting least recently used entries if needed.
+     *
+     * Content larger than the cache maximum size is ignored.
+     * The cache retains the content and releases it when it is evicted.
+     *
+     * @param key     the key of the content
+     * @param content the content to cache
+     */
+    public synchronized void put(ContentCacheKey key, MaterializedContent content) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(content);
+        if (content.size() > maxSize) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(content.retain(), nanoClock.getAsLong() + timeToLiveNanos));
+        size += content.size();
+        evict();
+    }
+
+    /**
+     * Removes the content for the given key.
+     *
+     * @param key the key of the content to remove
+     */
+    public synchronized void invalidate(ContentCacheKey key) {
+        remove(key);
+    }
+
+    /**
+     * Removes all the content from the cache.
+     */
+    public synchronized void invalidateAll() {
+        entries.values().forEach(entry -> entry.content.release());
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets a snapshot of the cache statistics.
+     *
+     * @return the cache statistics
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hits.get(), misses.get(), evictions.get(), entries.size(), size);
+    }
+
+    private void remove(ContentCacheKey key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            size -= removed.content.size();
+            removed.content.release();
+        }
+    }
+
+    private void evict() {
+        long now = nanoClock.getAsLong();
+        Iterator<Map.Entry<ContentCacheKey, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (size > maxSize || entry.isExpired(now)) {
+                iterator.remove();
+                size -= entry.content.size();
+                entry.content.release();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final MaterializedContent content;
+        private final long expiresAt;
+
+        private Entry(MaterializedContent content, long expiresAt) {
+            this.content = content;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * Statistics about cache usage.
+     */
+    public static final class Statistics {
+
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int entryCount;
+        private final long size;
+
+        Statistics(long hitCount, long missCount, long evictionCount, int entryCount, long size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.entryCount = entryCount;
+            this.size = size;
+        }
+
+        /**
+         * @return the number of lookups that found content in the cache
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return the number of lookups that did not find content in the cache
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * @return the number of entries removed because expired or to free space
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * @return the number of entries in the cache
+         */
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        /**
+         * @return the size in bytes of the cached content
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the ratio of lookups that found content in the cache, or {@literal 0} if there
+         * were no lookups
+         */
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+                + ", entries=" + entryCount + ", size=" + size + "}";
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Identifies generated content in a {@link ContentCache}.
+ *
+ * A key is made of a namespace, identifying the generator of the content, the resource filename,
+ * the parameters of the download request (that is the parameters set on the opener) and
+ * an optional user supplied key.
+ */
+public final class ContentCacheKey {
+
+    private final String namespace;
+    private final String filename;
+    private final Map<String, List<String>> parameters;
+    private final String userKey;
+
+    /**
+     * Creates a new key.
+     *
+     * @param namespace  the namespace of the content, shared by the openers generating the same content
+     * @param filename   the filename of the resource
+     * @param parameters the parameters of the download request
+     * @param userKey    a user supplied key, or {@literal null}
+     */
+    public ContentCacheKey(String namespace, String filename, Map<String, String[]> parameters, String userKey) {
+        this.namespace = Objects.requireNonNull(namespace, "namespace must not be null");
+        this.filename = filename;
+        Map<String, List<String>> sorted = new TreeMap<>();
+        parameters.forEach((name, values) -> sorted.put(name, values == null
+            ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(Arrays.asList(values)))));
+        this.parameters = Collections.unmodifiableMap(sorted);
+        this.userKey = userKey;
+    }
+
+    /**
+     * Gets the namespace of the content.
+     *
+     * @return the namespace of the content
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Gets the filename of the resource.
+     *
+     * @return the filename of the resource
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Gets the parameters of the download request, sorted by name.
+     *
+     * @return the parameters of the download request
+     */
+    public Map<String, List<String>> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Gets the user supplied key.
+     *
+     * @return the user supplied key, or {@literal null}
+     */
+    public String getUserKey() {
+        return userKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ContentCacheKey that = (ContentCacheKey) o;
+        return namespace.equals(that.namespace)
+            && Objects.equals(filename, that.filename)
+            && parameters.equals(that.parameters)
+            && Objects.equals(userKey, that.userKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(namespace, filename, parameters, userKey);
+    }
+
+    @Override
+    public String toString() {
+        return "ContentCacheKey{namespace='" + namespace + "', filename='" + filename + "', parameters=" + parameters
+            + ", userKey='" + userKey + "'}";
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP content encodings used to compress generated content.
+ */
+enum ContentEncoding {
+
+    GZIP("gzip") {
+        @Override
+        OutputStream wrap(OutputStream out, int level, int bufferSize) throws IOException {
+            return new GZIPOutputStream(out, bufferSize) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+    },
+    DEFLATE("deflate") {
+        @Override
+        OutputStream wrap(OutputStream out, int level, int bufferSize) {
+            Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(out, deflater, bufferSize) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+    };
+
+    private static final String[] INCOMPRESSIBLE_TYPES = {
+        "image/", "video/", "audio/", "font/woff",
+        "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2",
+        "application/x-xz", "application/x-7z-compressed", "application/x-rar-compressed",
+        "application/java-archive", "application/pdf", "application/octet-stream",
+        "application/vnd.openxmlformats-officedocument.", "application/vnd.oasis.opendocument."
+    };
+
+    private final String token;
+
+    ContentEncoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Gets the value for the {@code Content-Encoding} header.
+     *
+     * @return the value for the {@code Content-Encoding} header
+     */
+    String getToken() {
+        return token;
+    }
+
+    /**
+     * Wraps the given stream so that written bytes are compressed.
+     *
+     * Closing the returned stream completes the compressed data and closes the given stream.
+     *
+     * @param out        the stream to write compressed bytes to
+     * @param level      the compression level, from 0 to 9, or -1 for the default level
+     * @param bufferSize the size of the compression buffer
+     * @return the compressing stream
+     * @throws IOException if the stream cannot be created
+     */
+    abstract OutputStream wrap(OutputStream out, int level, int bufferSize) throws IOException;
+
+    /**
+     * Chooses the encoding to use for a request, preferring gzip.
+     *
+     * @param acceptEncoding the value of the {@code Accept-Encoding} request header, may be {@literal null}
+     * @return the encoding to use, or {@literal null} if the client does not accept compressed content
+     */
+    static ContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            double quality = quality(tokens);
+            if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+                gzip = quality;
+            } else if ("deflate".equals(coding)) {
+                deflate = quality;
+            } else if ("*".equals(coding)) {
+                any = quality;
+            }
+        }
+        gzip = gzip < 0 ? any : gzip;
+        deflate = deflate < 0 ? any : deflate;
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * Gets whether content of the given type benefits from compression.
+     *
+     * Types that are usually already compressed, like images, archives and PDF documents, are excluded.
+     *
+     * @param contentType the content type, may be {@literal null}
+     * @return true if content of the given type should be compressed, otherwise false.
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        if (type.startsWith("image/svg")) {
+            return true;
+        }
+        for (String incompressible : INCOMPRESSIBLE_TYPES) {
+            if (type.startsWith(incompressible)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double quality(String[] tokens) {
+        for (int i = 1; i < tokens.length; i++) {
+            String parameter = tokens[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EventObject;
+
+/**
+ * Event describing how the content of a {@link GeneratedContentResource} has been served.
+ *
+ * Times are measured from when the download request has been received, so they include
+ * the time spent waiting for the executor.
+ * Byte counts refer to the content before compression.
+ */
+public class ContentGenerationEvent extends EventObject {
+
+    private final Instant requestTime;
+    private final boolean cacheHit;
+    private final Duration timeToFirstByte;
+    private final Duration duration;
+    private final long bytes;
+    private final Throwable failure;
+
+    ContentGenerationEvent(GeneratedContentResource source, Instant requestTime, boolean cacheHit,
+                           Duration timeToFirstByte, Duration duration, long bytes, Throwable failure) {
+        super(source);
+        this.requestTime = requestTime;
+        this.cacheHit = cacheHit;
+        this.timeToFirstByte = timeToFirstByte;
+        this.duration = duration;
+        this.bytes = bytes;
+        this.failure = failure;
+    }
+
+    /**
+     * Gets the resource whose content has been served.
+     *
+     * @return the resource whose content has been served
+     */
+    public GeneratedContentResource getResource() {
+        return (GeneratedContentResource) getSource();
+    }
+
+    /**
+     * Gets the filename of the served content.
+     *
+     * @return the filename of the served content
+     */
+    public String getFilename() {
+        return getResource().getFilename();
+    }
+
+    /**
+     * Gets when the download request has been received.
+     *
+     * @return when the download request has been received
+     */
+    public Instant getRequestTime() {
+        return requestTime;
+    }
+
+    /**
+     * Gets whether the content has been served from a {@link ContentCache}.
+     *
+     * @return true if the content has been served from the cache, otherwise false.
+     */
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    /**
+     * Gets the time elapsed between the request and the first byte of content written to the response.
+     *
+     * @return the time to first byte, or {@literal null} if no content has been written.
+     */
+    public Duration getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * Gets the time elapsed between the request and the end of the response.
+     *
+     * @return the duration of the download, or {@literal null} if the download has just started.
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Gets the number of bytes of content written to the response.
+     *
+     * @return the number of bytes of content written to the response
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the throughput of the download, in bytes per second.
+     *
+     * @return the throughput of the download, or 0 if it cannot be computed.
+     */
+    public double getThroughput() {
+        if (duration == null || duration.isZero()) {
+            return 0;
+        }
+        return bytes * 1_000_000_000d / duration.toNanos();
+    }
+
+    /**
+     * Gets the failure that prevented the content from being served.
+     *
+     * @return the failure, or {@literal null} if the download succeeded.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets whether the download succeeded.
+     *
+     * @return true if the download succeeded, otherwise false.
+     */
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+}
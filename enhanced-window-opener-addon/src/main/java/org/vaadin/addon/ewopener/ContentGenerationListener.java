@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.Serializable;
+
+/**
+ * Listener notified when the content of a {@link GeneratedContentResource} is served.
+ *
+ * Listeners are invoked on the thread serving the download, without holding the session lock;
+ * they must be thread safe and should return quickly.
+ */
+@FunctionalInterface
+public interface ContentGenerationListener extends Serializable {
+
+    /**
+     * Invoked before the content is generated or read from the cache.
+     *
+     * Only the request time, the filename and whether the content comes from the cache
+     * are available on the event.
+     *
+     * @param event the event
+     */
+    default void generationStarted(ContentGenerationEvent event) {
+    }
+
+    /**
+     * Invoked while the content is generated, at most once per
+     * {@link GeneratedContentSettings#getProgressInterval() progress interval}, and when the generation ends.
+     *
+     * @param event the event
+     * @see ProgressSink
+     */
+    default void generationProgress(GenerationProgressEvent event) {
+    }
+
+    /**
+     * Invoked after the content has been sent, or has failed to be.
+     *
+     * @param event the event
+     */
+    void generationCompleted(ContentGenerationEvent event);
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link ContentGenerationListener} that aggregates download counters and timings
+ * and exposes them through JMX.
+ *
+ * An instance is meant to be shared by all the sessions of the application and registered
+ * once in the platform MBean server, where any JMX aware monitoring system could read it.
+ *
+ * {@code
+ * static final ContentGenerationMetrics METRICS = new ContentGenerationMetrics(Duration.ofSeconds(10));
+ * ...
+ * METRICS.register("reports");
+ * opener.addContentGenerationListener(METRICS);
+ * }
+ */
+public class ContentGenerationMetrics implements ContentGenerationListener, ContentGenerationMetricsMBean {
+
+    /**
+     * JMX domain of the registered metrics.
+     */
+    public static final String JMX_DOMAIN = "org.vaadin.addon.ewopener";
+
+    private final long slowThresholdNanos;
+    private final LongAdder active = new LongAdder();
+    private final LongAdder downloads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder slowDownloads = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder durationNanos = new LongAdder();
+    private final AtomicLong maxDurationNanos = new AtomicLong();
+    private final LongAdder firstBytes = new LongAdder();
+    private final LongAdder timeToFirstByteNanos = new LongAdder();
+    private transient volatile ObjectName objectName;
+
+    /**
+     * Creates metrics that count as slow the downloads longer than the given threshold.
+     *
+     * @param slowThreshold the duration above which a download is slow
+     */
+    public ContentGenerationMetrics(Duration slowThreshold) {
+        Objects.requireNonNull(slowThreshold, "slowThreshold must not be null");
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    @Override
+    public void generationStarted(ContentGenerationEvent event) {
+        active.increment();
+    }
+
+    @Override
+    public void generationCompleted(ContentGenerationEvent event) {
+        active.decrement();
+        downloads.increment();
+        if (!event.isSuccessful()) {
+            failures.increment();
+        }
+        if (event.isCacheHit()) {
+            cacheHits.increment();
+        }
+        long nanos = event.getDuration().toNanos();
+        durationNanos.add(nanos);
+        maxDurationNanos.accumulateAndGet(nanos, Math::max);
+        if (nanos > slowThresholdNanos) {
+            slowDownloads.increment();
+        }
+        bytes.add(event.getBytes());
+        if (event.getTimeToFirstByte() != null) {
+            firstBytes.increment();
+            timeToFirstByteNanos.add(event.getTimeToFirstByte().toNanos());
+        }
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server.
+     *
+     * @param name value of the {@code name} key of the object name, that identifies these metrics
+     * @return the object name of the registered metrics
+     * @throws IllegalStateException if the metrics cannot be registered
+     */
+    public synchronized ObjectName register(String name) {
+        Objects.requireNonNull(name, "name must not be null");
+        try {
+            ObjectName registeredName = new ObjectName(JMX_DOMAIN + ":type=ContentGenerationMetrics,name="
+                + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, registeredName);
+            objectName = registeredName;
+            return registeredName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics " + name, e);
+        }
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server, if registered.
+     */
+    public synchronized void unregister() {
+        ObjectName registeredName = objectName;
+        if (registeredName != null) {
+            objectName = null;
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(registeredName);
+            } catch (JMException e) {
+                // already unregistered
+            }
+        }
+    }
+
+    @Override
+    public long getActiveDownloads() {
+        return active.sum();
+    }
+
+    @Override
+    public long getDownloads() {
+        return downloads.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getSlowDownloads() {
+        return slowDownloads.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getAverageDurationMillis() {
+        long count = downloads.sum();
+        return count == 0 ? 0 : durationNanos.sum() / 1_000_000d / count;
+    }
+
+    @Override
+    public long getMaxDurationMillis() {
+        return Duration.ofNanos(maxDurationNanos.get()).toMillis();
+    }
+
+    @Override
+    public double getAverageTimeToFirstByteMillis() {
+        long count = firstBytes.sum();
+        return count == 0 ? 0 : timeToFirstByteNanos.sum() / 1_000_000d / count;
+    }
+
+    @Override
+    public double getAverageThroughput() {
+        long nanos = durationNanos.sum();
+        return nanos == 0 ? 0 : bytes.sum() * 1_000_000_000d / nanos;
+    }
+
+    @Override
+    public void reset() {
+        downloads.reset();
+        failures.reset();
+        cacheHits.reset();
+        slowDownloads.reset();
+        bytes.reset();
+        durationNanos.reset();
+        maxDurationNanos.set(0);
+        firstBytes.reset();
+        timeToFirstByteNanos.reset();
+    }
+}
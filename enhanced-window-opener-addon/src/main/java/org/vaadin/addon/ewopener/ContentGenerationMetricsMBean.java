@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+/**
+ * JMX management interface of {@link ContentGenerationMetrics}.
+ */
+public interface ContentGenerationMetricsMBean {
+
+    /**
+     * @return the number of downloads in progress
+     */
+    long getActiveDownloads();
+
+    /**
+     * @return the number of completed downloads, successful or not
+     */
+    long getDownloads();
+
+    /**
+     * @return the number of failed downloads
+     */
+    long getFailures();
+
+    /**
+     * @return the number of downloads served from a cache
+     */
+    long getCacheHits();
+
+    /**
+     * @return the number of downloads that took longer than the slow threshold
+     */
+    long getSlowDownloads();
+
+    /**
+     * @return the total number of bytes of content sent
+     */
+    long getBytes();
+
+    /**
+     * @return the average duration of downloads, in milliseconds
+     */
+    double getAverageDurationMillis();
+
+    /**
+     * @return the maximum duration of a download, in milliseconds
+     */
+    long getMaxDurationMillis();
+
+    /**
+     * @return the average time to first byte, in milliseconds
+     */
+    double getAverageTimeToFirstByteMillis();
+
+    /**
+     * @return the average throughput, in bytes per second
+     */
+    double getAverageThroughput();
+
+    /**
+     * Resets all the counters.
+     */
+    void reset();
+}
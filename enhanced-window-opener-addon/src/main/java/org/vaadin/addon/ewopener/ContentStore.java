@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A store for materialized content on local disk, that keeps byte-identical content only once.
+ *
+ * Content is addressed by its SHA-256 digest: when generated content is materialized, for buffering,
+ * caching, prefetch or range requests, and content with the same digest is already in the store,
+ * the new copy is discarded and the stored one is used instead.
+ * Stored content is always served from its file, with an exact {@code Content-Length}, copying it
+ * to the response in chunks.
+ *
+ * Files are reference counted; files not used by any download, cache or prefetch are kept to deduplicate
+ * further content and are deleted, least recently used first, when the total size exceeds the maximum size.
+ * Files in use are never deleted, so the maximum size could be temporarily exceeded.
+ * Files left in the directory by a previous run are indexed when the store is created.
+ *
+ * An instance is thread safe and could be shared by many openers and sessions;
+ * it is usually created once per application, with a directory dedicated to it.
+ *
+ * <pre>{@code
+ * static final ContentStore STATEMENTS = new ContentStore(Paths.get("/var/cache/statements"), 1024 * 1024 * 1024);
+ * ...
+ * new EnhancedBrowserWindowOpener()
+ *     .withContentStore(STATEMENTS)
+ *     .withBuffering(true)
+ *     .withGeneratedContent("statement.pdf", this::makeStatement)
+ * }</pre>
+ */
+public class ContentStore {
+
+    private static final Pattern DIGEST = Pattern.compile("[0-9a-f]{64}");
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxSize;
+    private final LinkedHashMap<String, StoredContent> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> moving = new HashSet<>();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long size;
+
+    /**
+     * Creates a new store.
+     *
+     * @param directory the directory of the stored files, created if it does not exist
+     * @param maxSize   the size in bytes above which files not in use are deleted
+     * @throws UncheckedIOException if the directory cannot be created or read
+     */
+    public ContentStore(Path directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than zero");
+        }
+        this.directory = Objects.requireNonNull(directory, "directory must not be null");
+        this.maxSize = maxSize;
+        try {
+            Files.createDirectories(directory);
+            index();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open content store " + directory, e);
+        }
+    }
+
+    /**
+     * Gets the directory of the stored files.
+     *
+     * @return the directory of the stored files
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the size in bytes above which files not in use are deleted.
+     *
+     * @return the maximum size in bytes of the store
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the total size in bytes of the stored files.
+     *
+     * @return the total size in bytes of the stored files
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of stored files.
+     *
+     * @return the number of stored files
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of contents that have been written to the store.
+     *
+     * @return the number of contents that have been written to the store
+     */
+    public long getStoredCount() {
+        return stored.get();
+    }
+
+    /**
+     * Gets the number of contents that have been found already in the store and not stored again.
+     *
+     * @return the number of deduplicated contents
+     */
+    public long getDeduplicatedCount() {
+        return deduplicated.get();
+    }
+
+    /**
+     * Gets the number of files deleted to keep the store within its maximum size.
+     *
+     * @return the number of deleted files
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the stored content with the given digest.
+     *
+     * The returned content is retained on behalf of the caller, that must
+     * call {@link MaterializedContent#release()} when it is no longer needed.
+     *
+     * @param digest the hex encoded SHA-256 digest of the content
+     * @return the stored content, or {@literal null} if it is not in the store
+     */
+    public synchronized MaterializedContent get(String digest) {
+        StoredContent content = entries.get(digest);
+        if (content == null) {
+            return null;
+        }
+        content.references++;
+        return content;
+    }
+
+    /**
+     * Stores buffered content, or gets the stored copy of the same content.
+     *
+     * The temporary file, if any, is moved into the store or deleted.
+     *
+     * @param digest the hex encoded SHA-256 digest of the content
+     * @param heap   the content kept in memory, if {@code file} is {@literal null}
+     * @param count  the number of bytes of {@code heap}
+     * @param file   the temporary file of the content, or {@literal null}
+     * @param length the size of the content
+     * @return the stored content, retained on behalf of the caller
+     * @throws IOException if the content cannot be stored
+     */
+    MaterializedContent store(String digest, byte[] heap, int count, Path file, long length) throws IOException {
+        MaterializedContent existing = get(digest);
+        if (existing != null) {
+            deduplicated.incrementAndGet();
+            deleteQuietly(file);
+            return existing;
+        }
+        Path temp = Files.createTempFile(directory, digest + "-", TEMP_SUFFIX);
+        try {
+            if (file == null) {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    out.write(heap, 0, count);
+                }
+            } else {
+                Files.move(file, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return install(digest, temp, length);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(file);
+            deleteQuietly(temp);
+            throw e;
+        }
+    }
+
+    private MaterializedContent install(String digest, Path temp, long length) throws IOException {
+        StoredContent existing;
+        synchronized (this) {
+            existing = awaitSettled(digest);
+            if (existing != null) {
+                // stored concurrently by another generation
+                deduplicated.incrementAndGet();
+                existing.references++;
+            } else {
+                moving.add(digest);
+            }
+        }
+        if (existing != null) {
+            deleteQuietly(temp);
+            return existing;
+        }
+        Path target = directory.resolve(digest);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            settled(Collections.singleton(digest));
+            throw e;
+        }
+        StoredContent content = new StoredContent(digest, target, length);
+        List<StoredContent> evicted;
+        synchronized (this) {
+            moving.remove(digest);
+            notifyAll();
+            entries.put(digest, content);
+            size += length;
+            stored.incrementAndGet();
+            content.references++;
+            evicted = evict();
+        }
+        delete(evicted);
+        return content;
+    }
+
+    /**
+     * Waits until the file of the given content is neither being moved into the store nor deleted.
+     */
+    private StoredContent awaitSettled(String digest) throws InterruptedIOException {
+        while (moving.contains(digest)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while storing content " + digest);
+            }
+        }
+        return entries.get(digest);
+    }
+
+    private synchronized void settled(Collection<String> digests) {
+        moving.removeAll(digests);
+        notifyAll();
+    }
+
+    private synchronized void retain(StoredContent content) {
+        if (entries.get(content.digest) != content) {
+            throw new IllegalStateException("Content has been evicted from the store");
+        }
+        content.references++;
+    }
+
+    private void release(StoredContent content) {
+        List<StoredContent> evicted;
+        synchronized (this) {
+            if (content.references <= 0) {
+                return;
+            }
+            content.references--;
+            evicted = evict();
+        }
+        delete(evicted);
+    }
+
+    /**
+     * Removes the least recently used contents not in use until the store is within its maximum size.
+     *
+     * Their files must then be deleted by {@link #delete(List)}, without holding the lock of the store;
+     * until then the same contents could not be stored again.
+     */
+    private List<StoredContent> evict() {
+        List<StoredContent> evicted = new ArrayList<>();
+        Iterator<StoredContent> iterator = entries.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            StoredContent content = iterator.next();
+            if (content.references == 0) {
+                iterator.remove();
+                size -= content.size;
+                evictions.incrementAndGet();
+                moving.add(content.digest);
+                evicted.add(content);
+            }
+        }
+        return evicted;
+    }
+
+    private void delete(List<StoredContent> evicted) {
+        if (evicted.isEmpty()) {
+            return;
+        }
+        List<String> digests = new ArrayList<>(evicted.size());
+        for (StoredContent content : evicted) {
+            deleteQuietly(content.file);
+            digests.add(content.digest);
+        }
+        settled(digests);
+    }
+
+    private void index() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    deleteQuietly(file);
+                } else if (DIGEST.matcher(name).matches() && Files.isRegularFile(file)) {
+                    long length = Files.size(file);
+                    entries.put(name, new StoredContent(name, file, length));
+                    size += length;
+                }
+            }
+        }
+        List<StoredContent> evicted;
+        synchronized (this) {
+            evicted = evict();
+        }
+        delete(evicted);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    private final class StoredContent implements MaterializedContent {
+
+        private final String digest;
+        private final Path file;
+        private final long size;
+        private final FileContent reader;
+        private int references;
+
+        private StoredContent(String digest, Path file, long size) {
+            this.digest = digest;
+            this.file = file;
+            this.size = size;
+            this.reader = new FileContent(file, size, false);
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return reader.openStream();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            reader.writeTo(out);
+        }
+
+        @Override
+        public void writeTo(OutputStream out, long offset, long length) throws IOException {
+            reader.writeTo(out, offset, length);
+        }
+
+        @Override
+        public String getDigest() {
+            return digest;
+        }
+
+        @Override
+        public MaterializedContent retain() {
+            ContentStore.this.retain(this);
+            return this;
+        }
+
+        @Override
+        public void release() {
+            ContentStore.this.release(this);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Objects;
+
+/**
+ * Generates content writing it directly to the download response.
+ *
+ * Bytes are sent to the client as they are produced, so memory usage does not
+ * depend on the size of the generated content.
+ */
+@FunctionalInterface
+public interface ContentWriter extends Serializable {
+
+    /**
+     * Writes the content to the given stream.
+     *
+     * The stream is closed by the caller after this method returns.
+     *
+     * @param out the stream to write the content to
+     * @throws IOException if the content cannot be written
+     */
+    void write(OutputStream out) throws IOException;
+
+    /**
+     * Creates a {@link ContentWriter} that encodes the characters written by the given
+     * {@link TextContentWriter} with the given charset.
+     *
+     * @param charset the charset used to encode the text
+     * @param writer  the text content writer
+     * @return a content writer that encodes text with the given charset
+     */
+    static ContentWriter ofText(Charset charset, TextContentWriter writer) {
+        Objects.requireNonNull(writer);
+        String charsetName = charset.name();
+        return out -> {
+            Writer textWriter = new OutputStreamWriter(out, charsetName);
+            writer.write(textWriter);
+            textWriter.flush();
+        };
+    }
+}
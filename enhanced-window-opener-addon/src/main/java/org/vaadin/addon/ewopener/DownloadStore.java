@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+
+/**
+ * Storage for materialized downloads that could be shared by the nodes of a cluster.
+ *
+ * Content generated on a node is put into the store under a random key; the download is then
+ * served by {@link DownloadTokenServlet} on whichever node receives the request, without the session
+ * of the user, so load balancers do not need sticky sessions for downloads.
+ * Implementations decide how long downloads are kept and must be thread safe.
+ *
+ * @see SharedDirectoryDownloadStore
+ * @see DownloadStoreRegistry
+ * @see EnhancedBrowserWindowOpener#withSharedDownloads(String, String)
+ */
+public interface DownloadStore {
+
+    /**
+     * Stores a download under the given key.
+     *
+     * The content of the download is read before this method returns; it is not retained by the store.
+     *
+     * @param key      the key of the download, made of URL safe base64 characters
+     * @param download the download to store
+     * @throws IOException if the download cannot be stored
+     */
+    void put(String key, StoredDownload download) throws IOException;
+
+    /**
+     * Gets the download stored under the given key.
+     *
+     * The content of the returned download is retained on behalf of the caller, that must
+     * call {@link MaterializedContent#release()} when it is no longer needed.
+     *
+     * @param key the key of the download, as received from the client
+     * @return the download, or {@literal null} if the key is unknown or expired
+     * @throws IOException if the download cannot be read
+     */
+    StoredDownload get(String key) throws IOException;
+
+    /**
+     * Removes the download stored under the given key, if any.
+     *
+     * @param key the key of the download
+     * @throws IOException if the download cannot be removed
+     */
+    void remove(String key) throws IOException;
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vaadin.shared.Registration;
+
+/**
+ * Application scoped registry of {@link DownloadStore}s, resolved by id when shared downloads are opened.
+ *
+ * Openers configured with {@link EnhancedBrowserWindowOpener#withSharedDownloads(String, String)} keep only
+ * the id of the store, so shared downloads keep working after the session has been replicated or persisted
+ * and restored on another node, as long as a store is registered there under the same id.
+ * Stores are usually registered at application startup, for example in a {@code ServletContextListener}
+ * or a {@code VaadinServiceInitListener}.
+ * An instance is thread safe; openers use {@link #getDefault()}.
+ *
+ * <pre>{@code
+ * DownloadStoreRegistry.getDefault().register("downloads",
+ *     new SharedDirectoryDownloadStore(Paths.get("/mnt/shared/downloads"), Duration.ofMinutes(10)));
+ * ...
+ * new EnhancedBrowserWindowOpener()
+ *     .withSharedDownloads("downloads", "/downloads")
+ * }</pre>
+ */
+public class DownloadStoreRegistry {
+
+    private static final DownloadStoreRegistry DEFAULT = new DownloadStoreRegistry();
+
+    private final Map<String, DownloadStore> stores = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the registry shared by the whole application.
+     *
+     * @return the default registry
+     */
+    public static DownloadStoreRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a store under the given id, replacing the one previously registered.
+     *
+     * @param id    the id of the store
+     * @param store the store
+     * @return a registration that removes the store
+     */
+    public Registration register(String id, DownloadStore store) {
+        Objects.requireNonNull(id, "id must not be null");
+        Objects.requireNonNull(store, "store must not be null");
+        stores.put(id, store);
+        return () -> stores.remove(id, store);
+    }
+
+    /**
+     * Gets the store registered under the given id.
+     *
+     * @param id the id of the store
+     * @return the store, or {@literal null} if no store is registered with the given id
+     */
+    public DownloadStore get(String id) {
+        return id == null ? null : stores.get(id);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.vaadin.server.ConnectorResource;
+import com.vaadin.server.DownloadStream;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinServletRequest;
+import com.vaadin.server.VaadinServletResponse;
+import com.vaadin.util.CurrentInstance;
+
+/**
+ * Servlet serving the resources opened through download tokens.
+ *
+ * Downloads are served from a {@link DownloadTokenStore} without looking up the session of the user,
+ * so they never wait for the session lock and do not delay other requests of the same user.
+ * The servlet must be mapped on the path given to {@link EnhancedBrowserWindowOpener#withDownloadTokens(String)},
+ * followed by {@code /*}; the path info of the request is made of the token and the name of the file.
+ *
+ * Resources are served as the Vaadin servlet would do, but no {@link com.vaadin.server.VaadinSession}
+ * and no {@link com.vaadin.ui.UI} are available to their generators; per session concurrency limits
+ * do not apply.
+ *
+ * With a {@link DownloadStore}, tokens not known to this node are looked up in the store, so downloads
+ * materialized by {@link EnhancedBrowserWindowOpener#withSharedDownloads(String, String)} on another
+ * node of the cluster could be served.
+ *
+ * <pre>{@code
+ * @WebServlet("/downloads/*")
+ * public static class DownloadServlet extends DownloadTokenServlet {
+ * }
+ * }</pre>
+ */
+public class DownloadTokenServlet extends HttpServlet {
+
+    private final transient DownloadTokenStore store;
+    private final transient DownloadStore sharedStore;
+
+    /**
+     * Creates a servlet serving resources from {@link DownloadTokenStore#getDefault()}.
+     */
+    public DownloadTokenServlet() {
+        this(DownloadTokenStore.getDefault());
+    }
+
+    /**
+     * Creates a servlet serving resources from the given store.
+     *
+     * @param store the store of the download tokens
+     */
+    public DownloadTokenServlet(DownloadTokenStore store) {
+        this(store, null);
+    }
+
+    /**
+     * Creates a servlet serving resources from the given store and downloads from the given shared store.
+     *
+     * @param store       the store of the download tokens
+     * @param sharedStore the store of the downloads shared by the nodes of the cluster, or {@literal null}
+     */
+    public DownloadTokenServlet(DownloadTokenStore store, DownloadStore sharedStore) {
+        this.store = Objects.requireNonNull(store, "store must not be null");
+        this.sharedStore = sharedStore;
+    }
+
+    /**
+     * Gets the store of the download tokens served by this servlet.
+     *
+     * @return the store of the download tokens
+     */
+    public DownloadTokenStore getStore() {
+        return store;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String token = parseToken(req.getPathInfo());
+        ConnectorResource resource = store.resolve(token);
+        VaadinServletRequest request = new VaadinServletRequest(req, null);
+        VaadinServletResponse response = new VaadinServletResponse(resp, null);
+        if (resource == null) {
+            StoredDownload download = sharedStore == null || token == null ? null : sharedStore.get(token);
+            if (download == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            } else {
+                serveStored(request, response, download);
+            }
+            return;
+        }
+        // generated resources read the download parameters from the current request
+        VaadinRequest previous = CurrentInstance.get(VaadinRequest.class);
+        CurrentInstance.set(VaadinRequest.class, request);
+        try {
+            DownloadStream stream = resource.getStream();
+            if (stream == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            stream.writeResponse(request, response);
+        } finally {
+            CurrentInstance.set(VaadinRequest.class, previous);
+        }
+    }
+
+    private static void serveStored(VaadinServletRequest request, VaadinServletResponse response,
+                                    StoredDownload download) throws IOException {
+        MaterializedContent content = download.getContent();
+        try {
+            response.setContentType(download.getMimeType());
+            response.setHeader(DownloadStream.CONTENT_DISPOSITION,
+                DownloadStream.getContentDispositionFilename(download.getFilename()));
+            response.setHeader("Content-Length", Long.toString(content.size()));
+            if (ContainerTransfer.send(request, response, content, 0, content.size())) {
+                return;
+            }
+            try (OutputStream out = response.getOutputStream()) {
+                content.writeTo(out);
+            }
+        } finally {
+            content.release();
+        }
+    }
+
+    static String parseToken(String pathInfo) {
+        if (pathInfo == null || pathInfo.length() < 2 || pathInfo.charAt(0) != '/') {
+            return null;
+        }
+        int end = pathInfo.indexOf('/', 1);
+        return end < 0 ? pathInfo.substring(1) : pathInfo.substring(1, end);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import com.vaadin.server.ConnectorResource;
+
+/**
+ * Keeps the resources opened through download tokens, so that they could be served by
+ * {@link DownloadTokenServlet} without accessing the session of the user.
+ *
+ * Each resource is registered under a random, unguessable token that stays valid for the
+ * configured time to live; within that time the resource could be downloaded many times,
+ * for example to resume an interrupted download.
+ * An instance is thread safe and is meant to be shared by all the sessions of the application;
+ * the servlet and the openers use {@link #getDefault()} unless configured otherwise.
+ *
+ * <pre>{@code
+ * new EnhancedBrowserWindowOpener()
+ *     .withDownloadTokens("/downloads")
+ *     .withGeneratedContent("report.pdf", this::makeReport)
+ * }</pre>
+ */
+public class DownloadTokenStore {
+
+    /**
+     * The default time to live of tokens.
+     */
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    private static final int TOKEN_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final DownloadTokenStore DEFAULT = new DownloadTokenStore(DEFAULT_TIME_TO_LIVE);
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+    private volatile long nextPurge;
+
+    /**
+     * Creates a new store.
+     *
+     * @param timeToLive the time a token stays valid after it has been registered
+     */
+    public DownloadTokenStore(Duration timeToLive) {
+        this(timeToLive, System::nanoTime);
+    }
+
+    DownloadTokenStore(Duration timeToLive, LongSupplier nanoClock) {
+        this.timeToLiveNanos = Objects.requireNonNull(timeToLive).toNanos();
+        if (timeToLiveNanos <= 0) {
+            throw new IllegalArgumentException("timeToLive must be greater than zero");
+        }
+        this.nanoClock = nanoClock;
+        this.nextPurge = nanoClock.getAsLong() + timeToLiveNanos;
+    }
+
+    /**
+     * Gets the store shared by the whole application, with {@link #DEFAULT_TIME_TO_LIVE}.
+     *
+     * @return the default store
+     */
+    public static DownloadTokenStore getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the time a token stays valid after it has been registered.
+     *
+     * @return the time to live of tokens
+     */
+    public Duration getTimeToLive() {
+        return Duration.ofNanos(timeToLiveNanos);
+    }
+
+    /**
+     * Registers a resource under a new token.
+     *
+     * The {@link ConnectorResource#getStream()} method of the resource will be invoked
+     * by the servlet thread serving the download, without holding the session lock.
+     *
+     * @param resource the resource to register
+     * @return the token of the resource
+     */
+    public String register(ConnectorResource resource) {
+        Objects.requireNonNull(resource, "resource must not be null");
+        long now = nanoClock.getAsLong();
+        purgeExpired(now);
+        String token = newToken();
+        entries.put(token, new Entry(resource, now + timeToLiveNanos));
+        return token;
+    }
+
+    /**
+     * Creates a new random, unguessable token made of URL safe base64 characters.
+     *
+     * @return a new token
+     */
+    static String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Gets the resource registered under the given token.
+     *
+     * @param token the token
+     * @return the resource, or {@literal null} if the token is unknown or expired
+     */
+    public ConnectorResource resolve(String token) {
+        if (token == null) {
+            return null;
+        }
+        long now = nanoClock.getAsLong();
+        purgeExpired(now);
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(now)) {
+            entries.remove(token, entry);
+            return null;
+        }
+        return entry.resource;
+    }
+
+    /**
+     * Invalidates the given token before it expires.
+     *
+     * @param token the token
+     * @return {@literal true} if the token was valid
+     */
+    public boolean revoke(String token) {
+        Entry entry = token == null ? null : entries.remove(token);
+        return entry != null && !entry.isExpired(nanoClock.getAsLong());
+    }
+
+    /**
+     * Gets the number of registered tokens, including expired ones not yet purged.
+     *
+     * @return the number of registered tokens
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void purgeExpired(long now) {
+        // expired tokens are purged at most once in a time to live
+        if (now - nextPurge < 0) {
+            return;
+        }
+        nextPurge = now + timeToLiveNanos;
+        entries.values().removeIf(entry -> entry.isExpired(now));
+    }
+
+    private static final class Entry {
+        private final ConnectorResource resource;
+        private final long expiresAt;
+
+        private Entry(ConnectorResource resource, long expiresAt) {
+            this.resource = resource;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
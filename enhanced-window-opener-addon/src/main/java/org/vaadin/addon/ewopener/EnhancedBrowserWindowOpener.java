@@ -15,19 +15,61 @@
  */
 package org.vaadin.addon.ewopener;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.vaadin.server.AbstractClientConnector;
 import com.vaadin.server.BrowserWindowOpener;
+import com.vaadin.server.ConnectorResource;
+import com.vaadin.server.DownloadStream;
+import com.vaadin.server.ErrorEvent;
+import com.vaadin.server.ErrorHandler;
 import com.vaadin.server.EventTrigger;
+import com.vaadin.server.ExternalResource;
 import com.vaadin.server.Resource;
+import com.vaadin.server.SerializableSupplier;
 import com.vaadin.server.StreamResource;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.shared.ApplicationConstants;
+import com.vaadin.shared.Registration;
+import com.vaadin.shared.communication.PushMode;
+import com.vaadin.shared.ui.BrowserWindowOpenerState;
 import com.vaadin.ui.AbstractComponent;
 import com.vaadin.ui.Component;
 import com.vaadin.ui.MenuBar;
 import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerClientRpc;
+import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerServerRpc;
 import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerState;
+import org.vaadin.addon.ewopener.shared.OpenReport;
 
 /**
  * Extension of {@link BrowserWindowOpener} that simplifies open windows for
@@ -41,6 +83,50 @@ import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerState;
  */
 public class EnhancedBrowserWindowOpener extends BrowserWindowOpener {
 
+    private static final int ASYNC_POLL_INTERVAL = 1000;
+    private static final long OPEN_RESOURCE_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+    private static final String CACHE_SCOPE_ATTRIBUTE = EnhancedBrowserWindowOpener.class.getName() + ".cacheScope";
+
+    private final GeneratedContentSettings generatedContentSettings = new GeneratedContentSettings();
+    private final AtomicReference<GenerationProgressEvent> pendingProgress = new AtomicReference<>();
+    private Registration progressRegistration;
+    private volatile UI progressUI;
+    private long nextOpenResource;
+    private final Map<String, Long> openResourceExpirations = new HashMap<>();
+    private transient AsyncOpens asyncOpens;
+    private transient Registration asyncPollRegistration;
+    private transient int previousPollInterval;
+    private transient volatile DownloadTokenStore downloadTokenStore;
+    private String downloadTokenPath;
+    private transient Set<String> downloadTokens;
+    private String sharedDownloadStoreId;
+    private boolean sessionScopedCache;
+    private String sessionCacheScope;
+
+    {
+        registerRpc(new EnhancedBrowserWindowOpenerServerRpc() {
+            @Override
+            public void reportOpens(List<OpenReport> reports) {
+                onOpenReports(reports);
+            }
+
+            @Override
+            public void prefetch() {
+                onPrefetch();
+            }
+
+            @Override
+            public void cancelPrefetch() {
+                onCancelPrefetch();
+            }
+
+            @Override
+            public void windowClosed(String downloadId) {
+                generatedContentSettings.cancelAbandonedGeneration(downloadId, "window closed");
+            }
+        });
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -101,13 +187,519 @@ public class EnhancedBrowserWindowOpener extends BrowserWindowOpener {
     /**
      * Forces the client to open a window for the configured resource when the current request completes.
      *
+     * The command carries the current parameters and fragment of the opener; the state of the opener
+     * is not changed, so it is not sent again to the client.
+     *
      * @return current object for further customization
      */
     public final EnhancedBrowserWindowOpener open() {
-        getState().lastUpdated = Instant.now().toEpochMilli();
+        EnhancedBrowserWindowOpenerState state = getState(false);
+        EnhancedBrowserWindowOpenerClientRpc rpc = getRpcProxy(EnhancedBrowserWindowOpenerClientRpc.class);
+        Resource resource = getResource(BrowserWindowOpenerState.locationResource);
+        if (isSharedDownload(resource)) {
+            openShared((ConnectorResource) resource, state.parameters, state.uriFragment);
+            return this;
+        }
+        Resource tokenResource = toDownloadTokenResource(resource);
+        if (tokenResource != resource) {
+            rpc.openUrl(((ExternalResource) tokenResource).getURL(), new HashMap<>(state.parameters),
+                state.uriFragment);
+        } else {
+            rpc.openResource(BrowserWindowOpenerState.locationResource, new HashMap<>(state.parameters),
+                state.uriFragment);
+        }
+        return this;
+    }
+
+    /**
+     * Forces the client to open a window for the given resource, with the given parameters and fragment,
+     * when the current request completes.
+     *
+     * Unlike {@link #open(Resource)} the resource, the parameters and the fragment of the opener are not changed,
+     * so one opener could serve many opens with different content, also interleaved through
+     * {@link UI#access(Runnable)}. Urls of {@link ExternalResource}s are sent with the command; other
+     * resources are registered on the opener under a key of their own, released once the resource
+     * has been served completely or, if the window never requests it, five minutes after the open.
+     * Resources serving range requests are kept for the five minutes, so downloads could be resumed
+     * and viewers could request further ranges.
+     *
+     * @param resource    the resource to open in the window
+     * @param parameters  the parameters to add to the url of the resource, or {@literal null}
+     * @param uriFragment the fragment to set on the url, or {@literal null} to keep the original one
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener open(Resource resource, Map<String, String> parameters, String uriFragment) {
+        Objects.requireNonNull(resource, "resource must not be null");
+        if (isSharedDownload(resource)) {
+            openShared((ConnectorResource) resource, parameters, uriFragment);
+            return this;
+        }
+        resource = toDownloadTokenResource(resource);
+        Map<String, String> callParameters = parameters == null ? new HashMap<>() : new HashMap<>(parameters);
+        EnhancedBrowserWindowOpenerClientRpc rpc = getRpcProxy(EnhancedBrowserWindowOpenerClientRpc.class);
+        if (resource instanceof ExternalResource) {
+            rpc.openUrl(((ExternalResource) resource).getURL(), callParameters, uriFragment);
+        } else {
+            long now = System.currentTimeMillis();
+            releaseExpiredOpenResources(now);
+            String key = EnhancedBrowserWindowOpenerState.openResource(nextOpenResource++);
+            setResource(key, resource);
+            openResourceExpirations.put(key, now + OPEN_RESOURCE_TIME_TO_LIVE);
+            rpc.openResource(key, callParameters, uriFragment);
+        }
+        return this;
+    }
+
+    private void releaseExpiredOpenResources(long now) {
+        openResourceExpirations.entrySet().removeIf(expiration -> {
+            if (now < expiration.getValue()) {
+                return false;
+            }
+            setResource(expiration.getKey(), null);
+            return true;
+        });
+    }
+
+    /**
+     * Releases the resources opened by {@link #open(Resource, Map, String)} once they have been served
+     * completely, unless they serve range requests.
+     */
+    @Override
+    public boolean handleConnectorRequest(VaadinRequest request, VaadinResponse response, String path)
+        throws IOException {
+        boolean handled = super.handleConnectorRequest(request, response, path);
+        String key = path.split("/", 2)[0];
+        if (handled && key.startsWith(EnhancedBrowserWindowOpenerState.openResourcePrefix)) {
+            // the download is written without holding the session lock
+            VaadinSession session = getSession();
+            session.lock();
+            try {
+                if (openResourceExpirations.containsKey(key) && !isResumable(getResource(key))) {
+                    openResourceExpirations.remove(key);
+                    setResource(key, null);
+                }
+            } finally {
+                session.unlock();
+            }
+        }
+        return handled;
+    }
+
+    private static boolean isResumable(Resource resource) {
+        return resource instanceof GeneratedContentResource
+            && ((GeneratedContentResource) resource).getSettings().isRangeRequests();
+    }
+
+    /**
+     * Forces the client to open a window for the given url, with the given parameters,
+     * when the current request completes.
+     *
+     * @param url        the url to open in the window
+     * @param parameters the parameters to add to the url, or {@literal null}
+     * @return current object for further customization
+     * @see #open(Resource, Map, String)
+     */
+    public EnhancedBrowserWindowOpener open(String url, Map<String, String> parameters) {
+        return open(new ExternalResource(Objects.requireNonNull(url, "url must not be null")), parameters, null);
+    }
+
+    /**
+     * Forces the client to open a window for each of the given resources when the current request completes.
+     *
+     * All the resources are sent to the client in a single update and opened in order;
+     * when more than one resource is given each one is opened in a new window, regardless
+     * of the configured window name.
+     * With {@link #popupBlockerWorkaround(boolean, int)} the windows pre-opened on the client
+     * when the user clicks are used first; the ones not needed are closed.
+     *
+     * @param resources the resources to open
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener openAll(Collection<? extends Resource> resources) {
+        Objects.requireNonNull(resources, "resources must not be null");
+        if (sharedDownloadStoreId != null) {
+            EnhancedBrowserWindowOpenerState state = getState(false);
+            List<Resource> local = new ArrayList<>(resources.size());
+            for (Resource resource : resources) {
+                if (isSharedDownload(resource)) {
+                    openShared((ConnectorResource) resource, state.parameters, state.uriFragment);
+                } else {
+                    local.add(resource);
+                }
+            }
+            if (local.isEmpty()) {
+                return this;
+            }
+            resources = local;
+        }
+        int previousSize = getState(false).batchSize;
+        int size = 0;
+        for (Resource resource : resources) {
+            Objects.requireNonNull(resource, "resources must not contain null elements");
+            setResource(EnhancedBrowserWindowOpenerState.batchResource(size++), toDownloadTokenResource(resource));
+        }
+        for (int i = size; i < previousSize; i++) {
+            setResource(EnhancedBrowserWindowOpenerState.batchResource(i), null);
+        }
+        EnhancedBrowserWindowOpenerState state = getState();
+        state.batchSize = size;
+        // Always change the value so the client notices a batch opened twice in the same millisecond
+        state.batchUpdated = Math.max(Instant.now().toEpochMilli(), state.batchUpdated + 1);
+        return this;
+    }
+
+    /**
+     * Forces the client to open a window for each of the given urls when the current request completes.
+     *
+     * @param urls the urls to open
+     * @return current object for further customization
+     * @see #openAll(Collection)
+     */
+    public EnhancedBrowserWindowOpener openAllUrls(Collection<String> urls) {
+        Objects.requireNonNull(urls, "urls must not be null");
+        List<Resource> resources = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            resources.add(new ExternalResource(Objects.requireNonNull(url, "urls must not contain null elements")));
+        }
+        return openAll(resources);
+    }
+
+    /**
+     * Opens a window for a resource computed in background, when it is available.
+     *
+     * The window is opened through {@link UI#access(Runnable)}: with server push it is opened as soon as
+     * the resource is available, with manual push {@link UI#push()} is invoked, otherwise it is opened with
+     * the next request of the client: without push the client is made to poll every second, unless it already
+     * polls more often, until all the pending resources have been delivered; the previous interval is then
+     * restored, unless the application has changed it meanwhile. Resources completed while the session is
+     * locked are delivered together, in a single push, as by {@link #openAll(Collection)}.
+     * A {@literal null} resource opens nothing and, as a failure, closes the windows pre-opened by the popup
+     * blocker workaround; failures are reported to the error handler of the opener.
+     * Resources completed after the opener has been detached are discarded.
+     *
+     * The window is opened outside of the click of the user, so browsers block it unless it has been
+     * pre-opened: the popup blocker workaround must be active, see {@link #popupBlockerWorkaround(boolean)},
+     * and the open must follow a click on the extended component.
+     *
+     * Must be called holding the session lock.
+     *
+     * @param resource the resource being computed
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener openAsync(CompletionStage<? extends Resource> resource) {
+        Objects.requireNonNull(resource, "resource must not be null");
+        CompletableFuture<Resource> pending = new CompletableFuture<>();
+        resource.whenComplete((result, failure) -> {
+            if (failure == null) {
+                pending.complete(result);
+            } else {
+                pending.completeExceptionally(failure);
+            }
+        });
+        trackAsyncOpen(pending);
+        return this;
+    }
+
+    /**
+     * Computes a resource on the given executor and opens a window for it when it is available.
+     *
+     * If the opener is detached before the computation starts, the supplier is not invoked.
+     *
+     * @param supplier the supplier of the resource, invoked without holding the session lock
+     * @param executor the executor that runs the supplier
+     * @return current object for further customization
+     * @see #openAsync(CompletionStage)
+     */
+    public EnhancedBrowserWindowOpener openAsync(SerializableSupplier<? extends Resource> supplier,
+                                                 Executor executor) {
+        Objects.requireNonNull(supplier, "supplier must not be null");
+        Objects.requireNonNull(executor, "executor must not be null");
+        trackAsyncOpen(CompletableFuture.supplyAsync(supplier, executor));
+        return this;
+    }
+
+    /**
+     * Serves the resources opened by server side calls through download tokens of the default store.
+     *
+     * @param path the path, relative to the context of the application, where {@link DownloadTokenServlet} is mapped
+     * @return current object for further customization
+     * @see #withDownloadTokens(DownloadTokenStore, String)
+     */
+    public EnhancedBrowserWindowOpener withDownloadTokens(String path) {
+        return withDownloadTokens(DownloadTokenStore.getDefault(), path);
+    }
+
+    /**
+     * Serves the resources opened by server side calls through download tokens.
+     *
+     * Resources other than {@link ExternalResource}s opened with {@link #open()},
+     * {@link #open(Resource, Map, String)}, {@link #openAll(Collection)} or {@code openAsync} are registered
+     * in the given store under an unguessable token and the window is opened on the url of the token,
+     * served by a {@link DownloadTokenServlet} mapped on the given path; the download does not access
+     * the session, so it never waits for the session lock.
+     * Generators run without a current session or UI, so they must not access them.
+     * Windows opened by client side clicks in {@link #clientSide(boolean)} mode are not affected.
+     *
+     * The store is not serialized with the session; after deserialization it must be set again.
+     *
+     * @param store the store of the download tokens
+     * @param path  the path, relative to the context of the application, where {@link DownloadTokenServlet}
+     *              is mapped, or {@literal null} to serve resources through the session
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener withDownloadTokens(DownloadTokenStore store, String path) {
+        if (path == null) {
+            this.downloadTokenStore = null;
+            this.downloadTokenPath = null;
+        } else {
+            this.downloadTokenStore = Objects.requireNonNull(store, "store must not be null");
+            this.downloadTokenPath = normalizeDownloadPath(path);
+        }
         return this;
     }
 
+    /**
+     * Serves the resources opened by server side calls from a store shared by the nodes of the cluster.
+     *
+     * Resources other than {@link ExternalResource}s opened with {@link #open()},
+     * {@link #open(Resource, Map, String)}, {@link #openAll(Collection)} or {@code openAsync} are generated
+     * in background, on the generator executor or on the common pool, and put into the given store under
+     * an unguessable key; then the window is opened, as for {@code openAsync}, on the url of the download,
+     * so without push the client polls until it is available; the download is served by
+     * a {@link DownloadTokenServlet} with the same store mapped on the given path on any node.
+     * The content is generated, and looked up in the content cache, for the parameters of the open, that
+     * are added to the url of the download together with the fragment; generators run without a current
+     * session, UI or request, so they must not access them.
+     * Windows opened by client side clicks in {@link #clientSide(boolean)} mode are not affected.
+     *
+     * The windows are opened after the generation, outside of the click of the user, so browsers would
+     * block them: the popup blocker workaround is activated, see {@link #popupBlockerWorkaround(boolean)},
+     * and must not be deactivated afterwards.
+     * Only the id of the store is kept in the session; the store is resolved from
+     * {@link DownloadStoreRegistry#getDefault()} for each open, so after failover the node restoring
+     * the session must have a store registered under the same id.
+     *
+     * @param storeId the id of the store of the downloads in {@link DownloadStoreRegistry#getDefault()}
+     * @param path    the path, relative to the context of the application, where {@link DownloadTokenServlet}
+     *                is mapped, or {@literal null} to disable shared downloads
+     * @return current object for further customization
+     * @throws IllegalArgumentException if no store is registered with the given id
+     * @see SharedDirectoryDownloadStore
+     */
+    public EnhancedBrowserWindowOpener withSharedDownloads(String storeId, String path) {
+        if (path == null) {
+            this.sharedDownloadStoreId = null;
+        } else {
+            Objects.requireNonNull(storeId, "storeId must not be null");
+            if (DownloadStoreRegistry.getDefault().get(storeId) == null) {
+                throw new IllegalArgumentException("No download store registered with id " + storeId);
+            }
+            this.sharedDownloadStoreId = storeId;
+            this.downloadTokenPath = normalizeDownloadPath(path);
+            popupBlockerWorkaround(true);
+        }
+        return this;
+    }
+
+    private static String normalizeDownloadPath(String path) {
+        String trimmed = path.replaceAll("^/+|/+$", "");
+        return trimmed.isEmpty() ? "" : trimmed + "/";
+    }
+
+    private boolean isSharedDownload(Resource resource) {
+        return sharedDownloadStoreId != null && resource instanceof ConnectorResource;
+    }
+
+    private void openShared(ConnectorResource resource, Map<String, String> parameters, String uriFragment) {
+        DownloadStore store = DownloadStoreRegistry.getDefault().get(sharedDownloadStoreId);
+        if (store == null) {
+            throw new IllegalStateException("No download store registered with id " + sharedDownloadStoreId);
+        }
+        String path = downloadTokenPath;
+        Map<String, String> requestParameters = parameters == null ? new HashMap<>() : new HashMap<>(parameters);
+        Executor executor = generatedContentSettings.getExecutor();
+        openAsync(() -> publishSharedDownload(store, path, resource, requestParameters, uriFragment),
+            executor == null ? ForkJoinPool.commonPool() : executor);
+    }
+
+    private static Resource publishSharedDownload(DownloadStore store, String path, ConnectorResource resource,
+                                                  Map<String, String> parameters, String uriFragment) {
+        try {
+            MaterializedContent content = materialize(resource, parameters);
+            try {
+                String key = DownloadTokenStore.newToken();
+                store.put(key, new StoredDownload(resource.getFilename(), resource.getMIMEType(), content));
+                return new SharedDownloadResource(createDownloadUrl(path, key, resource.getFilename())
+                    + toQuery(parameters) + (uriFragment == null ? "" : "#" + uriFragment));
+            } finally {
+                content.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MaterializedContent materialize(ConnectorResource resource, Map<String, String> parameters)
+        throws IOException {
+        MaterializedContent content = null;
+        if (resource instanceof GeneratedContentResource) {
+            Map<String, String[]> requestParameters = new HashMap<>();
+            parameters.forEach((name, value) -> requestParameters.put(name, new String[]{value}));
+            content = ((GeneratedContentResource) resource).materializeContent(requestParameters);
+        } else {
+            DownloadStream stream = resource.getStream();
+            InputStream in = stream == null ? null : stream.getStream();
+            if (in != null) {
+                ContentBuffer buffer = new ContentBuffer(GeneratedContentSettings.DEFAULT_BUFFER_THRESHOLD, null);
+                try {
+                    GeneratedContentResource.copy(in, buffer, 0);
+                    content = buffer.toContent();
+                } catch (IOException | RuntimeException e) {
+                    buffer.discard();
+                    throw e;
+                }
+            }
+        }
+        if (content == null) {
+            throw new FileNotFoundException("No content for " + resource.getFilename());
+        }
+        return content;
+    }
+
+    private Resource toDownloadTokenResource(Resource resource) {
+        DownloadTokenStore store = downloadTokenStore;
+        if (store == null || downloadTokenPath == null || !(resource instanceof ConnectorResource)) {
+            return resource;
+        }
+        ConnectorResource connectorResource = (ConnectorResource) resource;
+        String token = store.register(connectorResource);
+        if (downloadTokens == null) {
+            downloadTokens = new HashSet<>();
+        }
+        // forget tokens already expired
+        downloadTokens.removeIf(registered -> store.resolve(registered) == null);
+        downloadTokens.add(token);
+        return new ExternalResource(createDownloadUrl(downloadTokenPath, token, connectorResource.getFilename()));
+    }
+
+    private void revokeDownloadTokens() {
+        DownloadTokenStore store = downloadTokenStore;
+        if (downloadTokens != null && store != null) {
+            downloadTokens.forEach(store::revoke);
+        }
+        downloadTokens = null;
+    }
+
+    private static String createDownloadUrl(String path, String token, String filename) {
+        // resolved by the client against the context of the application,
+        // since there is no current request when opening from UI.access
+        return ApplicationConstants.CONTEXT_PROTOCOL_PREFIX + path + token + "/" + encodeFilename(filename);
+    }
+
+    private static String encodeFilename(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        return encode(filename).replace("+", "%20");
+    }
+
+    private static String toQuery(Map<String, String> parameters) {
+        StringBuilder query = new StringBuilder();
+        // sorted, so the same parameters always give the same url
+        for (Map.Entry<String, String> parameter : new TreeMap<>(parameters).entrySet()) {
+            query.append(query.length() == 0 ? '?' : '&').append(encode(parameter.getKey()));
+            if (parameter.getValue() != null) {
+                query.append('=').append(encode(parameter.getValue()));
+            }
+        }
+        return query.toString();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void trackAsyncOpen(CompletableFuture<? extends Resource> pending) {
+        if (asyncOpens == null) {
+            asyncOpens = new AsyncOpens();
+        }
+        asyncOpens.track(pending, this::deliverAsyncOpens);
+        pollWhileOpening();
+    }
+
+    private void pollWhileOpening() {
+        UI ui = getUI();
+        if (ui == null || asyncPollRegistration != null || ui.getPushConfiguration().getPushMode().isEnabled()) {
+            return;
+        }
+        int interval = ui.getPollInterval();
+        if (interval >= 0 && interval <= ASYNC_POLL_INTERVAL) {
+            // the client already polls often enough
+            return;
+        }
+        previousPollInterval = interval;
+        ui.setPollInterval(ASYNC_POLL_INTERVAL);
+        asyncPollRegistration = ui.addPollListener(event -> {
+            if (asyncOpens == null || asyncOpens.isIdle()) {
+                stopPolling();
+            }
+        });
+    }
+
+    private void stopPolling() {
+        if (asyncPollRegistration == null) {
+            return;
+        }
+        asyncPollRegistration.remove();
+        asyncPollRegistration = null;
+        UI ui = getUI();
+        // keep the interval set by the application in the meantime
+        if (ui != null && ui.getPollInterval() == ASYNC_POLL_INTERVAL) {
+            ui.setPollInterval(previousPollInterval);
+        }
+    }
+
+    private void deliverAsyncOpens(AsyncOpens opens) {
+        UI ui = getUI();
+        if (ui == null) {
+            opens.cancel();
+            return;
+        }
+        try {
+            ui.access(() -> {
+                List<Resource> resources = new ArrayList<>();
+                List<Throwable> failures = new ArrayList<>();
+                opens.drain(resources, failures);
+                for (Throwable failure : failures) {
+                    ErrorHandler errorHandler = ErrorEvent.findErrorHandler(this);
+                    if (errorHandler != null) {
+                        errorHandler.error(new ErrorEvent(failure));
+                    }
+                }
+                resources.removeIf(Objects::isNull);
+                if (resources.size() == 1 && resources.get(0) instanceof SharedDownloadResource) {
+                    // parameters and fragment of the open are already in the url
+                    open(resources.get(0), null, null);
+                } else if (resources.size() == 1) {
+                    EnhancedBrowserWindowOpenerState state = getState(false);
+                    open(resources.get(0), state.parameters, state.uriFragment);
+                } else {
+                    // also closes the pre-opened windows when there is nothing to open
+                    openAll(resources);
+                }
+                if (ui.getPushConfiguration().getPushMode() == PushMode.MANUAL) {
+                    ui.push();
+                }
+            });
+        } catch (UIDetachedException e) {
+            opens.cancel();
+        }
+    }
+
     /**
      * Simple method to attach the extension as listener for components.
      *
@@ -143,6 +735,26 @@ public class EnhancedBrowserWindowOpener extends BrowserWindowOpener {
         return this;
     }
 
+    /**
+     * Activates the popup blocker workaround, pre-opening the given number of windows
+     * when the user clicks.
+     *
+     * Pre-opened windows are used by {@link #openAll(Collection)}, so that browsers
+     * do not block the windows opened after the server response; windows not needed
+     * by the response are closed.
+     *
+     * @param active  true to activate the workaround, otherwise false.
+     * @param windows the number of windows to pre-open, at least 1.
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener popupBlockerWorkaround(boolean active, int windows) {
+        if (windows < 1) {
+            throw new IllegalArgumentException("windows must be at least 1");
+        }
+        getState().preOpenedWindows = windows;
+        return popupBlockerWorkaround(active);
+    }
+
     /**
      * Sets a {@code resource} for this instance whose content will be generated
      * when the window will be opened.
@@ -175,17 +787,663 @@ public class EnhancedBrowserWindowOpener extends BrowserWindowOpener {
                                                             StreamResourceCustomizer resourceCustomizer) {
         Objects.requireNonNull(generator);
         Objects.requireNonNull(resourceCustomizer);
-        StreamResource resource = new StreamResource(null, filename) {
-            @Override
-            public StreamResource.StreamSource getStreamSource() {
-                return generator::getStream;
-            }
-        };
+        StreamResource resource = new GeneratedContentResource(filename, generator, generatedContentSettings);
         resourceCustomizer.customize(resource);
         setResource(resource);
         return this;
     }
 
+    /**
+     * Sets a {@code resource} for this instance whose content will be written
+     * directly to the response when the window will be opened.
+     *
+     * Bytes are sent to the client as soon as they are written by {@code writer},
+     * so memory usage does not depend on the size of the content.
+     * The writer runs after the session lock has been released.
+     * The cache will be disabled.
+     *
+     * @param filename The filename for the generated resource.
+     * @param writer   The content writer.
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener withStreamingContent(String filename, ContentWriter writer) {
+        return withStreamingContent(filename, writer, r -> {
+            r.setCacheTime(0);
+        });
+    }
+
+    /**
+     * Sets a {@code resource} for this instance whose content will be written
+     * directly to the response when the window will be opened.
+     *
+     * The {@link StreamResource} could be customized through given {@code resourceCustomizer}.
+     *
+     * @param filename           The filename for the generated resource.
+     * @param writer             The content writer.
+     * @param resourceCustomizer The {@link StreamResource} customizer
+     * @return current object for further customization
+     * @see #withStreamingContent(String, ContentWriter)
+     */
+    public EnhancedBrowserWindowOpener withStreamingContent(String filename, ContentWriter writer,
+                                                            StreamResourceCustomizer resourceCustomizer) {
+        Objects.requireNonNull(writer);
+        Objects.requireNonNull(resourceCustomizer);
+        StreamResource resource = new GeneratedContentResource(filename, writer, generatedContentSettings);
+        resourceCustomizer.customize(resource);
+        setResource(resource);
+        return this;
+    }
+
+    /**
+     * Sets a {@code resource} for this instance whose text content will be written
+     * directly to the response when the window will be opened.
+     *
+     * Characters are encoded with the given {@code charset}, that is also added to
+     * the content type of the resource. The cache will be disabled.
+     *
+     * @param filename The filename for the generated resource.
+     * @param charset  The charset used to encode the text.
+     * @param writer   The text content writer.
+     * @return current object for further customization
+     * @see #withStreamingContent(String, ContentWriter)
+     */
+    public EnhancedBrowserWindowOpener withStreamingContent(String filename, Charset charset,
+                                                            TextContentWriter writer) {
+        return withStreamingContent(filename, charset, writer, r -> {
+            r.setCacheTime(0);
+        });
+    }
+
+    /**
+     * Sets a {@code resource} for this instance whose text content will be written
+     * directly to the response when the window will be opened.
+     *
+     * Characters are encoded with the given {@code charset}, that is also added to
+     * the content type of the resource.
+     * The {@link StreamResource} could be customized through given {@code resourceCustomizer}.
+     *
+     * @param filename           The filename for the generated resource.
+     * @param charset            The charset used to encode the text.
+     * @param writer             The text content writer.
+     * @param resourceCustomizer The {@link StreamResource} customizer
+     * @return current object for further customization
+     * @see #withStreamingContent(String, ContentWriter)
+     */
+    public EnhancedBrowserWindowOpener withStreamingContent(String filename, Charset charset, TextContentWriter writer,
+                                                            StreamResourceCustomizer resourceCustomizer) {
+        Objects.requireNonNull(charset);
+        Objects.requireNonNull(resourceCustomizer);
+        return withStreamingContent(filename, ContentWriter.ofText(charset, writer), resource -> {
+            resource.setMIMEType(resource.getMIMEType() + "; charset=" + charset.name());
+            resourceCustomizer.customize(resource);
+        });
+    }
+
+    /**
+     * Sets a {@code resource} for this instance whose content will be written directly to the response,
+     * when the window will be opened, by the registered generator identified by the given id.
+     *
+     * @param filename    The filename for the generated resource.
+     * @param generatorId The id of the generator in {@link GeneratorRegistry#getDefault()}.
+     * @return current object for further customization
+     * @see #withRegisteredContent(String, GeneratorDescriptor)
+     */
+    public EnhancedBrowserWindowOpener withRegisteredContent(String filename, String generatorId) {
+        return withRegisteredContent(filename, new GeneratorDescriptor(generatorId));
+    }
+
+    /**
+     * Sets a {@code resource} for this instance whose content will be written directly to the response,
+     * when the window will be opened, by the registered generator identified by the given descriptor.
+     *
+     * Unlike {@code withGeneratedContent} and {@code withStreamingContent}, the session keeps only
+     * the descriptor and not the generator, nor the objects it captures; this keeps the session small
+     * when it is replicated or persisted. The cache will be disabled.
+     *
+     * @param filename   The filename for the generated resource.
+     * @param descriptor The descriptor of the generator and its parameters.
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener withRegisteredContent(String filename, GeneratorDescriptor descriptor) {
+        Objects.requireNonNull(descriptor);
+        StreamResource resource = new GeneratedContentResource(filename, descriptor, generatedContentSettings);
+        resource.setCacheTime(0);
+        setResource(resource);
+        return this;
+    }
+
+    /**
+     * Sets a {@code resource} for this instance whose content will be read from the given file
+     * when the window will be opened; the name of the file is used as filename of the resource.
+     *
+     * @param file The file with the content.
+     * @return current object for further customization
+     * @see #withFileContent(String, Path)
+     */
+    public EnhancedBrowserWindowOpener withFileContent(Path file) {
+        return withFileContent(file.getFileName().toString(), file);
+    }
+
+    /**
+     * Sets a {@code resource} for this instance whose content will be read from the given file
+     * when the window will be opened.
+     *
+     * The file is sent with an exact {@code Content-Length}; it is handed over to the servlet container
+     * when it supports it, through Tomcat sendfile or Jetty {@code HttpOutput.sendContent}, and otherwise
+     * copied to the response in chunks. With {@link #withRangeRequests(boolean)} interrupted downloads
+     * could be resumed. The cache will be disabled.
+     *
+     * @param filename The filename for the resource.
+     * @param file     The file with the content.
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener withFileContent(String filename, Path file) {
+        Objects.requireNonNull(file);
+        StreamResource resource = new GeneratedContentResource(filename, file, generatedContentSettings);
+        resource.setCacheTime(0);
+        setResource(resource);
+        return this;
+    }
+
+    /**
+     * Sets a {@code resource} for this instance whose content is held in the given buffer.
+     *
+     * The bytes between the position and the limit of the buffer are sent with an exact
+     * {@code Content-Length}; a heap buffer is written with a single call on its backing array.
+     * A direct buffer, or one obtained through {@link java.nio.channels.FileChannel#map}, keeps precomputed
+     * content out of the heap and is handed over to Jetty {@code HttpOutput.sendContent} when available,
+     * otherwise it is copied to the response in chunks.
+     * The buffer must not be changed afterwards and is not serialized with the session.
+     * The cache will be disabled.
+     *
+     * @param filename The filename for the resource.
+     * @param buffer   The buffer with the content.
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener withBufferContent(String filename, ByteBuffer buffer) {
+        Objects.requireNonNull(buffer);
+        StreamResource resource = new GeneratedContentResource(filename, buffer, generatedContentSettings);
+        resource.setCacheTime(0);
+        setResource(resource);
+        return this;
+    }
+
+    /**
+     * Sets the executor that will run the generators of content set through
+     * {@code withGeneratedContent} and {@code withStreamingContent} methods.
+     *
+     * With an executor the generator is started when the download is served, after the
+     * session lock has been released, so a slow generator does not block other requests
+     * from the same session. A bounded thread pool is a good choice; on newer JDKs
+     * a virtual thread per task executor could also be used.
+     * Generators running this way must not access UI or session state without
+     * using {@link UI#access(Runnable)}.
+     *
+     * If {@code executor} is {@literal null} generators run in blocking mode while
+     * holding the session lock; this is the default.
+     *
+     * @param executor the executor that will run content generators, or {@literal null}
+     *                 for blocking mode.
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setExecutor(Executor)
+     */
+    public EnhancedBrowserWindowOpener withGeneratorExecutor(Executor executor) {
+        generatedContentSettings.setExecutor(executor);
+        updatePrefetch();
+        return this;
+    }
+
+    /**
+     * Sets a cache for content generated by this opener, private to the session of the opener.
+     *
+     * Generated content is looked up in the cache by namespace, filename and opener parameters;
+     * repeated downloads of the same content in the same session are served from the cache instead of
+     * running the generator again.
+     * The cache is usually shared by many openers and sessions: the namespace tells which of them
+     * generate the same content, so openers with different generators must use different namespaces.
+     * Content is never served to other sessions, since it could depend on the user; to share it,
+     * use {@link #withContentCache(ContentCache, String, SerializableSupplier)}.
+     *
+     * @param cache     the cache for generated content, or {@literal null} to disable caching.
+     * @param namespace the namespace of the content generated by this opener
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setContentCache(ContentCache)
+     * @see GeneratedContentSettings#setContentNamespace(String)
+     */
+    public EnhancedBrowserWindowOpener withContentCache(ContentCache cache, String namespace) {
+        return withContentCache(cache, namespace, null);
+    }
+
+    /**
+     * Sets a cache for content generated by this opener.
+     *
+     * Generated content is looked up in the cache by namespace, filename, opener parameters
+     * and the key returned by {@code keyProvider}, that decides which sessions share the content:
+     * for example the id of the user for content private to a user, the id of the tenant for content
+     * shared within a tenant, or a constant for content that is the same for everybody.
+     * Without a provider content is private to the session, as for
+     * {@link #withContentCache(ContentCache, String)}.
+     *
+     * @param cache       the cache for generated content, or {@literal null} to disable caching.
+     * @param namespace   the namespace of the content generated by this opener
+     * @param keyProvider provider of a user defined part of the cache key, or {@literal null}
+     *                    to keep content private to the session.
+     *                    It is invoked holding the session lock, except for downloads served
+     *                    through download tokens, that have no current session.
+     * @return current object for further customization
+     * @see #withContentCache(ContentCache, String)
+     */
+    public EnhancedBrowserWindowOpener withContentCache(ContentCache cache, String namespace,
+                                                       SerializableSupplier<String> keyProvider) {
+        if (cache != null) {
+            Objects.requireNonNull(namespace, "namespace must not be null");
+            generatedContentSettings.setContentNamespace(namespace);
+        }
+        sessionScopedCache = cache != null && keyProvider == null;
+        generatedContentSettings.setContentCache(cache);
+        generatedContentSettings.setCacheKeyProvider(sessionScopedCache ? this::sessionCacheScope : keyProvider);
+        if (sessionScopedCache && isAttached()) {
+            sessionCacheScope();
+        }
+        return this;
+    }
+
+    private String sessionCacheScope() {
+        String scope = sessionCacheScope;
+        if (scope == null) {
+            VaadinSession session = getSession();
+            if (session == null) {
+                throw new IllegalStateException("The opener is not attached to a session");
+            }
+            scope = (String) session.getAttribute(CACHE_SCOPE_ATTRIBUTE);
+            if (scope == null) {
+                scope = UUID.randomUUID().toString();
+                session.setAttribute(CACHE_SCOPE_ATTRIBUTE, scope);
+            }
+            sessionCacheScope = scope;
+        }
+        return scope;
+    }
+
+    /**
+     * Sets whether downloads of content generated by this opener honor HTTP range requests.
+     *
+     * When enabled, an interrupted download could be resumed by the browser requesting only
+     * the missing bytes; content is fully generated before being sent.
+     * Use together with {@link #withContentCache(ContentCache, String)} to avoid running the generator
+     * again for resumed downloads.
+     *
+     * @param enabled true to honor HTTP range requests, otherwise false.
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setRangeRequests(boolean)
+     */
+    public EnhancedBrowserWindowOpener withRangeRequests(boolean enabled) {
+        generatedContentSettings.setRangeRequests(enabled);
+        return this;
+    }
+
+    /**
+     * Sets whether content generated by this opener is fully produced before being sent.
+     *
+     * Buffered content is kept in memory up to a threshold and then moved to a temporary file,
+     * so heap usage per download is bounded regardless of the size of the content;
+     * responses have a {@code Content-Length} header.
+     *
+     * @param enabled true to fully produce content before sending it, otherwise false.
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setBuffering(boolean)
+     * @see #withBufferThreshold(int)
+     */
+    public EnhancedBrowserWindowOpener withBuffering(boolean enabled) {
+        generatedContentSettings.setBuffering(enabled);
+        return this;
+    }
+
+    /**
+     * Keeps a single copy of identical content materialized by this opener in the given store.
+     *
+     * A store shared by several openers deduplicates content among all of them.
+     *
+     * @param store the content store, or {@literal null} to keep materialized content in memory
+     *              and in temporary files
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setContentStore(ContentStore)
+     */
+    public EnhancedBrowserWindowOpener withContentStore(ContentStore store) {
+        generatedContentSettings.setContentStore(store);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes of buffered content kept in memory before moving it
+     * to a temporary file.
+     *
+     * @param memoryThreshold the maximum number of bytes of buffered content kept in memory.
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setBufferThreshold(int)
+     */
+    public EnhancedBrowserWindowOpener withBufferThreshold(int memoryThreshold) {
+        generatedContentSettings.setBufferThreshold(memoryThreshold);
+        return this;
+    }
+
+    /**
+     * Enables compression of content generated by this opener, when the client accepts it.
+     *
+     * Content is compressed with {@code gzip} or {@code deflate} while it is sent, using the default
+     * compression level; types that are usually already compressed are sent as they are.
+     *
+     * @param enabled true to compress content, otherwise false.
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setCompression(boolean)
+     */
+    public EnhancedBrowserWindowOpener withCompression(boolean enabled) {
+        generatedContentSettings.setCompression(enabled);
+        return this;
+    }
+
+    /**
+     * Enables compression of content generated by this opener with the given level,
+     * when the client accepts it.
+     *
+     * @param level the compression level, from 0 to 9, or -1 for the default level.
+     * @return current object for further customization
+     * @see #withCompression(boolean)
+     * @see GeneratedContentSettings#setCompressionLevel(int)
+     */
+    public EnhancedBrowserWindowOpener withCompression(int level) {
+        generatedContentSettings.setCompressionLevel(level);
+        generatedContentSettings.setCompression(true);
+        return this;
+    }
+
+    /**
+     * Limits the number of content generations running at the same time.
+     *
+     * Generations over a limit wait for a free slot up to the queue timeout, and are then answered
+     * with {@code 503 Service Unavailable}. Downloads served from a {@link ContentCache} are not limited.
+     *
+     * @param perSession the maximum number of generations for a session, or 0 for no limit.
+     * @param perOpener  the maximum number of generations for this opener, or 0 for no limit.
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setMaxConcurrentPerSession(int)
+     * @see GeneratedContentSettings#setMaxConcurrentPerOpener(int)
+     */
+    public EnhancedBrowserWindowOpener withConcurrencyLimits(int perSession, int perOpener) {
+        generatedContentSettings.setMaxConcurrentPerSession(perSession);
+        generatedContentSettings.setMaxConcurrentPerOpener(perOpener);
+        return this;
+    }
+
+    /**
+     * Limits content generations through a limiter shared with other openers,
+     * for example to bound the generations running on the whole node.
+     *
+     * @param limiter the shared limiter, or {@literal null} to remove it.
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setConcurrencyLimiter(ConcurrencyLimiter)
+     */
+    public EnhancedBrowserWindowOpener withConcurrencyLimiter(ConcurrencyLimiter limiter) {
+        generatedContentSettings.setConcurrencyLimiter(limiter);
+        return this;
+    }
+
+    /**
+     * Makes identical requests arriving while content is generated share a single generation.
+     *
+     * A group shared by several openers deduplicates generations among all of them that
+     * use the same namespace, so openers with different generators must use different namespaces.
+     *
+     * @param group     the single-flight group, or {@literal null} to generate content for each request.
+     * @param namespace the namespace of the content generated by this opener
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setSingleFlightGroup(SingleFlightGroup)
+     * @see GeneratedContentSettings#setContentNamespace(String)
+     */
+    public EnhancedBrowserWindowOpener withSingleFlight(SingleFlightGroup group, String namespace) {
+        if (group != null) {
+            Objects.requireNonNull(namespace, "namespace must not be null");
+            generatedContentSettings.setContentNamespace(namespace);
+        }
+        generatedContentSettings.setSingleFlightGroup(group);
+        return this;
+    }
+
+    /**
+     * Sets the maximum time a generation waits for a slot of a concurrency limit.
+     *
+     * @param timeout the maximum time a generation waits for a slot
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setQueueTimeout(Duration)
+     */
+    public EnhancedBrowserWindowOpener withQueueTimeout(Duration timeout) {
+        generatedContentSettings.setQueueTimeout(timeout);
+        return this;
+    }
+
+    /**
+     * Adds a listener notified when content generated by this opener is served.
+     *
+     * The listener receives timings, byte counts, failures and cache hits of each download;
+     * {@link ContentGenerationMetrics} aggregates them and exposes them through JMX.
+     *
+     * @param listener the listener to add
+     * @return a registration that removes the listener
+     * @see GeneratedContentSettings#addListener(ContentGenerationListener)
+     */
+    public Registration addContentGenerationListener(ContentGenerationListener listener) {
+        return generatedContentSettings.addListener(listener);
+    }
+
+    /**
+     * Adds a listener for the progress of content generated by this opener.
+     *
+     * Progress reported by generators through {@link ProgressSink} is delivered to the UI of the opener
+     * through {@link UI#access(Runnable)}, so listeners could update components, for example a progress bar.
+     * Updates are throttled by {@link GeneratedContentSettings#setProgressInterval(Duration)} and coalesced
+     * while the session is locked; with server push they reach the browser immediately, with manual push
+     * {@link UI#push()} is invoked, otherwise they are sent with the next request.
+     *
+     * @param listener the listener to add
+     * @return a registration that removes the listener
+     */
+    public Registration addGenerationProgressListener(GenerationProgressListener listener) {
+        enableProgress();
+        return addListener(GenerationProgressEvent.class, listener,
+            GenerationProgressListener.GENERATION_PROGRESS_METHOD);
+    }
+
+    /**
+     * Shows the progress of the generation in the window pre-opened by {@link #popupBlockerWorkaround(boolean)}.
+     *
+     * Instead of a blank page, users see a lightweight page telling that the content is being prepared and
+     * how much of it is done, until the browser starts receiving it; progress is delivered as for
+     * {@link #addGenerationProgressListener(GenerationProgressListener)}.
+     *
+     * @param enabled true to show the progress in the pre-opened window, otherwise false.
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener withProgressPage(boolean enabled) {
+        getState().progressPage = enabled;
+        if (enabled) {
+            enableProgress();
+        }
+        return this;
+    }
+
+    private void enableProgress() {
+        if (progressRegistration == null) {
+            progressRegistration = generatedContentSettings.addListener(new ContentGenerationListener() {
+                @Override
+                public void generationProgress(GenerationProgressEvent event) {
+                    pushProgress(event);
+                }
+
+                @Override
+                public void generationCompleted(ContentGenerationEvent event) {
+                }
+            });
+        }
+        progressUI = getUI();
+    }
+
+    /**
+     * Delivers progress to the UI captured holding the session lock, since generators report it
+     * from their own threads.
+     */
+    private void pushProgress(GenerationProgressEvent event) {
+        UI ui = progressUI;
+        // An update is already scheduled, it will deliver the latest progress
+        if (ui == null || pendingProgress.getAndSet(event) != null) {
+            return;
+        }
+        try {
+            ui.access(() -> {
+                GenerationProgressEvent latest = pendingProgress.getAndSet(null);
+                if (latest == null) {
+                    return;
+                }
+                fireEvent(latest);
+                if (getState(false).progressPage) {
+                    getRpcProxy(EnhancedBrowserWindowOpenerClientRpc.class).progress(latest.getFilename(),
+                        latest.getDone(), latest.getTotal(), latest.getUnit(), latest.isFinished(),
+                        latest.getFailure() != null);
+                }
+                if (ui.getPushConfiguration().getPushMode() == PushMode.MANUAL) {
+                    ui.push();
+                }
+            });
+        } catch (UIDetachedException e) {
+            pendingProgress.set(null);
+        }
+    }
+
+    /**
+     * Enables the reporting of window openings from the client.
+     *
+     * The client reports whether windows have been opened or blocked, whether pre-opened windows
+     * have been closed by the user, and the time elapsed since the click. Reports are batched and
+     * sent along with the next request, so they never cause a round trip of their own;
+     * listeners added by {@link #addWindowOpenListener(WindowOpenListener)} are notified when they arrive.
+     *
+     * @param sampleRate the fraction of openings to report, from 0 (disabled) to 1 (all).
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener withTelemetry(double sampleRate) {
+        if (!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+        }
+        getState().telemetrySampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * Adds a listener for the outcomes of window openings reported by the client.
+     *
+     * @param listener the listener to add
+     * @return a registration that removes the listener
+     * @see #withTelemetry(double)
+     */
+    public Registration addWindowOpenListener(WindowOpenListener listener) {
+        return addListener(WindowOpenEvent.class, listener, WindowOpenListener.WINDOW_OPEN_METHOD);
+    }
+
+    void onOpenReports(List<OpenReport> reports) {
+        for (OpenReport report : reports) {
+            if (report == null || report.outcome == null) {
+                continue;
+            }
+            Duration latency = report.latency < 0 ? null : Duration.ofMillis(report.latency);
+            fireEvent(new WindowOpenEvent(this, report.outcome, report.preOpened, latency));
+        }
+    }
+
+    /**
+     * Generates the content of this opener in advance, when the user is likely going to open it.
+     *
+     * When the pointer enters the extended component, or when it gets focus or a mouse button is pressed
+     * on it, the client asks the server to start generating the content set by {@code withGeneratedContent}
+     * or {@code withStreamingContent}; the window opened by the following click is served from it,
+     * hiding the generation time. Content not opened within {@code timeToLive} is discarded, as well as
+     * content prefetched when the pointer leaves the component or the focus is lost without a click.
+     * Only the content set on the opener is prefetched, not resources passed to {@link #open(Resource)}.
+     *
+     * Prefetch requires an executor set by {@link #withGeneratorExecutor(Executor)}; in blocking mode
+     * it is ignored, since the generator would run holding the session lock.
+     * Prefetched content expires after {@code timeToLive} even if no download is requested:
+     * its generation is cancelled, if still running, and the content is released.
+     *
+     * @param timeToLive how long prefetched content is kept, or {@literal null} to disable prefetch.
+     * @return current object for further customization
+     * @see GeneratedContentSettings#setPrefetchTimeToLive(Duration)
+     */
+    public EnhancedBrowserWindowOpener withPrefetch(Duration timeToLive) {
+        generatedContentSettings.setPrefetchTimeToLive(timeToLive);
+        updatePrefetch();
+        return this;
+    }
+
+    private void updatePrefetch() {
+        getState().prefetch = generatedContentSettings.getPrefetchTimeToLive() != null
+            && generatedContentSettings.getExecutor() != null;
+    }
+
+    private void onPrefetch() {
+        GeneratedContentResource resource = getGeneratedContentResource();
+        if (resource != null) {
+            Map<String, String[]> parameters = new HashMap<>();
+            for (String name : getParameterNames()) {
+                parameters.put(name, new String[]{getParameter(name)});
+            }
+            resource.prefetch(parameters);
+        }
+    }
+
+    private void onCancelPrefetch() {
+        GeneratedContentResource resource = getGeneratedContentResource();
+        if (resource != null) {
+            resource.cancelPrefetch();
+        }
+    }
+
+    private GeneratedContentResource getGeneratedContentResource() {
+        Resource resource = getResource(BrowserWindowOpenerState.locationResource);
+        return resource instanceof GeneratedContentResource ? (GeneratedContentResource) resource : null;
+    }
+
+    /**
+     * Discards prefetched content, cancels the generations of content not yet sent to the client
+     * and the resources still being computed for {@code openAsync}, and revokes the download tokens
+     * of the opened resources.
+     */
+    /**
+     * Resolves the cache scope of the session and the UI receiving the progress of the generations,
+     * so downloads and generators running without the session lock could use them.
+     */
+    @Override
+    public void attach() {
+        super.attach();
+        if (sessionScopedCache) {
+            sessionCacheScope();
+        }
+        if (progressRegistration != null) {
+            progressUI = getUI();
+        }
+    }
+
+    @Override
+    public void detach() {
+        onCancelPrefetch();
+        generatedContentSettings.cancelAbandonedGenerations("UI detached");
+        revokeDownloadTokens();
+        if (asyncOpens != null) {
+            asyncOpens.cancel();
+        }
+        stopPolling();
+        progressUI = null;
+        super.detach();
+    }
+
     /**
      * Extends the given connector.
      *
@@ -287,9 +1545,100 @@ public class EnhancedBrowserWindowOpener extends BrowserWindowOpener {
         return (EnhancedBrowserWindowOpenerState) super.getState(markAsDirty);
     }
 
+    /**
+     * Registers a component whose clicks trigger this opener.
+     *
+     * Triggers are meant for openers shared by many components, obtained by {@link #forUI(UI)}:
+     * the opener extends the UI and reacts only to clicks on registered components, so a single
+     * connector serves all of them. Server side listeners of the trigger could then call
+     * {@link #open(Resource)} to open the content for the clicked component.
+     * Once at least one trigger is registered, also openers not shared ignore clicks on
+     * other parts of the extended component.
+     *
+     * A trigger is dropped from the state sent to the client while it is detached, so that
+     * the opener does not keep references to removed components, and added back when it is
+     * attached again.
+     *
+     * @param trigger the component that triggers the opener
+     * @return a registration that removes the trigger
+     */
+    public Registration addTrigger(AbstractComponent trigger) {
+        Objects.requireNonNull(trigger, "trigger must not be null");
+        getState().triggers.add(trigger);
+        // Connector references are resolved on the client only if the trigger is attached
+        Registration attachRegistration = trigger.addAttachListener(event -> {
+            if (!getState(false).triggers.contains(trigger)) {
+                getState().triggers.add(trigger);
+            }
+            markAsDirty();
+        });
+        Registration detachRegistration = trigger.addDetachListener(event -> getState().triggers.remove(trigger));
+        return () -> {
+            attachRegistration.remove();
+            detachRegistration.remove();
+            getState().triggers.remove(trigger);
+        };
+    }
+
+    /**
+     * Restricts the opener to clicks on elements with the given style name, or inside them.
+     *
+     * Useful when the extended component renders many clickable parts, for example the cells
+     * of a {@link com.vaadin.ui.Grid} column.
+     *
+     * @param styleName the style name of the elements that trigger the opener, or {@literal null}
+     *                  to react to clicks on the whole component.
+     * @return current object for further customization
+     */
+    public EnhancedBrowserWindowOpener withTriggerStyleName(String styleName) {
+        getState().triggerStyleName = styleName;
+        return this;
+    }
+
+    /**
+     * Gets the settings for the content generated by this opener.
+     *
+     * @return the settings for the content generated by this opener
+     */
+    public GeneratedContentSettings getGeneratedContentSettings() {
+        return generatedContentSettings;
+    }
+
+    /**
+     * Gets the opener shared by all the components of the given UI, creating it if needed.
+     *
+     * The shared opener extends the UI and is resolved without scanning extensions,
+     * so screens with many triggers use a single connector instead of one per component;
+     * register the components with {@link #addTrigger(AbstractComponent)}.
+     * The opener is discarded when the UI is detached.
+     *
+     * Must be called holding the session lock.
+     *
+     * @param ui the UI, attached to a session
+     * @return the opener shared by the components of the UI
+     */
+    public static EnhancedBrowserWindowOpener forUI(UI ui) {
+        Objects.requireNonNull(ui, "ui must not be null");
+        VaadinSession session = ui.getSession();
+        if (session == null) {
+            throw new IllegalStateException("UI is not attached to a session");
+        }
+        return UIOpenerRegistry.get(session).openerFor(ui);
+    }
+
+    static EnhancedBrowserWindowOpener createShared(UI ui) {
+        EnhancedBrowserWindowOpener opener = new EnhancedBrowserWindowOpener();
+        opener.getState().shared = true;
+        opener.extend(ui);
+        return opener;
+    }
+
     /**
      * Extends the target component or return an already attached extension instance.
      *
+     * Every call for a different component creates a new connector; when many components
+     * open windows consider {@link #forUI(UI)} with {@link #addTrigger(AbstractComponent)}.
+     *
      * @param target The component to extend
      * @return The extension instance
      */
@@ -301,5 +1650,13 @@ public class EnhancedBrowserWindowOpener extends BrowserWindowOpener {
             .orElseGet(() -> new EnhancedBrowserWindowOpener().doExtend(target));
     }
 
+    /**
+     * The url of a shared download, already carrying the parameters and the fragment of its open.
+     */
+    private static final class SharedDownloadResource extends ExternalResource {
 
+        private SharedDownloadResource(String url) {
+            super(url);
+        }
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link MaterializedContent} stored in a file.
+ *
+ * Downloads are handed over to the servlet container when it supports it, see {@link ContainerTransfer};
+ * otherwise the file is copied to the response stream in chunks.
+ * Temporary files are deleted when the content is released by all its users.
+ */
+final class FileContent implements MaterializedContent {
+
+    private final Path file;
+    private final long size;
+    private final boolean temporary;
+    private final FileTime lastModified;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicReference<String> digest;
+
+    FileContent(Path file, long size, boolean temporary) {
+        this(file, size, temporary, null, new AtomicReference<>());
+    }
+
+    /**
+     * Creates content for a file, sharing the computed digest with other instances for the same file version.
+     *
+     * @param file         the file
+     * @param size         the size of the file
+     * @param temporary    whether the file is deleted when the content is released
+     * @param lastModified the last modification time of the file, or {@literal null}
+     * @param digest       holder of the digest of the file, filled when it is first computed
+     */
+    FileContent(Path file, long size, boolean temporary, FileTime lastModified, AtomicReference<String> digest) {
+        this.file = file;
+        this.size = size;
+        this.temporary = temporary;
+        this.lastModified = lastModified;
+        this.digest = digest;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    boolean isTemporary() {
+        return temporary;
+    }
+
+    FileTime getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, 0, size);
+    }
+
+    @Override
+    public void writeTo(OutputStream out, long offset, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    throw new EOFException("Unexpected end of file " + file);
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+
+    @Override
+    public String getDigest() throws IOException {
+        String value = digest.get();
+        if (value == null) {
+            value = MaterializedContent.super.getDigest();
+            digest.set(value);
+        }
+        return value;
+    }
+
+    @Override
+    public MaterializedContent retain() {
+        if (references.getAndUpdate(count -> count > 0 ? count + 1 : count) <= 0) {
+            throw new IllegalStateException("Content has already been released");
+        }
+        return this;
+    }
+
+    @Override
+    public void release() {
+        if (references.decrementAndGet() == 0 && temporary) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+}
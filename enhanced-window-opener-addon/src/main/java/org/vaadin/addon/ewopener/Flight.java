@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A content generation in progress, whose bytes are fanned out to the responses
+ * of identical requests arrived while it runs.
+ *
+ * The leader request writes the content through {@link #tee(OutputStream)}; followers
+ * copy it with {@link #writeTo(OutputStream)} as it is produced. Followers could join only
+ * until the content exceeds the join limit, since until then they need it from its first byte.
+ * Past the limit each chunk is dropped as soon as every follower has copied it, and the leader
+ * waits for the followers while the retained chunks exceed the limit, so at most about
+ * the join limit of content is held in memory. A follower that does not catch up within
+ * the follower timeout, or that has not started copying yet, is detached and fails with
+ * an {@link IOException}, so a stalled client never blocks the generation for long.
+ */
+final class Flight {
+
+    private final long joinLimit;
+    private final long followerTimeoutNanos;
+    // chunks not copied yet by every follower; the first one has index dropped
+    private final List<byte[]> chunks = new ArrayList<>();
+    private final List<Cursor> cursors = new ArrayList<>();
+    private long dropped;
+    private long retained;
+    private long size;
+    private int followers;
+    private int unstarted;
+    // followers detached before calling writeTo or leave
+    private int detachedUnstarted;
+    private boolean joinable = true;
+    private boolean retaining = true;
+    private boolean completed;
+    private boolean notFound;
+    private Throwable failure;
+
+    Flight(long joinLimit, long followerTimeoutNanos) {
+        this.joinLimit = joinLimit;
+        this.followerTimeoutNanos = followerTimeoutNanos;
+    }
+
+    synchronized boolean tryJoin() {
+        if (!joinable) {
+            return false;
+        }
+        followers++;
+        unstarted++;
+        return true;
+    }
+
+    OutputStream tee(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                append(b, off, len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    private synchronized void append(byte[] b, int off, int len) throws InterruptedIOException {
+        if (len <= 0) {
+            return;
+        }
+        size += len;
+        if (retaining) {
+            chunks.add(Arrays.copyOfRange(b, off, off + len));
+            retained += len;
+        }
+        if (size > joinLimit && joinable) {
+            joinable = false;
+            release();
+        }
+        notifyAll();
+        try {
+            long deadline = System.nanoTime() + followerTimeoutNanos;
+            while (retaining && !joinable && retained > joinLimit) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    detachLaggingFollowers();
+                } else {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for shared generation followers");
+        }
+    }
+
+    // detaches the followers holding the oldest chunks until the retained content fits the join limit
+    private void detachLaggingFollowers() {
+        detachedUnstarted += unstarted;
+        unstarted = 0;
+        release();
+        while (retained > joinLimit && !cursors.isEmpty()) {
+            Cursor slowest = cursors.get(0);
+            for (Cursor cursor : cursors) {
+                if (cursor.next < slowest.next) {
+                    slowest = cursor;
+                }
+            }
+            slowest.detached = true;
+            cursors.remove(slowest);
+            release();
+        }
+    }
+
+    /**
+     * Marks the content as not found, so that followers answer as the leader did.
+     */
+    synchronized void notFound() {
+        notFound = true;
+    }
+
+    synchronized void complete(Throwable failure) {
+        this.failure = failure;
+        completed = true;
+        joinable = false;
+        release();
+        notifyAll();
+    }
+
+    /**
+     * Copies the content to the given stream as it is produced, until the generation completes.
+     *
+     * Must be called once by every follower that joined the flight, unless it {@link #leave() leaves}
+     * it before.
+     *
+     * @param out the stream to write the content to
+     * @throws IOException if the generation fails, the follower has been detached because it fell behind,
+     *                     or the content cannot be written
+     */
+    void writeTo(OutputStream out) throws IOException {
+        Cursor cursor = new Cursor();
+        synchronized (this) {
+            if (detachedUnstarted > 0) {
+                detachedUnstarted--;
+                followers--;
+                throw new IOException("Shared generation went on without this request");
+            }
+            unstarted--;
+            cursors.add(cursor);
+        }
+        try {
+            while (true) {
+                List<byte[]> available;
+                synchronized (this) {
+                    while (cursor.next == dropped + chunks.size() && !completed && !cursor.detached) {
+                        wait();
+                    }
+                    if (cursor.detached) {
+                        throw new IOException("Request too slow to follow the shared generation");
+                    }
+                    if (cursor.next == dropped + chunks.size()) {
+                        if (failure != null) {
+                            throw new IOException("Shared generation failed", failure);
+                        }
+                        return;
+                    }
+                    available = new ArrayList<>(chunks.subList((int) (cursor.next - dropped), chunks.size()));
+                }
+                // write outside the monitor, so a slow client does not block the generator
+                for (byte[] chunk : available) {
+                    out.write(chunk);
+                }
+                synchronized (this) {
+                    if (cursor.detached) {
+                        throw new IOException("Request too slow to follow the shared generation");
+                    }
+                    cursor.next += available.size();
+                    release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for shared generation");
+        } finally {
+            synchronized (this) {
+                cursors.remove(cursor);
+                followers--;
+                release();
+            }
+        }
+    }
+
+    /**
+     * Waits until the first byte of content has been produced or the generation has completed.
+     *
+     * @return true if content is available or the generation succeeded, also when the content was
+     * {@link #isNotFound() not found}, false if it failed without content.
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    synchronized boolean awaitStart() throws InterruptedIOException {
+        try {
+            while (size == 0 && !completed) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for shared generation");
+        }
+        return size > 0 || failure == null;
+    }
+
+    /**
+     * Tells whether the leader found no content to generate.
+     *
+     * @return true if the content was not found
+     */
+    synchronized boolean isNotFound() {
+        return notFound;
+    }
+
+    synchronized boolean hasFollowers() {
+        return followers > 0;
+    }
+
+    /**
+     * Gets the number of bytes of content held in memory for the followers.
+     *
+     * @return the number of retained bytes
+     */
+    synchronized long getRetained() {
+        return retained;
+    }
+
+    /**
+     * Leaves the flight without copying the content.
+     */
+    synchronized void leave() {
+        followers--;
+        if (detachedUnstarted > 0) {
+            detachedUnstarted--;
+        } else {
+            unstarted--;
+        }
+        release();
+    }
+
+    // drops the chunks that no follower, current or future, could read anymore
+    private void release() {
+        if (joinable || unstarted > 0) {
+            return;
+        }
+        if (cursors.isEmpty()) {
+            // no follower could read the chunks anymore
+            retaining = false;
+        }
+        long next = dropped + chunks.size();
+        for (Cursor cursor : cursors) {
+            next = Math.min(next, cursor.next);
+        }
+        while (dropped < next) {
+            retained -= chunks.remove(0).length;
+            dropped++;
+        }
+        notifyAll();
+    }
+
+    private static final class Cursor {
+        private long next;
+        private boolean detached;
+    }
+}
@@ -0,0 +1,1064 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.server.DownloadStream;
+import com.vaadin.server.SerializableSupplier;
+import com.vaadin.server.StreamResource;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+import com.vaadin.server.VaadinService;
+import com.vaadin.server.VaadinSession;
+import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerState;
+
+/**
+ * A {@link StreamResource} whose content is generated when the download is requested.
+ *
+ * Content could be provided by a {@link com.vaadin.server.StreamResource.StreamSource},
+ * written directly to the response by a {@link ContentWriter} or by a {@link ContentGenerator}
+ * resolved from the {@link GeneratorRegistry} through a {@link GeneratorDescriptor}.
+ * Content already available in a file or in a {@link ByteBuffer} is served as is, with an exact
+ * {@code Content-Length}; files and direct buffers are handed over to the servlet container when it
+ * supports it, through Tomcat sendfile or Jetty {@code HttpOutput.sendContent}, and otherwise copied
+ * to the response in chunks.
+ *
+ * How the content is generated is controlled by {@link GeneratedContentSettings}.
+ * By default a {@link com.vaadin.server.StreamResource.StreamSource} is invoked while Vaadin
+ * holds the session lock, exactly as for a plain {@link StreamResource}, whereas a
+ * {@link ContentWriter} always runs when the response is written, after the lock has been released.
+ * If an executor is configured generation runs on the executor.
+ * If a {@link ContentCache} is configured, content is served from the cache when available.
+ * If buffering or range requests are enabled, content is fully generated before being sent,
+ * keeping it in memory up to a threshold and then in a temporary file;
+ * with range requests HTTP {@code Range} headers are honored, so interrupted downloads could be resumed.
+ * If compression is enabled, content is compressed while it is sent, when the client accepts it.
+ * With a {@link SingleFlightGroup}, identical requests arriving while content is generated share
+ * the same generation.
+ * If prefetch is enabled, content could be generated before the download is requested and kept
+ * for a short time, so that the download is served without waiting for the generator.
+ * Generations are cancelled, see {@link CancellationToken}, when the client goes away.
+ */
+public class GeneratedContentResource extends StreamResource {
+
+    private static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+    private static final int SC_PARTIAL_CONTENT = 206;
+    private static final int SC_NOT_FOUND = 404;
+    private static final int SC_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+    private static final int SC_SERVICE_UNAVAILABLE = 503;
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String ACCEPT_RANGES = "Accept-Ranges";
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String ETAG = "ETag";
+    private static final String IF_RANGE = "If-Range";
+    private static final String RANGE = "Range";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String VARY = "Vary";
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final GeneratedContentSettings settings;
+    private final ContentProvider contentProvider;
+    private final MaterializedSource materializedSource;
+    private transient volatile Prefetch prefetch;
+
+    /**
+     * Creates a new resource with its own settings.
+     *
+     * @param filename  The filename for the generated resource.
+     * @param generator The content generator.
+     */
+    public GeneratedContentResource(String filename, StreamSource generator) {
+        this(filename, generator, new GeneratedContentSettings());
+    }
+
+    /**
+     * Creates a new resource that uses the given settings.
+     *
+     * @param filename  The filename for the generated resource.
+     * @param generator The content generator.
+     * @param settings  The settings for content generation.
+     */
+    public GeneratedContentResource(String filename, StreamSource generator, GeneratedContentSettings settings) {
+        super(Objects.requireNonNull(generator), filename);
+        this.settings = Objects.requireNonNull(settings);
+        this.contentProvider = this::openStreamSource;
+        this.materializedSource = null;
+    }
+
+    /**
+     * Creates a new resource with its own settings, whose content is written
+     * directly to the response.
+     *
+     * @param filename The filename for the generated resource.
+     * @param writer   The content writer.
+     */
+    public GeneratedContentResource(String filename, ContentWriter writer) {
+        this(filename, writer, new GeneratedContentSettings());
+    }
+
+    /**
+     * Creates a new resource that uses the given settings, whose content is written
+     * directly to the response.
+     *
+     * @param filename The filename for the generated resource.
+     * @param writer   The content writer.
+     * @param settings The settings for content generation.
+     */
+    public GeneratedContentResource(String filename, ContentWriter writer, GeneratedContentSettings settings) {
+        super(null, filename);
+        Objects.requireNonNull(writer);
+        this.settings = Objects.requireNonNull(settings);
+        this.contentProvider = () -> writer;
+        this.materializedSource = null;
+    }
+
+    /**
+     * Creates a new resource with its own settings, whose content is written directly to the response
+     * by the registered generator identified by the given descriptor.
+     *
+     * @param filename   The filename for the generated resource.
+     * @param descriptor The descriptor of the generator.
+     */
+    public GeneratedContentResource(String filename, GeneratorDescriptor descriptor) {
+        this(filename, descriptor, new GeneratedContentSettings());
+    }
+
+    /**
+     * Creates a new resource that uses the given settings, whose content is written directly to the response
+     * by the registered generator identified by the given descriptor.
+     *
+     * Only the descriptor is kept in the resource; the generator is looked up in
+     * {@link GeneratorRegistry#getDefault()} when the download is requested, and a download
+     * for a generator not registered is answered with {@code 404 Not Found}.
+     *
+     * @param filename   The filename for the generated resource.
+     * @param descriptor The descriptor of the generator.
+     * @param settings   The settings for content generation.
+     */
+    public GeneratedContentResource(String filename, GeneratorDescriptor descriptor,
+                                    GeneratedContentSettings settings) {
+        super(null, filename);
+        this.settings = Objects.requireNonNull(settings);
+        this.contentProvider = new RegisteredContentProvider(Objects.requireNonNull(descriptor));
+        this.materializedSource = null;
+    }
+
+    /**
+     * Creates a new resource with its own settings, whose content is read from the given file.
+     *
+     * @param filename The filename for the resource.
+     * @param file     The file with the content.
+     */
+    public GeneratedContentResource(String filename, Path file) {
+        this(filename, file, new GeneratedContentSettings());
+    }
+
+    /**
+     * Creates a new resource that uses the given settings, whose content is read from the given file.
+     *
+     * The file is read when the download is requested and handed over to the servlet container
+     * when it supports it, otherwise copied to the response in chunks; a download for a file that
+     * does not exist is answered with {@code 404 Not Found}.
+     * Only the path of the file is kept in the resource.
+     *
+     * @param filename The filename for the resource.
+     * @param file     The file with the content.
+     * @param settings The settings for content generation.
+     */
+    public GeneratedContentResource(String filename, Path file, GeneratedContentSettings settings) {
+        this(filename, new FileSource(file.toAbsolutePath().toString()), settings);
+    }
+
+    /**
+     * Creates a new resource with its own settings, whose content is held in the given buffer.
+     *
+     * @param filename The filename for the resource.
+     * @param buffer   The buffer with the content.
+     */
+    public GeneratedContentResource(String filename, ByteBuffer buffer) {
+        this(filename, buffer, new GeneratedContentSettings());
+    }
+
+    /**
+     * Creates a new resource that uses the given settings, whose content is held in the given buffer.
+     *
+     * The content is made of the bytes between the current position and limit of the buffer,
+     * that must not be changed afterwards; a direct or a memory-mapped buffer keeps the content
+     * out of the heap. The buffer is not serialized with the session; after deserialization
+     * downloads are answered with {@code 404 Not Found}.
+     *
+     * @param filename The filename for the resource.
+     * @param buffer   The buffer with the content.
+     * @param settings The settings for content generation.
+     */
+    public GeneratedContentResource(String filename, ByteBuffer buffer, GeneratedContentSettings settings) {
+        this(filename, new BufferSource(new ByteBufferContent(buffer)), settings);
+    }
+
+    private GeneratedContentResource(String filename, MaterializedSource source, GeneratedContentSettings settings) {
+        super(null, filename);
+        this.settings = Objects.requireNonNull(settings);
+        this.materializedSource = source;
+        this.contentProvider = () -> {
+            MaterializedContent content = source.open();
+            return out -> {
+                try {
+                    content.writeTo(out);
+                } finally {
+                    content.release();
+                }
+            };
+        };
+    }
+
+    /**
+     * Gets the settings used to generate the content of this resource.
+     *
+     * @return the content generation settings.
+     */
+    public GeneratedContentSettings getSettings() {
+        return settings;
+    }
+
+    @Override
+    public DownloadStream getStream() {
+        if (materializedSource != null) {
+            return openMaterialized();
+        }
+        ContentCache cache = settings.getContentCache();
+        SingleFlightGroup flightGroup = settings.getSingleFlightGroup();
+        Prefetch warm = prefetch;
+        prefetch = null;
+        ContentCacheKey cacheKey = cache == null && flightGroup == null && warm == null ? null : createCacheKey();
+        if (warm != null && (!warm.getKey().equals(cacheKey) || !warm.claim())) {
+            warm.cancel();
+            warm = null;
+        }
+        MaterializedContent cached = cache == null || warm != null ? null : cache.get(cacheKey);
+        GeneratedDownloadStream stream = new GeneratedDownloadStream(contentProvider, cache, cacheKey, cached);
+        stream.setBufferSize(getBufferSize());
+        stream.setCacheTime(getCacheTime());
+        if (cached != null) {
+            return stream;
+        }
+        if (warm != null) {
+            stream.prefetched = warm;
+            return stream;
+        }
+        if (flightGroup != null) {
+            stream.flightGroup = flightGroup;
+            stream.ticket = flightGroup.join(cacheKey, settings.getBufferThreshold());
+            if (!stream.ticket.isLeader()) {
+                // the content is produced by the request that started the generation
+                return stream;
+            }
+        }
+        try {
+            stream.limiters = getLimiters();
+            if (settings.getExecutor() == null && getStreamSource() != null) {
+                // blocking mode: as for a plain StreamResource the source is invoked holding the session lock
+                stream.permit = acquireWithoutWaiting(stream.limiters);
+                if (stream.permit != GenerationPermit.REJECTED) {
+                    ContentWriter writer = openStreamSource(stream.permit);
+                    stream.contentProvider = () -> writer;
+                }
+            }
+        } catch (RuntimeException e) {
+            if (stream.ticket != null) {
+                flightGroup.complete(stream.ticket, e);
+            }
+            throw e;
+        }
+        return stream;
+    }
+
+    /**
+     * Generates the whole content on the calling thread, for example to store it outside of the session.
+     *
+     * Generators run without the session lock, also in blocking mode, and without concurrency limits.
+     * With a content cache, content cached for the given parameters is returned without generation
+     * and generated content is cached, as for a download requested with the same parameters.
+     *
+     * @param parameters the parameters the content is requested with
+     * @return the generated content, retained for the caller, or {@literal null} if there is no content
+     * @throws IOException if the content cannot be generated
+     */
+    MaterializedContent materializeContent(Map<String, String[]> parameters) throws IOException {
+        ContentCache cache = settings.getContentCache();
+        ContentCacheKey key = cache == null ? null : createCacheKey(parameters);
+        MaterializedContent cached = cache == null ? null : cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        ContentWriter writer = contentProvider.open();
+        if (writer == null) {
+            return null;
+        }
+        ContentBuffer buffer = newBuffer();
+        MaterializedContent content;
+        try {
+            writer.write(buffer);
+            content = buffer.toContent();
+        } catch (IOException | RuntimeException e) {
+            buffer.discard();
+            throw e;
+        }
+        if (cache != null) {
+            cache.put(key, content);
+        }
+        return content;
+    }
+
+    private DownloadStream openMaterialized() {
+        MaterializedContent content;
+        try {
+            content = materializedSource.open();
+        } catch (IOException e) {
+            getLogger().log(Level.FINE, "Content of " + getFilename() + " is not available", e);
+            return new MissingContentStream(getFilename());
+        }
+        // served as cached content, without generation, limits or executor
+        GeneratedDownloadStream stream = new GeneratedDownloadStream(contentProvider, null, null, content);
+        stream.cacheHit = false;
+        stream.setBufferSize(getBufferSize());
+        stream.setCacheTime(getCacheTime());
+        return stream;
+    }
+
+    private ContentWriter openStreamSource() {
+        InputStream stream = getStreamSource().getStream();
+        return stream == null ? null : out -> copy(stream, out, getBufferSize());
+    }
+
+    private ContentWriter openStreamSource(GenerationPermit permit) {
+        try {
+            return openStreamSource();
+        } catch (RuntimeException e) {
+            if (permit != null) {
+                permit.release();
+            }
+            throw e;
+        }
+    }
+
+    private List<ConcurrencyLimiter> getLimiters() {
+        List<ConcurrencyLimiter> limiters = new ArrayList<>(3);
+        VaadinSession session = VaadinSession.getCurrent();
+        if (session != null && settings.getMaxConcurrentPerSession() > 0) {
+            limiters.add(ConcurrencyLimiter.forSession(session, settings.getMaxConcurrentPerSession()));
+        }
+        ConcurrencyLimiter openerLimiter = settings.getOpenerLimiter();
+        if (openerLimiter != null) {
+            limiters.add(openerLimiter);
+        }
+        ConcurrencyLimiter sharedLimiter = settings.getConcurrencyLimiter();
+        if (sharedLimiter != null) {
+            limiters.add(sharedLimiter);
+        }
+        return limiters;
+    }
+
+    private static GenerationPermit acquireWithoutWaiting(List<ConcurrencyLimiter> limiters) {
+        if (limiters.isEmpty()) {
+            return null;
+        }
+        try {
+            // waiting here would hold the session lock
+            return GenerationPermit.acquire(limiters, Duration.ZERO);
+        } catch (InterruptedIOException e) {
+            return GenerationPermit.REJECTED;
+        }
+    }
+
+    private ContentCacheKey createCacheKey() {
+        VaadinRequest request = VaadinService.getCurrentRequest();
+        return createCacheKey(request == null ? Collections.emptyMap() : request.getParameterMap());
+    }
+
+    private ContentCacheKey createCacheKey(Map<String, String[]> parameters) {
+        if (parameters.containsKey(EnhancedBrowserWindowOpenerState.downloadIdParameter)) {
+            // identifies the opening, not the content
+            parameters = new HashMap<>(parameters);
+            parameters.remove(EnhancedBrowserWindowOpenerState.downloadIdParameter);
+        }
+        SerializableSupplier<String> keyProvider = settings.getCacheKeyProvider();
+        return new ContentCacheKey(settings.getContentNamespace(), getFilename(), parameters,
+            keyProvider == null ? null : keyProvider.get());
+    }
+
+    /**
+     * Starts generating the content for a download requested with the given parameters,
+     * if prefetch is enabled.
+     *
+     * The content is kept for the time to live set by {@link GeneratedContentSettings#setPrefetchTimeToLive(Duration)};
+     * a download requested in the meantime with the same parameters is served from it.
+     * Generation runs on the configured executor and is cancelled, releasing the content,
+     * when the time to live elapses; in blocking mode prefetch is ignored, since the
+     * generator would run holding the session lock.
+     *
+     * @param parameters the parameters the download will be requested with
+     */
+    void prefetch(Map<String, String[]> parameters) {
+        Duration timeToLive = settings.getPrefetchTimeToLive();
+        Executor executor = settings.getExecutor();
+        if (timeToLive == null || executor == null) {
+            return;
+        }
+        ContentCacheKey key = createCacheKey(parameters);
+        Prefetch current = prefetch;
+        if (current != null && current.getKey().equals(key) && !current.isCancelled() && !current.isExpired()) {
+            return;
+        }
+        cancelPrefetch();
+        ContentCache cache = settings.getContentCache();
+        MaterializedContent cached = cache == null ? null : cache.get(key);
+        if (cached != null) {
+            // the download will be served from the cache anyway
+            cached.release();
+            return;
+        }
+        Prefetch started = new Prefetch(key, timeToLive);
+        ContentProvider source = contentProvider;
+        List<ConcurrencyLimiter> limiters = getLimiters();
+        try {
+            executor.execute(() -> generatePrefetch(started, source, limiters));
+            started.scheduleExpiration();
+            prefetch = started;
+        } catch (RejectedExecutionException e) {
+            getLogger().log(Level.FINE, "Prefetch of " + getFilename() + " rejected by the executor", e);
+        }
+    }
+
+    /**
+     * Cancels the content generated by {@link #prefetch(Map)} not yet claimed by a download.
+     */
+    void cancelPrefetch() {
+        Prefetch current = prefetch;
+        prefetch = null;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private void generatePrefetch(Prefetch target, ContentProvider provider, List<ConcurrencyLimiter> limiters) {
+        try {
+            GenerationPermit permit = limiters.isEmpty()
+                ? null : GenerationPermit.acquire(limiters, settings.getQueueTimeout());
+            if (permit == GenerationPermit.REJECTED) {
+                target.reject();
+                return;
+            }
+            try {
+                if (target.isCancelled()) {
+                    // expired or cancelled while waiting for the permit
+                    target.complete(null);
+                    return;
+                }
+                ContentWriter writer = provider.open();
+                if (writer == null) {
+                    target.complete(null);
+                    return;
+                }
+                ContentBuffer buffer = newBuffer();
+                try {
+                    writer.write(target.guard(buffer));
+                } catch (IOException | RuntimeException e) {
+                    buffer.discard();
+                    throw e;
+                }
+                target.complete(buffer.toContent());
+            } finally {
+                if (permit != null) {
+                    permit.release();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            target.fail(e);
+        }
+    }
+
+    private ContentBuffer newBuffer() {
+        return new ContentBuffer(settings.getBufferThreshold(), settings.getTempDirectory(),
+            settings.getContentStore());
+    }
+
+    static void copy(InputStream in, OutputStream out, int bufferSize) throws IOException {
+        try (InputStream source = in) {
+            byte[] buffer = new byte[bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE];
+            int read;
+            while ((read = source.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Opens the content of the resource.
+     */
+    @FunctionalInterface
+    private interface ContentProvider extends Serializable {
+
+        /**
+         * Gets the writer for the resource content.
+         *
+         * @return the writer for the resource content, or {@literal null} if there is no content.
+         * @throws IOException if the content cannot be opened
+         */
+        ContentWriter open() throws IOException;
+    }
+
+    /**
+     * Opens content that is already available.
+     */
+    @FunctionalInterface
+    private interface MaterializedSource extends Serializable {
+
+        /**
+         * Gets the content of the resource.
+         *
+         * @return the content of the resource, retained on behalf of the caller
+         * @throws IOException if the content is not available
+         */
+        MaterializedContent open() throws IOException;
+    }
+
+    private static final class FileSource implements MaterializedSource {
+
+        private final String path;
+        private transient volatile FileVersion version;
+
+        private FileSource(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public MaterializedContent open() throws IOException {
+            Path file = Paths.get(path);
+            if (!Files.isRegularFile(file)) {
+                throw new FileNotFoundException(path);
+            }
+            long size = Files.size(file);
+            FileTime lastModified = Files.getLastModifiedTime(file);
+            FileVersion current = version;
+            if (current == null || current.size != size || !current.lastModified.equals(lastModified)) {
+                current = new FileVersion(size, lastModified);
+                version = current;
+            }
+            // a new instance for each caller, that releases it; the digest is computed once for each version
+            return new FileContent(file, size, false, lastModified, current.digest);
+        }
+    }
+
+    private static final class FileVersion {
+
+        private final long size;
+        private final FileTime lastModified;
+        private final AtomicReference<String> digest = new AtomicReference<>();
+
+        private FileVersion(long size, FileTime lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static final class BufferSource implements MaterializedSource {
+
+        private final transient ByteBufferContent content;
+
+        private BufferSource(ByteBufferContent content) {
+            this.content = content;
+        }
+
+        @Override
+        public MaterializedContent open() throws IOException {
+            if (content == null) {
+                throw new FileNotFoundException("Buffer content is not serialized");
+            }
+            return content.retain();
+        }
+    }
+
+    /**
+     * Answers not found for content that is not available anymore.
+     */
+    private static final class MissingContentStream extends DownloadStream {
+
+        private MissingContentStream(String filename) {
+            super(null, null, filename);
+        }
+
+        @Override
+        public void writeResponse(VaadinRequest request, VaadinResponse response) {
+            response.setStatus(SC_NOT_FOUND);
+        }
+    }
+
+    private static final class RegisteredContentProvider implements ContentProvider {
+
+        private final GeneratorDescriptor descriptor;
+
+        private RegisteredContentProvider(GeneratorDescriptor descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public ContentWriter open() {
+            ContentGenerator generator = GeneratorRegistry.getDefault().get(descriptor.getGeneratorId());
+            if (generator == null) {
+                getLogger().log(Level.WARNING, "No content generator registered for " + descriptor);
+                return null;
+            }
+            Map<String, String> parameters = descriptor.getParameters();
+            return out -> generator.write(parameters, out);
+        }
+    }
+
+    /**
+     * A {@link DownloadStream} that generates the content only when the response is written,
+     * that is after Vaadin has released the session lock.
+     */
+    private class GeneratedDownloadStream extends DownloadStream {
+
+        private final ContentCache cache;
+        private final ContentCacheKey cacheKey;
+        private final MaterializedContent cached;
+        private final Instant requestTime = Instant.now();
+        private final long requestNanos = System.nanoTime();
+        private boolean cacheHit;
+        private ContentProvider contentProvider;
+        private List<ConcurrencyLimiter> limiters = Collections.emptyList();
+        private GenerationPermit permit;
+        private SingleFlightGroup flightGroup;
+        private SingleFlightGroup.Ticket ticket;
+        private Prefetch prefetched;
+        private GenerationMonitor monitor;
+        private GenerationTask task;
+        private MeteredOutputStream metered;
+
+        GeneratedDownloadStream(ContentProvider contentProvider, ContentCache cache,
+                                ContentCacheKey cacheKey, MaterializedContent cached) {
+            super(null, getMIMEType(), getFilename());
+            this.contentProvider = contentProvider;
+            this.cache = cache;
+            this.cacheKey = cacheKey;
+            this.cached = cached;
+            this.cacheHit = cached != null;
+        }
+
+        @Override
+        public void writeResponse(VaadinRequest request, VaadinResponse response) throws IOException {
+            List<ContentGenerationListener> listeners = settings.getListeners();
+            if (listeners.isEmpty()) {
+                generate(request, response);
+                return;
+            }
+            fire(listeners, new ContentGenerationEvent(GeneratedContentResource.this, requestTime,
+                cacheHit, null, null, 0, null), true);
+            monitor = new GenerationMonitor(GeneratedContentResource.this, listeners, settings.getProgressInterval());
+            Throwable failure = null;
+            try {
+                generate(request, response);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+                throw e;
+            } finally {
+                monitor.finish(failure);
+                fire(listeners, completedEvent(failure), false);
+            }
+        }
+
+        private ContentGenerationEvent completedEvent(Throwable failure) {
+            Duration duration = Duration.ofNanos(System.nanoTime() - requestNanos);
+            long bytes = 0;
+            Duration timeToFirstByte = null;
+            if (metered != null) {
+                bytes = metered.getCount();
+                if (metered.getFirstByteNanos() >= 0) {
+                    timeToFirstByte = Duration.ofNanos(metered.getFirstByteNanos() - requestNanos);
+                }
+            }
+            return new ContentGenerationEvent(GeneratedContentResource.this, requestTime, cacheHit,
+                timeToFirstByte, duration, bytes, failure);
+        }
+
+        private void fire(List<ContentGenerationListener> listeners, ContentGenerationEvent event, boolean started) {
+            for (ContentGenerationListener listener : listeners) {
+                try {
+                    if (started) {
+                        listener.generationStarted(event);
+                    } else {
+                        listener.generationCompleted(event);
+                    }
+                } catch (RuntimeException e) {
+                    getLogger().log(Level.WARNING, "Content generation listener failed for " + getFileName(), e);
+                }
+            }
+        }
+
+        private void generate(VaadinRequest request, VaadinResponse response) throws IOException {
+            if (prefetched != null) {
+                servePrefetched(request, response);
+                return;
+            }
+            if (ticket != null && !ticket.isLeader()) {
+                follow(request, response);
+                return;
+            }
+            task = new GenerationTask(getFileName(),
+                request.getParameter(EnhancedBrowserWindowOpenerState.downloadIdParameter));
+            if (ticket != null) {
+                task.setFlight(ticket.getFlight());
+            }
+            Set<GenerationTask> running = settings.getRunning();
+            running.add(task);
+            Throwable failure = null;
+            try {
+                GenerationPermit acquired = permit;
+                if (acquired == null && !limiters.isEmpty()) {
+                    acquired = GenerationPermit.acquire(limiters, settings.getQueueTimeout());
+                }
+                if (acquired == GenerationPermit.REJECTED) {
+                    failure = new IOException("Generation of " + getFileName() + " rejected by concurrency limits");
+                    writeBusy(response);
+                    return;
+                }
+                try {
+                    generateWithinLimits(request, response);
+                } finally {
+                    if (acquired != null) {
+                        acquired.release();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+                throw e;
+            } finally {
+                running.remove(task);
+                if (ticket != null) {
+                    flightGroup.complete(ticket, failure);
+                }
+            }
+        }
+
+        private void servePrefetched(VaadinRequest request, VaadinResponse response) throws IOException {
+            MaterializedContent content = prefetched.await();
+            if (content == null) {
+                if (prefetched.isRejected()) {
+                    writeBusy(response);
+                } else {
+                    response.setStatus(SC_NOT_FOUND);
+                }
+                return;
+            }
+            try {
+                if (cache != null) {
+                    cache.put(cacheKey, content);
+                }
+                serveMaterialized(request, response, content);
+            } finally {
+                content.release();
+            }
+        }
+
+        private void follow(VaadinRequest request, VaadinResponse response) throws IOException {
+            Flight flight = ticket.getFlight();
+            boolean started;
+            try {
+                started = flight.awaitStart();
+            } catch (IOException e) {
+                flight.leave();
+                throw e;
+            }
+            if (!started) {
+                flight.leave();
+                writeBusy(response);
+                return;
+            }
+            if (flight.isNotFound()) {
+                flight.leave();
+                response.setStatus(SC_NOT_FOUND);
+                return;
+            }
+            OutputStream out;
+            try {
+                ContentEncoding encoding = negotiateEncoding(request);
+                writeHeaders(response, encoding);
+                out = openOutputStream(response, encoding);
+            } catch (IOException | RuntimeException e) {
+                // the leader waits for every joined follower
+                flight.leave();
+                throw e;
+            }
+            try (OutputStream target = out) {
+                flight.writeTo(target);
+            }
+        }
+
+        private void writeBusy(VaadinResponse response) throws IOException {
+            long retryAfter = Math.max(1, settings.getQueueTimeout().getSeconds());
+            response.setStatus(SC_SERVICE_UNAVAILABLE);
+            response.setHeader(RETRY_AFTER, Long.toString(retryAfter));
+            response.setContentType("text/plain; charset=UTF-8");
+            try (Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write("The server is busy generating other content, please retry in "
+                    + retryAfter + " seconds.");
+            }
+        }
+
+        private void generateWithinLimits(VaadinRequest request, VaadinResponse response) throws IOException {
+            Executor executor = settings.getExecutor();
+            if (executor == null || cached != null) {
+                serve(request, response);
+            } else {
+                await(CompletableFuture.runAsync(() -> {
+                    try {
+                        serve(request, response);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+        }
+
+        private void serve(VaadinRequest request, VaadinResponse response) throws IOException {
+            if (cached != null) {
+                try {
+                    serveMaterialized(request, response, cached);
+                } finally {
+                    cached.release();
+                }
+                return;
+            }
+            ContentWriter writer = contentProvider.open();
+            if (writer == null) {
+                if (ticket != null) {
+                    ticket.getFlight().notFound();
+                }
+                response.setStatus(SC_NOT_FOUND);
+                return;
+            }
+            if (monitor != null) {
+                writer = monitor.track(writer);
+            }
+            if (ticket != null) {
+                // fan out the bytes to the requests that joined the generation
+                ContentWriter generator = writer;
+                Flight flight = ticket.getFlight();
+                writer = out -> generator.write(flight.tee(out));
+            }
+            writer = task.guard(writer);
+            if (settings.isBuffering() || settings.isRangeRequests()) {
+                MaterializedContent content = materialize(writer);
+                try {
+                    if (cache != null) {
+                        cache.put(cacheKey, content);
+                    }
+                    serveMaterialized(request, response, content);
+                } finally {
+                    content.release();
+                }
+                return;
+            }
+            ContentEncoding encoding = negotiateEncoding(request);
+            writeHeaders(response, encoding);
+            try (OutputStream out = openOutputStream(response, encoding)) {
+                if (cache == null) {
+                    writer.write(out);
+                } else {
+                    writeAndCapture(writer, out);
+                }
+            }
+        }
+
+        private void writeAndCapture(ContentWriter writer, OutputStream out) throws IOException {
+            CapturingOutputStream capturingOut = new CapturingOutputStream(out, newBuffer(), cache.getMaxSize());
+            try {
+                writer.write(capturingOut);
+            } catch (IOException | RuntimeException e) {
+                capturingOut.discard();
+                throw e;
+            }
+            MaterializedContent content = capturingOut.getCaptured();
+            if (content != null) {
+                cache.put(cacheKey, content);
+                content.release();
+            }
+        }
+
+        private MaterializedContent materialize(ContentWriter writer) throws IOException {
+            ContentBuffer buffer = newBuffer();
+            try {
+                writer.write(buffer);
+                return buffer.toContent();
+            } catch (IOException | RuntimeException e) {
+                buffer.discard();
+                throw e;
+            }
+        }
+
+        private void serveMaterialized(VaadinRequest request, VaadinResponse response,
+                                       MaterializedContent content) throws IOException {
+            long size = content.size();
+            ByteRange range = null;
+            if (settings.isRangeRequests()) {
+                String entityTag = '"' + content.getDigest() + '"';
+                response.setHeader(ACCEPT_RANGES, "bytes");
+                response.setHeader(ETAG, entityTag);
+                String ifRange = request.getHeader(IF_RANGE);
+                if (ifRange == null || ifRange.trim().equals(entityTag)) {
+                    range = ByteRange.parse(request.getHeader(RANGE), size);
+                }
+            }
+            if (range == ByteRange.UNSATISFIABLE) {
+                response.setHeader(CONTENT_RANGE, "bytes */" + size);
+                response.setStatus(SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (range == null) {
+                ContentEncoding encoding = negotiateEncoding(request);
+                writeHeaders(response, encoding);
+                if (encoding == null) {
+                    response.setHeader(CONTENT_LENGTH, Long.toString(size));
+                    if (sendThroughContainer(request, response, content, 0, size)) {
+                        return;
+                    }
+                }
+                try (OutputStream out = openOutputStream(response, encoding)) {
+                    content.writeTo(out);
+                }
+            } else {
+                writeHeaders(response, null);
+                response.setStatus(SC_PARTIAL_CONTENT);
+                response.setHeader(CONTENT_RANGE, "bytes " + range.getStart() + "-" + range.getEnd() + "/" + size);
+                response.setHeader(CONTENT_LENGTH, Long.toString(range.getLength()));
+                if (sendThroughContainer(request, response, content, range.getStart(), range.getLength())) {
+                    return;
+                }
+                try (OutputStream out = meter(response.getOutputStream())) {
+                    content.writeTo(out, range.getStart(), range.getLength());
+                }
+            }
+        }
+
+        private boolean sendThroughContainer(VaadinRequest request, VaadinResponse response,
+                                             MaterializedContent content, long offset, long length)
+            throws IOException {
+            if (!ContainerTransfer.send(request, response, content, offset, length)) {
+                return false;
+            }
+            metered = new MeteredOutputStream(response.getOutputStream());
+            metered.sent(length);
+            return true;
+        }
+
+        private boolean isCompressible() {
+            return settings.isCompression() && !settings.isRangeRequests()
+                && ContentEncoding.isCompressible(getContentType());
+        }
+
+        private ContentEncoding negotiateEncoding(VaadinRequest request) {
+            return isCompressible() ? ContentEncoding.negotiate(request.getHeader(ACCEPT_ENCODING)) : null;
+        }
+
+        private OutputStream openOutputStream(VaadinResponse response, ContentEncoding encoding) throws IOException {
+            OutputStream out = response.getOutputStream();
+            if (encoding != null) {
+                int bufferSize = getBufferSize() > 0 ? getBufferSize() : DEFAULT_BUFFER_SIZE;
+                out = encoding.wrap(out, settings.getCompressionLevel(), bufferSize);
+            }
+            return meter(out);
+        }
+
+        private OutputStream meter(OutputStream out) {
+            metered = new MeteredOutputStream(task == null ? out : task.watch(out));
+            return metered;
+        }
+
+        private void writeHeaders(VaadinResponse response, ContentEncoding encoding) {
+            response.setContentType(getContentType());
+            response.setCacheTime(getCacheTime());
+            Iterator<String> parameterNames = getParameterNames();
+            while (parameterNames != null && parameterNames.hasNext()) {
+                String name = parameterNames.next();
+                response.setHeader(name, getParameter(name));
+            }
+            String contentDisposition = getParameter(CONTENT_DISPOSITION);
+            if (contentDisposition == null) {
+                contentDisposition = getContentDispositionFilename(getFileName());
+            }
+            response.setHeader(CONTENT_DISPOSITION, contentDisposition);
+            if (isCompressible()) {
+                response.setHeader(VARY, ACCEPT_ENCODING);
+            }
+            if (encoding != null) {
+                response.setHeader(CONTENT_ENCODING, encoding.getToken());
+            }
+        }
+
+        private void await(CompletableFuture<Void> future) throws IOException {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while generating content for " + getFileName());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                throw new IOException("Cannot generate content for " + getFileName(), cause);
+            }
+        }
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(GeneratedContentResource.class.getName());
+    }
+}
@@ -0,0 +1,618 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.File;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+
+import com.vaadin.server.SerializableSupplier;
+import com.vaadin.shared.Registration;
+
+/**
+ * Settings that control how the content of a {@link GeneratedContentResource} is produced
+ * when the download is requested.
+ *
+ * An instance is shared by all the resources created by the same {@link EnhancedBrowserWindowOpener},
+ * so changes are applied also to resources already set on the opener.
+ * Settings are read every time a download is requested.
+ */
+public class GeneratedContentSettings implements Serializable {
+
+    /**
+     * Default maximum number of bytes of buffered content kept in memory.
+     */
+    public static final int DEFAULT_BUFFER_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Default maximum time a generation waits for a slot of a concurrency limit.
+     */
+    public static final Duration DEFAULT_QUEUE_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Default minimum time between two reports of the progress of a generation.
+     */
+    public static final Duration DEFAULT_PROGRESS_INTERVAL = Duration.ofMillis(500);
+
+    private transient volatile Executor executor;
+    private transient volatile ContentCache contentCache;
+    private volatile SerializableSupplier<String> cacheKeyProvider;
+    private final String privateNamespace = UUID.randomUUID().toString();
+    private volatile String contentNamespace;
+    private volatile boolean rangeRequests;
+    private volatile boolean buffering;
+    private volatile int bufferThreshold = DEFAULT_BUFFER_THRESHOLD;
+    private volatile File tempDirectory;
+    private transient volatile ContentStore contentStore;
+    private volatile boolean compression;
+    private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private transient volatile List<ContentGenerationListener> listeners;
+    private transient volatile ConcurrencyLimiter concurrencyLimiter;
+    private transient volatile SingleFlightGroup singleFlightGroup;
+    private volatile int maxConcurrentPerSession;
+    private volatile int maxConcurrentPerOpener;
+    private transient ConcurrencyLimiter openerLimiter;
+    private volatile Duration queueTimeout = DEFAULT_QUEUE_TIMEOUT;
+    private volatile Duration prefetchTimeToLive;
+    private volatile Duration progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private transient Set<GenerationTask> running;
+
+    /**
+     * Gets the executor used to run content generators.
+     *
+     * @return the executor used to run content generators, or {@literal null} if generators
+     * run in blocking mode.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to run content generators.
+     *
+     * When an executor is set the generator is not invoked while the session lock is held;
+     * it is started on the executor when the download is served and the result is streamed
+     * to the client as soon as it is ready.
+     * Generators running this way must not access UI or session state without
+     * using {@link com.vaadin.ui.UI#access(Runnable)}.
+     *
+     * If {@code executor} is {@literal null} generators are invoked in blocking mode,
+     * holding the session lock, as for a plain {@link com.vaadin.server.StreamResource}.
+     *
+     * The executor is not serialized with the session; after deserialization
+     * generators run in blocking mode until an executor is set again.
+     *
+     * @param executor the executor used to run content generators, or {@literal null}
+     *                 for blocking mode.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Gets the cache for generated content.
+     *
+     * @return the cache for generated content, or {@literal null} if caching is disabled.
+     */
+    public ContentCache getContentCache() {
+        return contentCache;
+    }
+
+    /**
+     * Sets the cache for generated content.
+     *
+     * Content is looked up in the cache by {@link #getContentNamespace() namespace}, filename,
+     * download request parameters and the key returned by {@link #getCacheKeyProvider()}; on a cache miss the generated
+     * content is sent to the client and stored in the cache at the same time.
+     * Without a {@link #setCacheKeyProvider(SerializableSupplier) key provider} content is shared by all
+     * the resources in the namespace, whatever their session; openers make it private to the session
+     * unless a key provider is given.
+     *
+     * The cache is not serialized with the session; after deserialization
+     * caching is disabled until a cache is set again.
+     *
+     * @param contentCache the cache for generated content, or {@literal null} to disable caching.
+     */
+    public void setContentCache(ContentCache contentCache) {
+        this.contentCache = contentCache;
+    }
+
+    /**
+     * Gets the namespace of the content generated with these settings, that identifies its generator
+     * in the keys of {@link ContentCache} and {@link SingleFlightGroup}.
+     *
+     * @return the namespace set by {@link #setContentNamespace(String)}, or an identifier
+     * unique to these settings if not set.
+     */
+    public String getContentNamespace() {
+        String namespace = contentNamespace;
+        return namespace == null ? privateNamespace : namespace;
+    }
+
+    /**
+     * Sets the namespace of the content generated with these settings.
+     *
+     * Caches and single-flight groups share content only between resources in the same namespace;
+     * openers that generate the same content for the same filename and parameters, for example
+     * the openers of the same view in different sessions, should use the same namespace,
+     * while openers whose generators differ must use different ones.
+     * Without a namespace content is shared only by the resources using these settings.
+     *
+     * @param contentNamespace the namespace of the content, or {@literal null} to not share content
+     *                         with other settings.
+     */
+    public void setContentNamespace(String contentNamespace) {
+        this.contentNamespace = contentNamespace;
+    }
+
+    /**
+     * Gets the provider of the user supplied part of the cache key.
+     *
+     * @return the provider of the user supplied part of the cache key, or {@literal null}
+     */
+    public SerializableSupplier<String> getCacheKeyProvider() {
+        return cacheKeyProvider;
+    }
+
+    /**
+     * Sets the provider of the user supplied part of the cache key.
+     *
+     * The provider is invoked when the download is requested; for downloads served by the opener
+     * it runs holding the session lock, so it could read session state, for example to make
+     * cached content private to the current user. Downloads served through a
+     * {@link DownloadTokenServlet} invoke it without a current session: the provider must then
+     * not rely on session state.
+     *
+     * @param cacheKeyProvider the provider of the user supplied part of the cache key, or {@literal null}
+     */
+    public void setCacheKeyProvider(SerializableSupplier<String> cacheKeyProvider) {
+        this.cacheKeyProvider = cacheKeyProvider;
+    }
+
+    /**
+     * Gets whether HTTP range requests are honored.
+     *
+     * @return true if HTTP range requests are honored, otherwise false.
+     */
+    public boolean isRangeRequests() {
+        return rangeRequests;
+    }
+
+    /**
+     * Sets whether HTTP range requests are honored.
+     *
+     * When enabled, content is fully generated before being sent, and responses carry an
+     * entity tag computed from the content; requests with a {@code Range} header are answered
+     * with the requested part of the content, so that the browser could resume an interrupted
+     * download or fetch it in segments.
+     * Combined with a {@link ContentCache}, resumed downloads are served without running
+     * the generator again.
+     * Content is buffered as described in {@link #setBuffering(boolean)}.
+     *
+     * @param rangeRequests true to honor HTTP range requests, otherwise false.
+     */
+    public void setRangeRequests(boolean rangeRequests) {
+        this.rangeRequests = rangeRequests;
+    }
+
+    /**
+     * Gets whether content is fully generated before being sent.
+     *
+     * @return true if content is fully generated before being sent, otherwise false.
+     */
+    public boolean isBuffering() {
+        return buffering;
+    }
+
+    /**
+     * Sets whether content is fully generated before being sent.
+     *
+     * Buffered content is kept in memory up to {@link #getBufferThreshold()} bytes and then moved
+     * to a temporary file, that is deleted once the content has been sent.
+     * Since the size is known in advance, responses for buffered content have a {@code Content-Length} header.
+     *
+     * @param buffering true to fully generate content before sending it, otherwise false.
+     */
+    public void setBuffering(boolean buffering) {
+        this.buffering = buffering;
+    }
+
+    /**
+     * Gets the maximum number of bytes of buffered content kept in memory.
+     *
+     * @return the maximum number of bytes of buffered content kept in memory.
+     */
+    public int getBufferThreshold() {
+        return bufferThreshold;
+    }
+
+    /**
+     * Sets the maximum number of bytes of buffered content kept in memory.
+     *
+     * The threshold applies whenever content is fully generated before being sent
+     * or stored, for example with buffering, range requests or a {@link ContentCache}.
+     * Defaults to {@link #DEFAULT_BUFFER_THRESHOLD}.
+     *
+     * @param bufferThreshold the maximum number of bytes of buffered content kept in memory.
+     */
+    public void setBufferThreshold(int bufferThreshold) {
+        if (bufferThreshold < 0) {
+            throw new IllegalArgumentException("bufferThreshold must not be negative");
+        }
+        this.bufferThreshold = bufferThreshold;
+    }
+
+    /**
+     * Gets the directory for temporary files of buffered content.
+     *
+     * @return the directory for temporary files, or {@literal null} for the default temporary directory.
+     */
+    public File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * Sets the directory for temporary files of buffered content.
+     *
+     * @param tempDirectory the directory for temporary files, or {@literal null} for the default
+     *                      temporary directory.
+     */
+    public void setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Gets the store that keeps a single copy of identical materialized content.
+     *
+     * @return the content store, or {@literal null}
+     */
+    public ContentStore getContentStore() {
+        return contentStore;
+    }
+
+    /**
+     * Sets the store that keeps a single copy of identical materialized content.
+     *
+     * Content materialized for buffering, caching, prefetch or range requests is moved into the store,
+     * addressed by its digest, and served from the stored file; when the store already holds
+     * the same bytes the new copy is discarded.
+     *
+     * The store is not serialized with the session; after deserialization
+     * it must be set again.
+     *
+     * @param contentStore the store, or {@literal null} to keep materialized content in memory
+     *                     and in temporary files
+     */
+    public void setContentStore(ContentStore contentStore) {
+        this.contentStore = contentStore;
+    }
+
+    /**
+     * Gets whether content is compressed when the client accepts it.
+     *
+     * @return true if content is compressed when the client accepts it, otherwise false.
+     */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets whether content is compressed when the client accepts it.
+     *
+     * Encoding is negotiated through the {@code Accept-Encoding} request header, preferring
+     * {@code gzip} over {@code deflate}; bytes are compressed while they are sent, without buffering
+     * the whole response.
+     * Content types that are usually already compressed, such as images, archives and PDF documents,
+     * are sent as they are. Compression is not applied when range requests are enabled, because ranges
+     * refer to the uncompressed content.
+     *
+     * @param compression true to compress content when the client accepts it, otherwise false.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Gets the compression level.
+     *
+     * @return the compression level, from 0 to 9, or -1 for the default level.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the compression level.
+     *
+     * Lower levels are faster, higher levels produce smaller content.
+     * Defaults to {@link Deflater#DEFAULT_COMPRESSION}.
+     *
+     * @param compressionLevel the compression level, from 0 to 9, or -1 for the default level.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Adds a listener notified when content is served.
+     *
+     * Listeners are not serialized with the session; after deserialization
+     * they must be added again.
+     *
+     * @param listener the listener to add
+     * @return a registration that removes the listener
+     */
+    public Registration addListener(ContentGenerationListener listener) {
+        Objects.requireNonNull(listener, "listener must not be null");
+        List<ContentGenerationListener> current;
+        synchronized (this) {
+            current = listeners;
+            if (current == null) {
+                current = new CopyOnWriteArrayList<>();
+                listeners = current;
+            }
+        }
+        current.add(listener);
+        List<ContentGenerationListener> registered = current;
+        return () -> registered.remove(listener);
+    }
+
+    /**
+     * Gets the listeners notified when content is served.
+     *
+     * @return the listeners notified when content is served, never {@literal null}.
+     */
+    public List<ContentGenerationListener> getListeners() {
+        List<ContentGenerationListener> current = listeners;
+        return current == null ? Collections.emptyList() : Collections.unmodifiableList(current);
+    }
+
+    /**
+     * Gets the limiter shared with other openers.
+     *
+     * @return the limiter shared with other openers, or {@literal null}
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Sets a limiter shared with other openers, for example to bound the generations running on the whole node.
+     *
+     * The limiter is not serialized with the session; after deserialization
+     * it must be set again.
+     *
+     * @param concurrencyLimiter the limiter, or {@literal null} to remove it.
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Gets the group that deduplicates concurrent generations of identical content.
+     *
+     * @return the single-flight group, or {@literal null}
+     */
+    public SingleFlightGroup getSingleFlightGroup() {
+        return singleFlightGroup;
+    }
+
+    /**
+     * Sets the group that deduplicates concurrent generations of identical content.
+     *
+     * Requests for the same content, as identified by {@link ContentCacheKey} with the
+     * {@link #getContentNamespace() content namespace}, that arrive while it
+     * is being generated join the running generation instead of starting a new one.
+     * Requests could join only until the produced content exceeds the buffer threshold, since
+     * it is kept in memory to be replayed to them from the first byte; once it is exceeded
+     * new requests start their own generation, and each byte is dropped as soon as all the
+     * joined requests have written it. The generation then proceeds at the pace of the slowest
+     * joined request, so that no more than about the buffer threshold is held in memory; a joined request
+     * that falls behind for longer than the follower timeout of the group is detached and fails.
+     *
+     * The group is not serialized with the session; after deserialization
+     * it must be set again.
+     *
+     * @param singleFlightGroup the group, or {@literal null} to generate content for each request.
+     */
+    public void setSingleFlightGroup(SingleFlightGroup singleFlightGroup) {
+        this.singleFlightGroup = singleFlightGroup;
+    }
+
+    /**
+     * Gets the maximum number of generations running at the same time for a session.
+     *
+     * @return the maximum number of generations for a session, or 0 if unlimited.
+     */
+    public int getMaxConcurrentPerSession() {
+        return maxConcurrentPerSession;
+    }
+
+    /**
+     * Sets the maximum number of generations running at the same time for a session.
+     *
+     * The limit is shared by all the openers of the session with the same value,
+     * so that a single user cannot starve the node, for example clicking an export button many times.
+     *
+     * @param maxConcurrentPerSession the maximum number of generations for a session, or 0 for no limit.
+     */
+    public void setMaxConcurrentPerSession(int maxConcurrentPerSession) {
+        if (maxConcurrentPerSession < 0) {
+            throw new IllegalArgumentException("maxConcurrentPerSession must not be negative");
+        }
+        this.maxConcurrentPerSession = maxConcurrentPerSession;
+    }
+
+    /**
+     * Gets the maximum number of generations running at the same time for the opener.
+     *
+     * @return the maximum number of generations for the opener, or 0 if unlimited.
+     */
+    public int getMaxConcurrentPerOpener() {
+        return maxConcurrentPerOpener;
+    }
+
+    /**
+     * Sets the maximum number of generations running at the same time for the opener.
+     *
+     * @param maxConcurrentPerOpener the maximum number of generations for the opener, or 0 for no limit.
+     */
+    public synchronized void setMaxConcurrentPerOpener(int maxConcurrentPerOpener) {
+        if (maxConcurrentPerOpener < 0) {
+            throw new IllegalArgumentException("maxConcurrentPerOpener must not be negative");
+        }
+        this.maxConcurrentPerOpener = maxConcurrentPerOpener;
+        this.openerLimiter = null;
+    }
+
+    synchronized ConcurrencyLimiter getOpenerLimiter() {
+        if (openerLimiter == null && maxConcurrentPerOpener > 0) {
+            openerLimiter = new ConcurrencyLimiter(maxConcurrentPerOpener);
+        }
+        return openerLimiter;
+    }
+
+    /**
+     * Gets the maximum time a generation waits for a slot of a concurrency limit.
+     *
+     * @return the maximum time a generation waits for a slot
+     */
+    public Duration getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    /**
+     * Sets the maximum time a generation waits for a slot of a concurrency limit.
+     *
+     * When the time elapses the download is answered with {@code 503 Service Unavailable}
+     * and a {@code Retry-After} header.
+     * Generators invoked holding the session lock, that is stream sources without an executor,
+     * never wait: they are rejected at once if no slot is available.
+     * Defaults to {@link #DEFAULT_QUEUE_TIMEOUT}.
+     *
+     * @param queueTimeout the maximum time a generation waits for a slot
+     */
+    public void setQueueTimeout(Duration queueTimeout) {
+        Objects.requireNonNull(queueTimeout, "queueTimeout must not be null");
+        if (queueTimeout.isNegative()) {
+            throw new IllegalArgumentException("queueTimeout must not be negative");
+        }
+        this.queueTimeout = queueTimeout;
+    }
+
+    /**
+     * Gets how long content generated in advance is kept waiting for its download.
+     *
+     * @return the time to live of prefetched content, or {@literal null} if prefetch is disabled.
+     */
+    public Duration getPrefetchTimeToLive() {
+        return prefetchTimeToLive;
+    }
+
+    /**
+     * Enables generation of content before the download is requested.
+     *
+     * The opener asks for a prefetch when the user shows the intent to click, hovering,
+     * focusing or pressing the mouse button on the extended component; content is fully
+     * generated, as with buffering, and the download requested within the given time
+     * is served from it. Prefetched content not downloaded in time is discarded, cancelling
+     * its generation if still running.
+     *
+     * Prefetch trades server work for latency: generators may run also for downloads
+     * that are never requested. It requires an {@link #setExecutor(Executor) executor}
+     * and is ignored in blocking mode.
+     *
+     * @param prefetchTimeToLive how long prefetched content is kept, or {@literal null} to disable prefetch.
+     */
+    public void setPrefetchTimeToLive(Duration prefetchTimeToLive) {
+        if (prefetchTimeToLive != null && (prefetchTimeToLive.isNegative() || prefetchTimeToLive.isZero())) {
+            throw new IllegalArgumentException("prefetchTimeToLive must be positive");
+        }
+        this.prefetchTimeToLive = prefetchTimeToLive;
+    }
+
+    /**
+     * Gets the minimum time between two reports of the progress of a generation.
+     *
+     * @return the minimum time between two progress reports
+     */
+    public Duration getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * Sets the minimum time between two reports of the progress of a generation.
+     *
+     * Progress reported by generators more often is coalesced, so that listeners, and the UIs
+     * they push updates to, are not flooded.
+     *
+     * @param progressInterval the minimum time between two progress reports
+     */
+    public void setProgressInterval(Duration progressInterval) {
+        Objects.requireNonNull(progressInterval, "progressInterval must not be null");
+        if (progressInterval.isNegative()) {
+            throw new IllegalArgumentException("progressInterval must not be negative");
+        }
+        this.progressInterval = progressInterval;
+    }
+
+    synchronized Set<GenerationTask> getRunning() {
+        if (running == null) {
+            running = ConcurrentHashMap.newKeySet();
+        }
+        return running;
+    }
+
+    /**
+     * Cancels the running generations whose content nobody is receiving yet.
+     *
+     * @param reason the reason of the cancellation
+     */
+    void cancelAbandonedGenerations(String reason) {
+        for (GenerationTask task : getRunning()) {
+            task.cancelIfAbandoned(reason);
+        }
+    }
+
+    /**
+     * Cancels the running generation for the given download, if nobody is receiving its content yet.
+     *
+     * @param downloadId the identifier of the download
+     * @param reason     the reason of the cancellation
+     */
+    void cancelAbandonedGeneration(String downloadId, String reason) {
+        if (downloadId == null) {
+            return;
+        }
+        for (GenerationTask task : getRunning()) {
+            if (downloadId.equals(task.getDownloadId())) {
+                task.cancelIfAbandoned(reason);
+            }
+        }
+    }
+}
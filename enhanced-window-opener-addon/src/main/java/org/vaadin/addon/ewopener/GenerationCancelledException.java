@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when the generation of content is stopped because nobody is waiting for it anymore,
+ * for example because the client closed the window or the connection.
+ *
+ * @see CancellationToken
+ */
+public class GenerationCancelledException extends InterruptedIOException {
+
+    /**
+     * Creates a new exception.
+     *
+     * @param message the reason of the cancellation
+     */
+    public GenerationCancelledException(String message) {
+        super(message);
+    }
+}
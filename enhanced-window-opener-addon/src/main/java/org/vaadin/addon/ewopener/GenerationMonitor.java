@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracks the progress of a generation and reports it to {@link ContentGenerationListener}s,
+ * at most once per interval.
+ *
+ * Explicit reports of the generator through {@link ProgressSink} take precedence
+ * over the count of written bytes.
+ */
+final class GenerationMonitor implements ProgressSink {
+
+    private static final ProgressSink IGNORE = (done, total, unit) -> {
+    };
+    private static final ThreadLocal<GenerationMonitor> CURRENT = new ThreadLocal<>();
+
+    private final GeneratedContentResource resource;
+    private final List<ContentGenerationListener> listeners;
+    private final long intervalNanos;
+    private final long startNanos = System.nanoTime();
+    private long lastReportNanos = startNanos;
+    private boolean explicit;
+    private long bytes;
+    private volatile long done;
+    private volatile long total = -1;
+    private volatile String unit = "bytes";
+
+    GenerationMonitor(GeneratedContentResource resource, List<ContentGenerationListener> listeners,
+                      Duration interval) {
+        this.resource = resource;
+        this.listeners = listeners;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    static ProgressSink current() {
+        GenerationMonitor monitor = CURRENT.get();
+        return monitor == null ? IGNORE : monitor;
+    }
+
+    /**
+     * Wraps a writer so that it runs with this monitor as current {@link ProgressSink}
+     * and its written bytes are counted.
+     *
+     * @param writer the writer to monitor
+     * @return the monitored writer
+     */
+    ContentWriter track(ContentWriter writer) {
+        return out -> {
+            GenerationMonitor previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                writer.write(new FilterOutputStream(out) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        written(1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        written(len);
+                    }
+                });
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    private void written(int len) {
+        bytes += len;
+        if (!explicit) {
+            update(bytes, -1, "bytes");
+        }
+    }
+
+    @Override
+    public void progress(long done, long total, String unit) {
+        explicit = true;
+        update(done, total, unit);
+    }
+
+    private void update(long done, long total, String unit) {
+        this.done = done;
+        this.total = total;
+        this.unit = unit;
+        long now = System.nanoTime();
+        if (now - lastReportNanos >= intervalNanos) {
+            lastReportNanos = now;
+            fire(false, null);
+        }
+    }
+
+    /**
+     * Reports the end of the generation, regardless of the interval.
+     *
+     * @param failure the failure of the generation, or {@literal null} if it succeeded.
+     */
+    void finish(Throwable failure) {
+        fire(true, failure);
+    }
+
+    private void fire(boolean finished, Throwable failure) {
+        GenerationProgressEvent event = new GenerationProgressEvent(resource, done, total, unit,
+            Duration.ofNanos(System.nanoTime() - startNanos), finished, failure);
+        for (ContentGenerationListener listener : listeners) {
+            try {
+                listener.generationProgress(event);
+            } catch (RuntimeException e) {
+                Logger.getLogger(GenerationMonitor.class.getName())
+                    .log(Level.WARNING, "Content generation listener failed for " + resource.getFilename(), e);
+            }
+        }
+    }
+}
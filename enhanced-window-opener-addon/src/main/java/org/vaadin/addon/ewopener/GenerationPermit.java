@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Slots acquired on a set of {@link ConcurrencyLimiter}s for a single generation.
+ */
+final class GenerationPermit {
+
+    /**
+     * Marker for generations rejected by a limiter.
+     */
+    static final GenerationPermit REJECTED = new GenerationPermit(new ArrayList<>());
+
+    private final List<ConcurrencyLimiter> acquired;
+
+    private GenerationPermit(List<ConcurrencyLimiter> acquired) {
+        this.acquired = acquired;
+    }
+
+    /**
+     * Acquires a slot on every limiter, in order, waiting at most {@code timeout} overall.
+     *
+     * @param limiters the limiters
+     * @param timeout  the maximum time to wait
+     * @return the permit, or {@link #REJECTED} if a slot was not available in time
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    static GenerationPermit acquire(List<ConcurrencyLimiter> limiters, Duration timeout) throws InterruptedIOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<ConcurrencyLimiter> acquired = new ArrayList<>(limiters.size());
+        try {
+            for (ConcurrencyLimiter limiter : limiters) {
+                if (!limiter.tryAcquire(deadline - System.nanoTime())) {
+                    new GenerationPermit(acquired).release();
+                    return REJECTED;
+                }
+                acquired.add(limiter);
+            }
+        } catch (InterruptedException e) {
+            new GenerationPermit(acquired).release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a generation slot");
+        }
+        return new GenerationPermit(acquired);
+    }
+
+    void release() {
+        for (ConcurrencyLimiter limiter : acquired) {
+            limiter.release();
+        }
+        acquired.clear();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.time.Duration;
+import java.util.EventObject;
+
+/**
+ * Event reporting the progress of the generation of the content of a {@link GeneratedContentResource}.
+ *
+ * @see ProgressSink
+ */
+public class GenerationProgressEvent extends EventObject {
+
+    private final long done;
+    private final long total;
+    private final String unit;
+    private final Duration elapsed;
+    private final boolean finished;
+    private final Throwable failure;
+
+    GenerationProgressEvent(GeneratedContentResource source, long done, long total, String unit,
+                            Duration elapsed, boolean finished, Throwable failure) {
+        super(source);
+        this.done = done;
+        this.total = total;
+        this.unit = unit;
+        this.elapsed = elapsed;
+        this.finished = finished;
+        this.failure = failure;
+    }
+
+    /**
+     * Gets the resource whose content is being generated.
+     *
+     * @return the resource whose content is being generated
+     */
+    public GeneratedContentResource getResource() {
+        return (GeneratedContentResource) getSource();
+    }
+
+    /**
+     * Gets the filename of the content being generated.
+     *
+     * @return the filename of the content being generated
+     */
+    public String getFilename() {
+        return getResource().getFilename();
+    }
+
+    /**
+     * Gets the units of work done.
+     *
+     * @return the units of work done
+     */
+    public long getDone() {
+        return done;
+    }
+
+    /**
+     * Gets the total units of work.
+     *
+     * @return the total units of work, or -1 if unknown.
+     */
+    public long getTotal() {
+        return total < 0 ? -1 : total;
+    }
+
+    /**
+     * Gets the description of the units of work, as {@code "bytes"}, {@code "rows"} or {@code "%"}.
+     *
+     * @return the description of the units of work
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Gets the fraction of work done.
+     *
+     * @return the fraction of work done, from 0 to 1, or -1 if the total is unknown.
+     */
+    public double getFraction() {
+        if (total <= 0) {
+            return finished && failure == null ? 1 : -1;
+        }
+        return Math.min(1, (double) done / total);
+    }
+
+    /**
+     * Gets the time elapsed since the generation started.
+     *
+     * @return the time elapsed since the generation started
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Gets whether the generation is over.
+     *
+     * @return true if the generation is over, otherwise false.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Gets the failure that stopped the generation.
+     *
+     * @return the failure, or {@literal null} if the generation is running or succeeded.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A generation running for a download, that could be cancelled when the client is not waiting for it anymore.
+ *
+ * Cancellation marks the token, makes further writes of the generator fail and interrupts
+ * the thread running the generator.
+ */
+final class GenerationTask implements CancellationToken {
+
+    private static final CancellationToken NEVER = () -> false;
+    private static final ThreadLocal<GenerationTask> CURRENT = new ThreadLocal<>();
+
+    private final String filename;
+    private final String downloadId;
+    private volatile boolean cancelled;
+    private volatile String reason;
+    private volatile boolean committed;
+    private volatile Flight flight;
+    private Thread worker;
+
+    GenerationTask(String filename, String downloadId) {
+        this.filename = filename;
+        this.downloadId = downloadId;
+    }
+
+    static CancellationToken current() {
+        GenerationTask task = CURRENT.get();
+        return task == null ? NEVER : task;
+    }
+
+    /**
+     * Gets the identifier of the opening the download has been requested for.
+     *
+     * @return the download identifier, or {@literal null} if the download has not been requested by an opener.
+     */
+    String getDownloadId() {
+        return downloadId;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void throwIfCancelled() throws GenerationCancelledException {
+        if (cancelled) {
+            throw new GenerationCancelledException("Generation of " + filename + " cancelled: " + reason);
+        }
+    }
+
+    /**
+     * Gets whether content has already been sent to the client.
+     *
+     * Once the response has started, the browser could keep receiving it even if the window that requested it
+     * has been closed, for example in its download manager.
+     *
+     * @return true if content has been sent to the client, otherwise false.
+     */
+    boolean isCommitted() {
+        return committed;
+    }
+
+    void setFlight(Flight flight) {
+        this.flight = flight;
+    }
+
+    /**
+     * Cancels the generation if no client is receiving its content.
+     *
+     * Generations that already started sending content, or whose content is shared with other
+     * requests through a {@link SingleFlightGroup}, are left running.
+     *
+     * @param reason the reason of the cancellation
+     */
+    void cancelIfAbandoned(String reason) {
+        Flight shared = flight;
+        if (!committed && (shared == null || !shared.hasFollowers())) {
+            cancel(reason);
+        }
+    }
+
+    /**
+     * Cancels the generation.
+     *
+     * @param reason the reason of the cancellation
+     */
+    void cancel(String reason) {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            this.reason = reason;
+            cancelled = true;
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wraps a writer so that it runs with this task as current {@link CancellationToken},
+     * could be interrupted and fails writing once cancelled.
+     *
+     * @param writer the writer to guard
+     * @return the guarded writer
+     */
+    ContentWriter guard(ContentWriter writer) {
+        return out -> {
+            throwIfCancelled();
+            GenerationTask previous = CURRENT.get();
+            CURRENT.set(this);
+            synchronized (this) {
+                worker = Thread.currentThread();
+            }
+            try {
+                writer.write(new FilterOutputStream(out) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throwIfCancelled();
+                        out.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        throwIfCancelled();
+                        out.write(b, off, len);
+                    }
+                });
+            } finally {
+                synchronized (this) {
+                    worker = null;
+                    if (cancelled) {
+                        // do not leak the interrupt to the next task of a pooled thread
+                        Thread.interrupted();
+                    }
+                }
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps the stream to the client, to detect when content starts being sent and to cancel
+     * the generation when the client is gone.
+     *
+     * @param out the stream to the client
+     * @return the watched stream
+     */
+    OutputStream watch(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                committed = true;
+                try {
+                    out.write(b);
+                } catch (IOException e) {
+                    cancel("client disconnected");
+                    throw e;
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                committed = true;
+                try {
+                    out.write(b, off, len);
+                } catch (IOException e) {
+                    cancel("client disconnected");
+                    throw e;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    cancel("client disconnected");
+                    throw e;
+                }
+            }
+        };
+    }
+}
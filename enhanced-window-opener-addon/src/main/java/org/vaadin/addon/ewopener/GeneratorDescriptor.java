@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Identifies generated content by the id of a {@link ContentGenerator} registered
+ * in a {@link GeneratorRegistry} and the parameters to pass to it.
+ *
+ * A descriptor is all a resource keeps in the session to generate its content.
+ */
+public final class GeneratorDescriptor implements Serializable {
+
+    private final String generatorId;
+    private final Map<String, String> parameters;
+
+    /**
+     * Creates a descriptor for a generator without parameters.
+     *
+     * @param generatorId the id of the generator
+     */
+    public GeneratorDescriptor(String generatorId) {
+        this(generatorId, Collections.emptyMap());
+    }
+
+    /**
+     * Creates a descriptor for a generator with the given parameters.
+     *
+     * @param generatorId the id of the generator
+     * @param parameters  the parameters to pass to the generator
+     */
+    public GeneratorDescriptor(String generatorId, Map<String, String> parameters) {
+        this.generatorId = Objects.requireNonNull(generatorId, "generatorId must not be null");
+        this.parameters = parameters.isEmpty()
+            ? Collections.emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+    }
+
+    /**
+     * Gets the id of the generator.
+     *
+     * @return the id of the generator
+     */
+    public String getGeneratorId() {
+        return generatorId;
+    }
+
+    /**
+     * Gets the parameters to pass to the generator.
+     *
+     * @return an unmodifiable map of the parameters
+     */
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        GeneratorDescriptor that = (GeneratorDescriptor) o;
+        return generatorId.equals(that.generatorId) && parameters.equals(that.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(generatorId, parameters);
+    }
+
+    @Override
+    public String toString() {
+        return generatorId + parameters;
+    }
+}
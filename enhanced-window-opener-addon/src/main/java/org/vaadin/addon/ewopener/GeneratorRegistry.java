@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vaadin.shared.Registration;
+
+/**
+ * Application scoped registry of {@link ContentGenerator}s, resolved by id when a download is requested.
+ *
+ * Resources created from a {@link GeneratorDescriptor} keep only the id of the generator and its parameters,
+ * so the session does not hold the generator nor the objects it captures, and stays small
+ * when it is replicated or persisted.
+ * Generators are usually registered at application startup, for example in a
+ * {@code ServletContextListener} or a {@code VaadinServiceInitListener}.
+ * An instance is thread safe; openers use {@link #getDefault()}.
+ *
+ * <pre>{@code
+ * GeneratorRegistry.getDefault().register("statement", (parameters, out) ->
+ *     statements.write(parameters.get("account"), out));
+ * ...
+ * new EnhancedBrowserWindowOpener()
+ *     .withRegisteredContent("statement.pdf",
+ *         new GeneratorDescriptor("statement", Collections.singletonMap("account", account.getId())))
+ * }</pre>
+ */
+public class GeneratorRegistry {
+
+    private static final GeneratorRegistry DEFAULT = new GeneratorRegistry();
+
+    private final Map<String, ContentGenerator> generators = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the registry shared by the whole application.
+     *
+     * @return the default registry
+     */
+    public static GeneratorRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a generator under the given id, replacing the one previously registered.
+     *
+     * @param id        the id of the generator
+     * @param generator the generator
+     * @return a registration that removes the generator
+     */
+    public Registration register(String id, ContentGenerator generator) {
+        Objects.requireNonNull(id, "id must not be null");
+        Objects.requireNonNull(generator, "generator must not be null");
+        generators.put(id, generator);
+        return () -> generators.remove(id, generator);
+    }
+
+    /**
+     * Gets the generator registered under the given id.
+     *
+     * @param id the id of the generator
+     * @return the generator, or {@literal null} if no generator is registered with the given id
+     */
+    public ContentGenerator get(String id) {
+        return id == null ? null : generators.get(id);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Objects;
+
+import com.vaadin.server.SerializableFunction;
+import com.vaadin.server.StreamResource;
+import com.vaadin.ui.Grid;
+
+/**
+ * Opens windows with content generated for the rows of a {@link Grid}, using a single
+ * {@link EnhancedBrowserWindowOpener} for the whole grid.
+ *
+ * A column is added to the grid, showing by default the filename for the row; clicking a cell
+ * of the column opens a window whose content is generated only when the window requests it.
+ * Since windows are opened after a server round trip, the opener uses the popup blocker workaround.
+ *
+ * {@code
+ * GridContentOpener<Invoice> invoices = new GridContentOpener<>(grid,
+ *     invoice -> "invoice-" + invoice.getNumber() + ".pdf", this::writeInvoice);
+ * invoices.getColumn().setCaption("Download");
+ * invoices.getOpener().withGeneratorExecutor(executor);
+ * }
+ *
+ * The filename should identify the row, since it is part of the key of cached content.
+ *
+ * @param <T> the type of the grid items
+ */
+public class GridContentOpener<T> implements Serializable {
+
+    /**
+     * Style name of the cells that trigger the opener.
+     */
+    public static final String TRIGGER_STYLE_NAME = "ewopener-trigger";
+
+    private final EnhancedBrowserWindowOpener opener;
+    private final Grid.Column<T, String> column;
+    private final SerializableFunction<T, String> filenameProvider;
+    private final RowContentWriter<T> writer;
+    private final SerializableFunction<T, InputStream> generator;
+
+    /**
+     * Creates an opener for the given grid, with content written by {@code writer}.
+     *
+     * @param grid             the grid
+     * @param filenameProvider provides the filename of the content of a row
+     * @param writer           writes the content of a row
+     */
+    public GridContentOpener(Grid<T> grid, SerializableFunction<T, String> filenameProvider,
+                             RowContentWriter<T> writer) {
+        this(grid, filenameProvider, Objects.requireNonNull(writer, "writer must not be null"), null);
+    }
+
+    /**
+     * Creates an opener for the given grid, with content read from the stream returned by {@code generator}.
+     *
+     * @param grid             the grid
+     * @param filenameProvider provides the filename of the content of a row
+     * @param generator        provides the stream of the content of a row
+     */
+    public GridContentOpener(Grid<T> grid, SerializableFunction<T, String> filenameProvider,
+                             SerializableFunction<T, InputStream> generator) {
+        this(grid, filenameProvider, null, Objects.requireNonNull(generator, "generator must not be null"));
+    }
+
+    private GridContentOpener(Grid<T> grid, SerializableFunction<T, String> filenameProvider,
+                              RowContentWriter<T> writer, SerializableFunction<T, InputStream> generator) {
+        Objects.requireNonNull(grid, "grid must not be null");
+        this.filenameProvider = Objects.requireNonNull(filenameProvider, "filenameProvider must not be null");
+        this.writer = writer;
+        this.generator = generator;
+        this.opener = new EnhancedBrowserWindowOpener()
+            .popupBlockerWorkaround(true)
+            .withTriggerStyleName(TRIGGER_STYLE_NAME);
+        this.opener.extend(grid);
+        this.column = grid.addColumn(filenameProvider::apply);
+        this.column.setStyleGenerator(row -> TRIGGER_STYLE_NAME);
+        grid.addItemClickListener(event -> {
+            if (event.getColumn() == column) {
+                open(event.getItem());
+            }
+        });
+    }
+
+    /**
+     * Opens a window with the content of the given row.
+     *
+     * The content is generated when the window requests it.
+     *
+     * @param row the item of the row
+     * @return current object for further customization
+     */
+    public GridContentOpener<T> open(T row) {
+        Objects.requireNonNull(row, "row must not be null");
+        String filename = filenameProvider.apply(row);
+        GeneratedContentResource resource;
+        if (writer != null) {
+            resource = new GeneratedContentResource(filename, out -> writer.write(row, out),
+                opener.getGeneratedContentSettings());
+        } else {
+            resource = new GeneratedContentResource(filename, (StreamResource.StreamSource) () -> generator.apply(row),
+                opener.getGeneratedContentSettings());
+        }
+        opener.open(resource);
+        return this;
+    }
+
+    /**
+     * Gets the opener shared by all the rows of the grid.
+     *
+     * It could be used to configure how the content is generated and the opened windows.
+     *
+     * @return the opener shared by all the rows of the grid
+     */
+    public EnhancedBrowserWindowOpener getOpener() {
+        return opener;
+    }
+
+    /**
+     * Gets the column whose cells trigger the opener.
+     *
+     * @return the column whose cells trigger the opener
+     */
+    public Grid.Column<T, String> getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content of a generated resource that has been fully produced and could be
+ * sent many times, for example from a {@link ContentCache} or to serve HTTP range requests.
+ *
+ * Content could be held in memory or stored in a file; resources that hold it, as a temporary
+ * file, are released when all the users of the content have called {@link #release()}.
+ */
+public interface MaterializedContent {
+
+    /**
+     * Gets the size of the content in bytes.
+     *
+     * @return the size of the content in bytes.
+     */
+    long size();
+
+    /**
+     * Opens a new stream to read the content.
+     *
+     * @return a new stream to read the content
+     * @throws IOException if the content cannot be read
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Writes the whole content to the given stream.
+     *
+     * @param out the stream to write the content to
+     * @throws IOException if the content cannot be written
+     */
+    default void writeTo(OutputStream out) throws IOException {
+        GeneratedContentResource.copy(openStream(), out, 0);
+    }
+
+    /**
+     * Writes a portion of the content to the given stream.
+     *
+     * @param out    the stream to write the content to
+     * @param offset the position of the first byte to write
+     * @param length the number of bytes to write
+     * @throws IOException if the content cannot be written
+     */
+    default void writeTo(OutputStream out, long offset, long length) throws IOException {
+        try (InputStream in = openStream()) {
+            long toSkip = offset;
+            while (toSkip > 0) {
+                long skipped = in.skip(toSkip);
+                if (skipped <= 0) {
+                    throw new EOFException("Offset " + offset + " is beyond end of content");
+                }
+                toSkip -= skipped;
+            }
+            byte[] buffer = new byte[(int) Math.min(length, 32 * 1024)];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of content");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * Registers a new user of the content.
+     *
+     * Every call must be paired with a call to {@link #release()}.
+     *
+     * @return this content
+     * @throws IllegalStateException if the content has already been released
+     */
+    default MaterializedContent retain() {
+        return this;
+    }
+
+    /**
+     * Signals that a user of the content does not need it anymore.
+     *
+     * When the last user releases the content, the resources that hold it are freed.
+     */
+    default void release() {
+    }
+
+    /**
+     * Gets the hex encoded SHA-256 digest of the content.
+     *
+     * The digest identifies the content; it is used for example as entity tag
+     * in responses to HTTP range requests.
+     *
+     * @return the hex encoded SHA-256 digest of the content
+     * @throws IOException if the content cannot be read
+     */
+    default String getDigest() throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(openStream(), digest)) {
+            byte[] buffer = new byte[32 * 1024];
+            while (in.read(buffer) >= 0) {
+                // read until the end to update the digest
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates a new message digest suitable for {@link #getDigest()}.
+     *
+     * @return a new SHA-256 message digest
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Encodes a digest as an hexadecimal string.
+     *
+     * @param digest the digest bytes
+     * @return the hexadecimal representation of the digest
+     */
+    static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
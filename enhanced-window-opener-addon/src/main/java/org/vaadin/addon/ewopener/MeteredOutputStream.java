@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that counts written bytes and records when the first one has been written.
+ */
+class MeteredOutputStream extends FilterOutputStream {
+
+    private long count;
+    private long firstByteNanos = -1;
+
+    MeteredOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        mark(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        mark(len);
+        out.write(b, off, len);
+    }
+
+    /**
+     * Counts content sent to the client without writing it to this stream.
+     *
+     * @param len the number of bytes sent
+     */
+    void sent(long len) {
+        mark(len);
+    }
+
+    private void mark(long len) {
+        if (len > 0 && firstByteNanos < 0) {
+            firstByteNanos = System.nanoTime();
+        }
+        count += len;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the {@link System#nanoTime()} when the first byte has been written.
+     *
+     * @return the time of the first byte, or -1 if nothing has been written.
+     */
+    long getFirstByteNanos() {
+        return firstByteNanos;
+    }
+}
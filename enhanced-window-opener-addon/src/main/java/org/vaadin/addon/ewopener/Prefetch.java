@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content generated speculatively, before the user actually requests the download,
+ * for example while the pointer hovers the component that opens it.
+ *
+ * The download that matches the prefetched key claims the content and serves it;
+ * a prefetch not claimed before it expires, or cancelled, releases the content
+ * and stops the generation at the next write.
+ * Expiration is {@link #scheduleExpiration() scheduled} on a thread shared by all prefetches,
+ * so the content is released even if no other download is requested.
+ */
+final class Prefetch {
+
+    private static final ScheduledThreadPoolExecutor EXPIRATION = createExpirationExecutor();
+
+    private final ContentCacheKey key;
+    private final long expiresAt;
+    private final Duration timeToLive;
+    private final CompletableFuture<MaterializedContent> content = new CompletableFuture<>();
+    private volatile boolean cancelled;
+    private boolean claimed;
+    private boolean rejected;
+    private ScheduledFuture<?> expiration;
+
+    Prefetch(ContentCacheKey key, Duration timeToLive) {
+        this.key = key;
+        this.timeToLive = timeToLive;
+        this.expiresAt = System.nanoTime() + timeToLive.toNanos();
+    }
+
+    private static ScheduledThreadPoolExecutor createExpirationExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ewopener-prefetch-expiration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Cancels this prefetch once its time to live has elapsed, unless it has been claimed or cancelled before.
+     */
+    synchronized void scheduleExpiration() {
+        if (claimed || cancelled || expiration != null) {
+            return;
+        }
+        try {
+            expiration = EXPIRATION.schedule(this::cancel, timeToLive.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            cancel();
+        }
+    }
+
+    ContentCacheKey getKey() {
+        return key;
+    }
+
+    boolean isExpired() {
+        return System.nanoTime() - expiresAt > 0;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Wraps the stream the content is generated to, so that generation stops once the prefetch is cancelled.
+     *
+     * @param out the stream that collects the content
+     * @return a stream that fails when the prefetch is cancelled
+     */
+    OutputStream guard(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                checkCancelled();
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                checkCancelled();
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Prefetch of " + key.getFilename() + " cancelled");
+        }
+    }
+
+    synchronized void complete(MaterializedContent generated) {
+        if (cancelled) {
+            if (generated != null) {
+                generated.release();
+            }
+            content.cancel(false);
+        } else {
+            content.complete(generated);
+        }
+    }
+
+    synchronized void reject() {
+        rejected = true;
+        content.complete(null);
+    }
+
+    synchronized void fail(Throwable failure) {
+        content.completeExceptionally(failure);
+    }
+
+    /**
+     * Takes the ownership of the content on behalf of a download.
+     *
+     * @return true if the content could be served, false if the prefetch has been cancelled or has expired.
+     */
+    synchronized boolean claim() {
+        if (cancelled || isExpired()) {
+            return false;
+        }
+        claimed = true;
+        cancelExpiration();
+        return true;
+    }
+
+    /**
+     * Cancels the prefetch, releasing the content if it has already been generated.
+     *
+     * Has no effect once the content has been claimed.
+     */
+    synchronized void cancel() {
+        if (claimed || cancelled) {
+            return;
+        }
+        cancelled = true;
+        cancelExpiration();
+        MaterializedContent generated = content.isDone() && !content.isCompletedExceptionally()
+            ? content.join() : null;
+        if (generated != null) {
+            generated.release();
+        }
+    }
+
+    private void cancelExpiration() {
+        if (expiration != null) {
+            expiration.cancel(false);
+            expiration = null;
+        }
+    }
+
+    /**
+     * Waits for the claimed content to be generated.
+     *
+     * @return the content, that must be released by the caller, or {@literal null} if there is no content.
+     * @throws IOException if the generation failed
+     */
+    MaterializedContent await() throws IOException {
+        try {
+            return content.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for prefetch of " + key.getFilename());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Prefetch of " + key.getFilename() + " failed", cause);
+        }
+    }
+
+    synchronized boolean isRejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+/**
+ * Receives the progress of a content generator, to let users know how long a download is going to take.
+ *
+ * Generators obtain the sink of the generation they are running through {@link #current()}:
+ *
+ * <pre>{@code
+ * opener.withStreamingContent("export.csv", out -> {
+ *     ProgressSink progress = ProgressSink.current();
+ *     for (int row = 0; row < rows.size(); row++) {
+ *         writeRow(out, rows.get(row));
+ *         progress.rows(row + 1, rows.size());
+ *     }
+ * });
+ * }</pre>
+ *
+ * Generators that do not report progress have the number of written bytes reported instead.
+ * Reports are cheap: they are throttled before reaching listeners.
+ */
+@FunctionalInterface
+public interface ProgressSink {
+
+    /**
+     * Reports the progress of the generation.
+     *
+     * @param done  the units of work done
+     * @param total the total units of work, or a negative number if unknown
+     * @param unit  the description of the units of work, as {@code "rows"}
+     */
+    void progress(long done, long total, String unit);
+
+    /**
+     * Reports the number of rows generated.
+     *
+     * @param done  the number of rows generated
+     * @param total the total number of rows, or a negative number if unknown
+     */
+    default void rows(long done, long total) {
+        progress(done, total, "rows");
+    }
+
+    /**
+     * Reports the percentage of work done.
+     *
+     * @param percent the percentage of work done, from 0 to 100
+     */
+    default void percent(int percent) {
+        progress(percent, 100, "%");
+    }
+
+    /**
+     * Gets the sink of the generation running on the current thread.
+     *
+     * @return the sink of the current generation, or a sink that ignores reports
+     * if no generation is being monitored.
+     */
+    static ProgressSink current() {
+        return GenerationMonitor.current();
+    }
+}
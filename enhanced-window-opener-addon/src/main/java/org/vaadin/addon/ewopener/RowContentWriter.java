@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Generates the content for a row of a {@link com.vaadin.ui.Grid}, writing it directly
+ * to the download response.
+ *
+ * @param <T> the type of the grid items
+ * @see GridContentOpener
+ */
+@FunctionalInterface
+public interface RowContentWriter<T> extends Serializable {
+
+    /**
+     * Writes the content for the given row to the given stream.
+     *
+     * The stream is closed by the caller after this method returns.
+     *
+     * @param row the item of the clicked row
+     * @param out the stream to write the content to
+     * @throws IOException if the content cannot be written
+     */
+    void write(T row, OutputStream out) throws IOException;
+}
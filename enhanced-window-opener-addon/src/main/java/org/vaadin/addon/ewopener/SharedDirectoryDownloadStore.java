@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link DownloadStore} that keeps downloads in a directory shared by the nodes of a cluster,
+ * for example on a network file system.
+ *
+ * Each download is made of a data file and a properties file with its metadata, written to temporary
+ * files and then moved in place, so other nodes never see partially written downloads.
+ * Downloads expire after the configured time to live; expired downloads are deleted when found
+ * and, at most once in a time to live, by any node storing a new download, together with the temporary
+ * files left behind by failed writes.
+ * Expiration is based on the wall clock, so the clocks of the nodes should be synchronized.
+ *
+ * Stored files are handed over to the servlet container when it supports it, through Tomcat sendfile
+ * or Jetty {@code HttpOutput.sendContent}, otherwise copied to the response in chunks. A local directory
+ * could be used to try the store on a single node.
+ *
+ * <pre>{@code
+ * static final DownloadStore DOWNLOADS = new SharedDirectoryDownloadStore(Paths.get("/mnt/shared/downloads"),
+ *     Duration.ofMinutes(10));
+ * }</pre>
+ */
+public class SharedDirectoryDownloadStore implements DownloadStore {
+
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+    private static final String DATA_SUFFIX = ".data";
+    private static final String METADATA_SUFFIX = ".properties";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String FILENAME = "filename";
+    private static final String MIME_TYPE = "mimeType";
+    private static final String SIZE = "size";
+    private static final String EXPIRES_AT = "expiresAt";
+
+    private final Path directory;
+    private final long timeToLiveMillis;
+    private final Clock clock;
+    private volatile long nextPurge;
+
+    /**
+     * Creates a new store.
+     *
+     * @param directory  the shared directory, created if it does not exist
+     * @param timeToLive the time a download is kept after it has been stored
+     * @throws UncheckedIOException if the directory cannot be created
+     */
+    public SharedDirectoryDownloadStore(Path directory, Duration timeToLive) {
+        this(directory, timeToLive, Clock.systemUTC());
+    }
+
+    SharedDirectoryDownloadStore(Path directory, Duration timeToLive, Clock clock) {
+        this.directory = Objects.requireNonNull(directory, "directory must not be null");
+        this.timeToLiveMillis = Objects.requireNonNull(timeToLive).toMillis();
+        if (timeToLiveMillis <= 0) {
+            throw new IllegalArgumentException("timeToLive must be greater than zero");
+        }
+        this.clock = clock;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create download directory " + directory, e);
+        }
+    }
+
+    /**
+     * Gets the shared directory.
+     *
+     * @return the shared directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the time a download is kept after it has been stored.
+     *
+     * @return the time to live of downloads
+     */
+    public Duration getTimeToLive() {
+        return Duration.ofMillis(timeToLiveMillis);
+    }
+
+    @Override
+    public void put(String key, StoredDownload download) throws IOException {
+        checkKey(key);
+        long now = clock.millis();
+        purgeExpired(now);
+        MaterializedContent content = download.getContent();
+        Properties metadata = new Properties();
+        metadata.setProperty(FILENAME, download.getFilename());
+        metadata.setProperty(MIME_TYPE, download.getMimeType());
+        metadata.setProperty(SIZE, Long.toString(content.size()));
+        metadata.setProperty(EXPIRES_AT, Long.toString(now + timeToLiveMillis));
+        Path data = Files.createTempFile(directory, key + "-", TEMP_SUFFIX);
+        Path properties = Files.createTempFile(directory, key + "-", TEMP_SUFFIX);
+        try {
+            try (OutputStream out = Files.newOutputStream(data)) {
+                content.writeTo(out);
+            }
+            try (OutputStream out = Files.newOutputStream(properties)) {
+                metadata.store(out, null);
+            }
+            // the metadata file is moved last, since its presence marks the download as complete
+            Files.move(data, dataFile(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(properties, metadataFile(key), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(data);
+            Files.deleteIfExists(properties);
+        }
+    }
+
+    @Override
+    public StoredDownload get(String key) throws IOException {
+        if (key == null || !KEY.matcher(key).matches()) {
+            return null;
+        }
+        Properties metadata = readMetadata(metadataFile(key));
+        if (metadata == null) {
+            return null;
+        }
+        if (isExpired(metadata, clock.millis())) {
+            remove(key);
+            return null;
+        }
+        try {
+            long size = Long.parseLong(metadata.getProperty(SIZE));
+            return new StoredDownload(metadata.getProperty(FILENAME), metadata.getProperty(MIME_TYPE),
+                new FileContent(dataFile(key), size, false));
+        } catch (IllegalArgumentException e) {
+            // not written by this store, served as missing
+            return null;
+        }
+    }
+
+    @Override
+    public void remove(String key) throws IOException {
+        checkKey(key);
+        Files.deleteIfExists(metadataFile(key));
+        Files.deleteIfExists(dataFile(key));
+    }
+
+    /**
+     * Deletes the expired downloads, and the temporary files older than the time to live
+     * left behind by nodes that failed while storing a download.
+     *
+     * @throws IOException if the directory cannot be read
+     */
+    public void purgeExpired() throws IOException {
+        long now = clock.millis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    if (now - Files.getLastModifiedTime(file).toMillis() >= timeToLiveMillis) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NoSuchFileException e) {
+                    // moved in place or deleted by another node
+                }
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + METADATA_SUFFIX)) {
+            for (Path file : files) {
+                Properties metadata = readMetadata(file);
+                String name = file.getFileName().toString();
+                String key = name.substring(0, name.length() - METADATA_SUFFIX.length());
+                if (KEY.matcher(key).matches() && metadata != null && isExpired(metadata, now)) {
+                    remove(key);
+                }
+            }
+        }
+    }
+
+    private void purgeExpired(long now) throws IOException {
+        if (now < nextPurge) {
+            return;
+        }
+        nextPurge = now + timeToLiveMillis;
+        purgeExpired();
+    }
+
+    private static Properties readMetadata(Path file) throws IOException {
+        Properties metadata = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            metadata.load(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return metadata;
+    }
+
+    private static boolean isExpired(Properties metadata, long now) {
+        try {
+            return now >= Long.parseLong(metadata.getProperty(EXPIRES_AT, "0"));
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static void checkKey(String key) {
+        if (key == null || !KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid download key " + key);
+        }
+    }
+
+    private Path dataFile(String key) {
+        return directory.resolve(key + DATA_SUFFIX);
+    }
+
+    private Path metadataFile(String key) {
+        return directory.resolve(key + METADATA_SUFFIX);
+    }
+}
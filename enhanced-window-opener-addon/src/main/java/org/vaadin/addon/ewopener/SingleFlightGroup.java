@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deduplicates concurrent generations of the same content.
+ *
+ * While content is being generated for a request, identical requests arriving in the meantime
+ * do not run the generator: they receive the bytes produced for the first request as they are written.
+ * Requests are identical when they have the same content namespace, filename, download request
+ * parameters and cache key, as for {@link ContentCache}.
+ * Requests could join a generation only until its content exceeds the buffer threshold of the opener,
+ * since joined requests need the content from its first byte; past it the generation waits at most
+ * the follower timeout for joined requests that fall behind, then goes on without them.
+ *
+ * An instance is thread safe and is meant to be shared by all the sessions of the application.
+ *
+ * <pre>{@code
+ * static final SingleFlightGroup REPORTS = new SingleFlightGroup();
+ * ...
+ * new EnhancedBrowserWindowOpener()
+ *     .withSingleFlight(REPORTS, "monthly-reports")
+ *     .withGeneratedContent("report.pdf", this::makeReport)
+ * }</pre>
+ */
+public class SingleFlightGroup {
+
+    /**
+     * Default time a generation waits for a joined request that falls behind.
+     */
+    public static final Duration DEFAULT_FOLLOWER_TIMEOUT = Duration.ofSeconds(10);
+
+    private final long followerTimeoutNanos;
+    private final Map<ContentCacheKey, Flight> flights = new HashMap<>();
+    private final AtomicLong generations = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    /**
+     * Creates a group with the {@link #DEFAULT_FOLLOWER_TIMEOUT default follower timeout}.
+     */
+    public SingleFlightGroup() {
+        this(DEFAULT_FOLLOWER_TIMEOUT);
+    }
+
+    /**
+     * Creates a group whose generations wait at most the given time for a joined request
+     * that falls behind; the request is then detached and fails, so that a stalled client
+     * does not block the generation and the other requests.
+     *
+     * @param followerTimeout the time a generation waits for a joined request
+     */
+    public SingleFlightGroup(Duration followerTimeout) {
+        this.followerTimeoutNanos = Objects.requireNonNull(followerTimeout, "followerTimeout must not be null")
+            .toNanos();
+        if (followerTimeoutNanos < 0) {
+            throw new IllegalArgumentException("followerTimeout must not be negative");
+        }
+    }
+
+    /**
+     * Joins the generation in progress for the given key, or starts a new one.
+     *
+     * @param key       the content key
+     * @param joinLimit the size of content above which a new generation could not be joined
+     * @return the ticket for the request
+     */
+    Ticket join(ContentCacheKey key, long joinLimit) {
+        synchronized (flights) {
+            Flight flight = flights.get(key);
+            if (flight != null && flight.tryJoin()) {
+                joined.incrementAndGet();
+                return new Ticket(key, flight, false);
+            }
+            flight = new Flight(joinLimit, followerTimeoutNanos);
+            flights.put(key, flight);
+            generations.incrementAndGet();
+            return new Ticket(key, flight, true);
+        }
+    }
+
+    void complete(Ticket ticket, Throwable failure) {
+        synchronized (flights) {
+            flights.remove(ticket.key, ticket.flight);
+        }
+        ticket.flight.complete(failure);
+    }
+
+    /**
+     * Gets the number of generations started.
+     *
+     * @return the number of generations started
+     */
+    public long getGenerations() {
+        return generations.get();
+    }
+
+    /**
+     * Gets the number of requests served by joining a generation in progress.
+     *
+     * @return the number of requests that joined a generation in progress
+     */
+    public long getJoined() {
+        return joined.get();
+    }
+
+    /**
+     * Gets the number of generations in progress.
+     *
+     * @return the number of generations in progress
+     */
+    public int getInProgress() {
+        synchronized (flights) {
+            return flights.size();
+        }
+    }
+
+    /**
+     * The participation of a request to a generation.
+     */
+    static final class Ticket {
+
+        private final ContentCacheKey key;
+        private final Flight flight;
+        private final boolean leader;
+
+        private Ticket(ContentCacheKey key, Flight flight, boolean leader) {
+            this.key = key;
+            this.flight = flight;
+            this.leader = leader;
+        }
+
+        Flight getFlight() {
+            return flight;
+        }
+
+        /**
+         * @return true if the request runs the generation, false if it joined one in progress.
+         */
+        boolean isLeader() {
+            return leader;
+        }
+    }
+}
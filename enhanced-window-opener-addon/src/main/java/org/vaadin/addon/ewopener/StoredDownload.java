@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.util.Objects;
+
+/**
+ * A materialized download kept in a {@link DownloadStore}: the content and what is needed to send it.
+ */
+public final class StoredDownload {
+
+    private final String filename;
+    private final String mimeType;
+    private final MaterializedContent content;
+
+    /**
+     * Creates a new download.
+     *
+     * @param filename the filename of the download
+     * @param mimeType the MIME type of the content, or {@literal null} for a generic binary type
+     * @param content  the content of the download
+     * @throws IllegalArgumentException if the filename is {@literal null}, empty or contains control characters
+     */
+    public StoredDownload(String filename, String mimeType, MaterializedContent content) {
+        if (filename == null || filename.isEmpty() || filename.chars().anyMatch(Character::isISOControl)) {
+            throw new IllegalArgumentException("Invalid download filename " + filename);
+        }
+        this.filename = filename;
+        this.mimeType = mimeType == null ? "application/octet-stream" : mimeType;
+        this.content = Objects.requireNonNull(content, "content must not be null");
+    }
+
+    /**
+     * Gets the filename of the download.
+     *
+     * @return the filename of the download
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Gets the MIME type of the content.
+     *
+     * @return the MIME type of the content
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Gets the content of the download.
+     *
+     * @return the content of the download
+     */
+    public MaterializedContent getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+
+/**
+ * Generates text content writing it directly to the download response.
+ *
+ * @see ContentWriter#ofText(java.nio.charset.Charset, TextContentWriter)
+ */
+@FunctionalInterface
+public interface TextContentWriter extends Serializable {
+
+    /**
+     * Writes the content to the given writer.
+     *
+     * The writer is flushed by the caller after this method returns.
+     *
+     * @param writer the writer to write the content to
+     * @throws IOException if the content cannot be written
+     */
+    void write(Writer writer) throws IOException;
+}
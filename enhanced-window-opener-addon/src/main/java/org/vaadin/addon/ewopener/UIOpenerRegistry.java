@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+
+/**
+ * Session scoped registry of the openers shared by all the components of a UI.
+ *
+ * The registry is stored as a session attribute and must be accessed holding the session lock.
+ * Openers are removed when their UI is detached.
+ */
+final class UIOpenerRegistry implements Serializable {
+
+    private final Map<Integer, EnhancedBrowserWindowOpener> openers = new HashMap<>();
+
+    private UIOpenerRegistry() {
+    }
+
+    static UIOpenerRegistry get(VaadinSession session) {
+        UIOpenerRegistry registry = session.getAttribute(UIOpenerRegistry.class);
+        if (registry == null) {
+            registry = new UIOpenerRegistry();
+            session.setAttribute(UIOpenerRegistry.class, registry);
+        }
+        return registry;
+    }
+
+    EnhancedBrowserWindowOpener openerFor(UI ui) {
+        Integer uiId = ui.getUIId();
+        EnhancedBrowserWindowOpener opener = openers.get(uiId);
+        if (opener == null) {
+            opener = EnhancedBrowserWindowOpener.createShared(ui);
+            openers.put(uiId, opener);
+            ui.addDetachListener(event -> openers.remove(uiId));
+        }
+        return opener;
+    }
+}
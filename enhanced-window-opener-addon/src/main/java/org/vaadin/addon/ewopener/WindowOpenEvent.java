@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.time.Duration;
+import java.util.EventObject;
+
+import org.vaadin.addon.ewopener.shared.OpenOutcome;
+
+/**
+ * Event reporting the outcome of an attempt to open a window on the client.
+ *
+ * Events are sampled and reported with a delay, along with the next request sent by the client.
+ *
+ * @see EnhancedBrowserWindowOpener#withTelemetry(double)
+ */
+public class WindowOpenEvent extends EventObject {
+
+    private final OpenOutcome outcome;
+    private final boolean preOpened;
+    private final Duration latency;
+
+    WindowOpenEvent(EnhancedBrowserWindowOpener source, OpenOutcome outcome, boolean preOpened, Duration latency) {
+        super(source);
+        this.outcome = outcome;
+        this.preOpened = preOpened;
+        this.latency = latency;
+    }
+
+    /**
+     * Gets the opener that opened the window.
+     *
+     * @return the opener that opened the window
+     */
+    public EnhancedBrowserWindowOpener getOpener() {
+        return (EnhancedBrowserWindowOpener) getSource();
+    }
+
+    /**
+     * Gets the outcome of the attempt.
+     *
+     * @return the outcome of the attempt
+     */
+    public OpenOutcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Gets whether the window was pre-opened by the popup blocker workaround.
+     *
+     * @return true if the window was pre-opened, otherwise false.
+     */
+    public boolean isPreOpened() {
+        return preOpened;
+    }
+
+    /**
+     * Gets the time elapsed on the client between the user click and the outcome.
+     *
+     * For pre-opened windows this is how long the blank window waited for the content url.
+     *
+     * @return the time elapsed since the click, or {@literal null} if the window was not opened
+     * as a result of a click.
+     */
+    public Duration getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+
+import com.vaadin.util.ReflectTools;
+
+/**
+ * Listener for the outcomes of window openings reported by the client.
+ *
+ * @see EnhancedBrowserWindowOpener#addWindowOpenListener(WindowOpenListener)
+ */
+@FunctionalInterface
+public interface WindowOpenListener extends Serializable {
+
+    Method WINDOW_OPEN_METHOD = ReflectTools.findMethod(WindowOpenListener.class, "windowOpen",
+        WindowOpenEvent.class);
+
+    /**
+     * Invoked when the client reports the outcome of a window opening.
+     *
+     * @param event the event
+     */
+    void windowOpen(WindowOpenEvent event);
+}
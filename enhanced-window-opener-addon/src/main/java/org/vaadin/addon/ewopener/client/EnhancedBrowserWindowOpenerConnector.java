@@ -15,18 +15,45 @@
  */
 package org.vaadin.addon.ewopener.client;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import com.google.gwt.core.client.Duration;
 import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.EventTarget;
+import com.google.gwt.event.dom.client.BlurEvent;
+import com.google.gwt.event.dom.client.BlurHandler;
+import com.google.gwt.event.dom.client.FocusEvent;
+import com.google.gwt.event.dom.client.FocusHandler;
+import com.google.gwt.event.dom.client.MouseDownEvent;
+import com.google.gwt.event.dom.client.MouseDownHandler;
+import com.google.gwt.event.dom.client.MouseOutEvent;
+import com.google.gwt.event.dom.client.MouseOutHandler;
+import com.google.gwt.event.dom.client.MouseOverEvent;
+import com.google.gwt.event.dom.client.MouseOverHandler;
+import com.google.gwt.event.shared.HandlerRegistration;
 import com.google.gwt.http.client.URL;
+import com.google.gwt.user.client.Event;
+import com.google.gwt.user.client.Random;
+import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.ui.Widget;
+import com.vaadin.client.ComponentConnector;
+import com.vaadin.client.ServerConnector;
 import com.vaadin.client.annotations.OnStateChange;
 import com.vaadin.client.extensions.BrowserWindowOpenerConnector;
 import com.vaadin.client.ui.VMenuBar;
+import com.vaadin.shared.Connector;
 import com.vaadin.shared.ui.BrowserWindowOpenerState;
 import com.vaadin.shared.ui.Connect;
 import com.vaadin.shared.util.SharedUtil;
 import org.vaadin.addon.ewopener.EnhancedBrowserWindowOpener;
+import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerClientRpc;
+import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerServerRpc;
 import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerState;
+import org.vaadin.addon.ewopener.shared.OpenOutcome;
+import org.vaadin.addon.ewopener.shared.OpenReport;
 
 /**
  * Client side code for {@link EnhancedBrowserWindowOpener}.
@@ -34,21 +61,123 @@ import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerState;
 @Connect(EnhancedBrowserWindowOpener.class)
 public class EnhancedBrowserWindowOpenerConnector extends BrowserWindowOpenerConnector {
 
-    private JavaScriptObject window;
+    private static final int REPORT_DELAY = 1000;
+    private static final int MAX_PENDING_REPORTS = 50;
+    private static final int CLOSE_CHECK_INTERVAL = 1000;
+    private static final int MAX_CLOSE_CHECKS = 30 * 60;
 
+    private final List<JavaScriptObject> windows = new ArrayList<>();
+    private final List<OpenReport> pendingReports = new ArrayList<>();
+    private final Timer reportTimer = new Timer() {
+        @Override
+        public void run() {
+            flushReports();
+        }
+    };
+    private final List<HandlerRegistration> prefetchHandlers = new ArrayList<>();
+    private final Timer closeTimer = new Timer() {
+        @Override
+        public void run() {
+            checkWindowClosed();
+        }
+    };
+    private JavaScriptObject watchedWindow;
+    private String watchedDownloadId;
+    private int downloads;
+    private int closeChecks;
+    private double clickTime = -1;
+    private boolean sampled;
+    private boolean prefetching;
+    private JavaScriptObject progressWindow;
+
+    public EnhancedBrowserWindowOpenerConnector() {
+        registerRpc(EnhancedBrowserWindowOpenerClientRpc.class, new EnhancedBrowserWindowOpenerClientRpc() {
+            @Override
+            public void openResource(String resourceKey, Map<String, String> parameters, String uriFragment) {
+                String downloadId = newDownloadId();
+                String url = addParametersAndFragment(getResourceUrl(resourceKey), parameters, uriFragment);
+                openLocation(addDownloadId(url, downloadId), downloadId);
+            }
+
+            @Override
+            public void openUrl(String url, Map<String, String> parameters, String uriFragment) {
+                // token urls are relative to the context of the application
+                String location = getConnection().translateVaadinUri(url);
+                // served without the session, so its generation could not be cancelled
+                openLocation(addParametersAndFragment(location, parameters, uriFragment), null);
+            }
+
+            @Override
+            public void progress(String filename, long done, long total, String unit,
+                                 boolean finished, boolean failed) {
+                showProgress(filename, done, total, unit, finished, failed);
+            }
+        });
+    }
+
+    @Override
+    protected void extend(ServerConnector target) {
+        super.extend(target);
+        if (target instanceof ComponentConnector) {
+            Widget widget = ((ComponentConnector) target).getWidget();
+            prefetchHandlers.add(widget.addDomHandler((MouseOverHandler) event -> requestPrefetch(),
+                MouseOverEvent.getType()));
+            prefetchHandlers.add(widget.addDomHandler((MouseDownHandler) event -> requestPrefetch(),
+                MouseDownEvent.getType()));
+            prefetchHandlers.add(widget.addDomHandler((FocusHandler) event -> requestPrefetch(),
+                FocusEvent.getType()));
+            prefetchHandlers.add(widget.addDomHandler((MouseOutHandler) event -> {
+                // Moving between children of the component is not leaving it
+                EventTarget related = event.getRelatedTarget();
+                if (!Element.is(related) || !widget.getElement().isOrHasChild(Element.as(related))) {
+                    cancelPrefetch();
+                }
+            }, MouseOutEvent.getType()));
+            prefetchHandlers.add(widget.addDomHandler((BlurHandler) event -> cancelPrefetch(),
+                BlurEvent.getType()));
+        }
+    }
 
     @Override
     public void trigger() {
+        if (!isRegisteredTrigger()) {
+            return;
+        }
+        clickTime = Duration.currentTimeMillis();
+        sampled = isSampled();
+        // The prefetched content is now going to be opened
+        prefetching = false;
         if (getState().clientSide) {
             super.trigger();
         } else if (getState().popupBlockerWorkaround) {
-            window = openWindow(getState().target, getState().features);
+            closeWindows();
+            int count = Math.max(1, getState().preOpenedWindows);
+            String target = count > 1 ? "_blank" : getState().target;
+            for (int i = 0; i < count; i++) {
+                JavaScriptObject window = openWindow(target, getState().features);
+                if (window == null) {
+                    report(OpenOutcome.BLOCKED, true);
+                } else {
+                    windows.add(window);
+                    if (getState().progressPage) {
+                        writeProgress(window, "Download", "Preparing download...");
+                    }
+                }
+            }
         }
     }
 
     @Override
     public void onUnregister() {
-        window = null;
+        for (HandlerRegistration handler : prefetchHandlers) {
+            handler.removeHandler();
+        }
+        prefetchHandlers.clear();
+        windows.clear();
+        progressWindow = null;
+        stopWatching();
+        reportTimer.cancel();
+        pendingReports.clear();
         super.onUnregister();
     }
 
@@ -59,30 +188,239 @@ public class EnhancedBrowserWindowOpenerConnector extends BrowserWindowOpenerCon
 
     @OnStateChange("lastUpdated")
     private void onLastUpdateChanged() {
-        if (!getState().clientSide && getState().lastUpdated > 0) {
-            if (getState().popupBlockerWorkaround && window != null) {
-                String url = getResourceUrl(BrowserWindowOpenerState.locationResource);
-                url = addParametersAndFragment(url);
+        if (getState().lastUpdated > 0) {
+            String downloadId = newDownloadId();
+            String url = getResourceUrl(BrowserWindowOpenerState.locationResource);
+            openLocation(addDownloadId(addParametersAndFragment(url), downloadId), downloadId);
+        }
+    }
+
+    private void openLocation(String url, String downloadId) {
+        if (!getState().clientSide) {
+            if (getState().popupBlockerWorkaround && !windows.isEmpty()) {
+                JavaScriptObject window = windows.remove(0);
                 if (url != null) {
-                    setWindowUrl(window, url);
+                    navigate(window, url);
+                    watchWindow(window, downloadId);
+                    // The page stays visible until the browser starts receiving the content
+                    progressWindow = getState().progressPage ? window : null;
                 } else {
                     closeWindow(window);
+                    report(OpenOutcome.CANCELLED, true);
+                }
+                closeWindows();
+            } else if (url != null) {
+                watchWindow(open(url, getState().target), downloadId);
+            }
+            clickTime = -1;
+        }
+    }
+
+    @OnStateChange("batchUpdated")
+    private void onBatchUpdateChanged() {
+        if (getState().batchUpdated > 0) {
+            // Named targets would make every resource replace the previous one
+            String target = getState().batchSize > 1 ? "_blank" : getState().target;
+            for (int i = 0; i < getState().batchSize; i++) {
+                String url = getResourceUrl(EnhancedBrowserWindowOpenerState.batchResource(i));
+                url = addParametersAndFragment(url);
+                if (url == null) {
+                    continue;
+                }
+                if (getState().popupBlockerWorkaround && !windows.isEmpty()) {
+                    navigate(windows.remove(0), url);
+                } else {
+                    open(url, target);
                 }
-                window = null;
-            } else {
-                super.trigger();
             }
+            closeWindows();
+            clickTime = -1;
         }
     }
 
+    private void showProgress(String filename, long done, long total, String unit,
+                              boolean finished, boolean failed) {
+        if (progressWindow == null || isClosed(progressWindow)) {
+            progressWindow = null;
+            return;
+        }
+        String text;
+        if (failed) {
+            text = "Preparing " + filename + " failed.";
+        } else if (finished) {
+            text = filename + " is ready.";
+        } else if (total > 0) {
+            text = "Preparing " + filename + "... " + Math.min(100, done * 100 / total) + "%";
+        } else {
+            text = "Preparing " + filename + "... " + done + " " + unit;
+        }
+        writeProgress(progressWindow, filename, text);
+        if (finished) {
+            progressWindow = null;
+            stopWatching();
+        }
+    }
+
+    private void navigate(JavaScriptObject window, String url) {
+        if (isClosed(window)) {
+            report(OpenOutcome.CLOSED_BY_USER, true);
+        } else {
+            setWindowUrl(window, url);
+            report(OpenOutcome.OPENED, true);
+        }
+    }
+
+    private JavaScriptObject open(String url, String target) {
+        JavaScriptObject window = openWindow(url, target, getState().features);
+        report(window == null ? OpenOutcome.BLOCKED : OpenOutcome.OPENED, false);
+        return window;
+    }
+
+    /**
+     * Watches the window opened for the content, to let the server cancel the generation
+     * of the download when the user closes it before the content arrives.
+     */
+    private void watchWindow(JavaScriptObject window, String downloadId) {
+        stopWatching();
+        if (window != null && downloadId != null) {
+            watchedWindow = window;
+            watchedDownloadId = downloadId;
+            closeChecks = 0;
+            closeTimer.scheduleRepeating(CLOSE_CHECK_INTERVAL);
+        }
+    }
+
+    private void checkWindowClosed() {
+        if (watchedWindow == null || ++closeChecks > MAX_CLOSE_CHECKS) {
+            stopWatching();
+        } else if (isClosed(watchedWindow)) {
+            String downloadId = watchedDownloadId;
+            stopWatching();
+            getRpcProxy(EnhancedBrowserWindowOpenerServerRpc.class).windowClosed(downloadId);
+        }
+    }
+
+    private void stopWatching() {
+        closeTimer.cancel();
+        watchedWindow = null;
+        watchedDownloadId = null;
+    }
+
+    private String newDownloadId() {
+        return Integer.toString(Random.nextInt(Integer.MAX_VALUE), 36) + "-" + (++downloads);
+    }
+
+    private static String addDownloadId(String url, String downloadId) {
+        if (url == null) {
+            return null;
+        }
+        return SharedUtil.addGetParameters(url,
+            EnhancedBrowserWindowOpenerState.downloadIdParameter + "=" + downloadId);
+    }
+
+    private void requestPrefetch() {
+        if (getState().prefetch && !prefetching && isRegisteredTrigger()) {
+            prefetching = true;
+            getRpcProxy(EnhancedBrowserWindowOpenerServerRpc.class).prefetch();
+        }
+    }
+
+    private void cancelPrefetch() {
+        if (prefetching) {
+            prefetching = false;
+            getRpcProxy(EnhancedBrowserWindowOpenerServerRpc.class).cancelPrefetch();
+        }
+    }
+
+    private boolean isSampled() {
+        double rate = getState().telemetrySampleRate;
+        return rate > 0 && (rate >= 1 || Random.nextDouble() < rate);
+    }
+
+    private void report(OpenOutcome outcome, boolean preOpened) {
+        // Openings not caused by a click are sampled on their own
+        if (clickTime < 0 ? !isSampled() : !sampled) {
+            return;
+        }
+        if (pendingReports.size() >= MAX_PENDING_REPORTS) {
+            return;
+        }
+        OpenReport report = new OpenReport();
+        report.outcome = outcome;
+        report.preOpened = preOpened;
+        report.latency = clickTime < 0 ? -1 : (int) (Duration.currentTimeMillis() - clickTime);
+        pendingReports.add(report);
+        if (!reportTimer.isRunning()) {
+            reportTimer.schedule(REPORT_DELAY);
+        }
+    }
+
+    private void flushReports() {
+        if (!pendingReports.isEmpty()) {
+            // Delayed: reports travel with the next request instead of causing one
+            getRpcProxy(EnhancedBrowserWindowOpenerServerRpc.class).reportOpens(new ArrayList<>(pendingReports));
+            pendingReports.clear();
+        }
+    }
+
+    private boolean isRegisteredTrigger() {
+        if (!getState().shared && getState().triggers.isEmpty() && getState().triggerStyleName == null) {
+            return true;
+        }
+        Event event = Event.getCurrentEvent();
+        if (event == null) {
+            return false;
+        }
+        EventTarget target = event.getEventTarget();
+        if (!Element.is(target)) {
+            return false;
+        }
+        Element element = Element.as(target);
+        if (getState().triggerStyleName != null && !hasTriggerStyleName(element)) {
+            return false;
+        }
+        if (!getState().shared && getState().triggers.isEmpty()) {
+            return true;
+        }
+        for (Connector trigger : getState().triggers) {
+            // Triggers not yet attached on the client are null
+            if (trigger instanceof ComponentConnector
+                && ((ComponentConnector) trigger).getWidget().getElement().isOrHasChild(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasTriggerStyleName(Element element) {
+        for (Element current = element; current != null; current = current.getParentElement()) {
+            if (current.hasClassName(getState().triggerStyleName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void closeWindows() {
+        for (JavaScriptObject window : windows) {
+            closeWindow(window);
+            report(OpenOutcome.CANCELLED, true);
+        }
+        windows.clear();
+    }
+
     private String addParametersAndFragment(String url) {
+        return addParametersAndFragment(url, getState().parameters, getState().uriFragment);
+    }
+
+    private String addParametersAndFragment(String url, Map<String, String> parameters, String uriFragment) {
         if (url == null) {
             return null;
         }
 
-        if (!getState().parameters.isEmpty()) {
+        if (parameters != null && !parameters.isEmpty()) {
             StringBuilder params = new StringBuilder();
-            for (Map.Entry<String, String> entry : getState().parameters.entrySet()) {
+            for (Map.Entry<String, String> entry : parameters.entrySet()) {
                 if (params.length() != 0) {
                     params.append('&');
                 }
@@ -98,9 +436,9 @@ public class EnhancedBrowserWindowOpenerConnector extends BrowserWindowOpenerCon
             url = SharedUtil.addGetParameters(url, params.toString());
         }
 
-        if (getState().uriFragment != null) {
+        if (uriFragment != null) {
             // Replace previous fragment or just add to the end of the url
-            url = url.replaceFirst("#.*|$", "#" + getState().uriFragment);
+            url = url.replaceFirst("#.*|$", "#" + uriFragment);
         }
 
         return url;
@@ -110,10 +448,40 @@ public class EnhancedBrowserWindowOpenerConnector extends BrowserWindowOpenerCon
     return $wnd.open(undefined, name, features);
   }-*/;
 
+    private static native JavaScriptObject openWindow(String url, String name, String features) /*-{
+    return $wnd.open(url, name, features);
+  }-*/;
+
     private static native void setWindowUrl(JavaScriptObject window, String url) /*-{
     window.location.href = url;
   }-*/;
 
+    private static native boolean isClosed(JavaScriptObject window) /*-{
+    return !!window.closed;
+  }-*/;
+
+    private static native void writeProgress(JavaScriptObject window, String title, String text) /*-{
+    try {
+        var doc = window.document;
+        var progress = doc.getElementById('ewopener-progress');
+        if (!progress) {
+            if (!doc.body || doc.body.childNodes.length > 0) {
+                // the window is already showing the content
+                return;
+            }
+            progress = doc.createElement('p');
+            progress.id = 'ewopener-progress';
+            progress.style.font = '16px sans-serif';
+            progress.style.margin = '2em';
+            doc.body.appendChild(progress);
+        }
+        doc.title = title;
+        progress.textContent = text;
+    } catch (e) {
+        // the window has been closed or shows content from another origin
+    }
+  }-*/;
+
     private static native void closeWindow(JavaScriptObject window) /*-{
     window.close();
   }-*/;
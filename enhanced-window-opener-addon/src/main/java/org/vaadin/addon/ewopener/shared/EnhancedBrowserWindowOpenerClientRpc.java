@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.shared;
+
+import java.util.Map;
+
+import com.vaadin.shared.communication.ClientRpc;
+
+public interface EnhancedBrowserWindowOpenerClientRpc extends ClientRpc {
+
+    /**
+     * Opens a window for a resource of the connector.
+     *
+     * @param resourceKey the key of the resource
+     * @param parameters  the parameters to add to the url of the resource
+     * @param uriFragment the fragment to set on the url, or {@literal null} to keep the original one
+     */
+    void openResource(String resourceKey, Map<String, String> parameters, String uriFragment);
+
+    /**
+     * Opens a window for an url.
+     *
+     * @param url         the url to open
+     * @param parameters  the parameters to add to the url
+     * @param uriFragment the fragment to set on the url, or {@literal null} to keep the original one
+     */
+    void openUrl(String url, Map<String, String> parameters, String uriFragment);
+
+    /**
+     * Shows the progress of the generation of the content opened in the pre-opened window.
+     *
+     * @param filename the filename of the content
+     * @param done     the units of work done
+     * @param total    the total units of work, or -1 if unknown
+     * @param unit     the description of the units of work
+     * @param finished true if the generation is over
+     * @param failed   true if the generation failed
+     */
+    void progress(String filename, long done, long total, String unit, boolean finished, boolean failed);
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.shared;
+
+import java.util.List;
+
+import com.vaadin.shared.annotations.Delayed;
+import com.vaadin.shared.communication.ServerRpc;
+
+public interface EnhancedBrowserWindowOpenerServerRpc extends ServerRpc {
+
+    /**
+     * Reports the outcomes of window openings.
+     *
+     * Reports are sent along with the next request to the server, never in a request of their own.
+     *
+     * @param reports the outcomes of window openings
+     */
+    @Delayed
+    void reportOpens(List<OpenReport> reports);
+
+    /**
+     * Asks to start generating the content of the opener, since the user is likely going to click.
+     */
+    void prefetch();
+
+    /**
+     * Signals that the content asked by {@link #prefetch()} is no longer expected to be opened.
+     */
+    void cancelPrefetch();
+
+    /**
+     * Signals that the window opened for a download has been closed by the user.
+     *
+     * @param downloadId the identifier of the download sent with the
+     *                   {@link EnhancedBrowserWindowOpenerState#downloadIdParameter} request parameter
+     */
+    void windowClosed(String downloadId);
+}
@@ -15,14 +15,92 @@
  */
 package org.vaadin.addon.ewopener.shared;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.shared.Connector;
 import com.vaadin.shared.ui.BrowserWindowOpenerState;
 
 public class EnhancedBrowserWindowOpenerState extends BrowserWindowOpenerState {
 
+    /**
+     * Prefix of the keys of the resources opened in batch.
+     */
+    public static final String batchResourcePrefix = "batch-";
+
+    /**
+     * Prefix of the keys of the resources opened by a single call, with their own parameters.
+     */
+    public static final String openResourcePrefix = "open-";
+
+    /**
+     * Name of the request parameter identifying a single opening of a resource,
+     * so that its generation could be cancelled when the window opened for it is closed.
+     */
+    public static final String downloadIdParameter = "v-ewo-download";
+
+    /**
+     * @deprecated open commands are sent through {@link EnhancedBrowserWindowOpenerClientRpc}
+     * and do not change the state anymore.
+     */
+    @Deprecated
     public long lastUpdated = 0;
 
     public boolean clientSide = false;
 
     public boolean popupBlockerWorkaround = false;
 
+    public int preOpenedWindows = 1;
+
+    public long batchUpdated = 0;
+
+    public int batchSize = 0;
+
+    /**
+     * If true the opener reacts only to clicks on the registered {@link #triggers}.
+     */
+    public boolean shared = false;
+
+    public List<Connector> triggers = new ArrayList<>();
+
+    /**
+     * If set the opener reacts only to clicks on elements with this style name.
+     */
+    public String triggerStyleName;
+
+    /**
+     * Fraction of window openings reported to the server, from 0 (disabled) to 1.
+     */
+    public double telemetrySampleRate = 0;
+
+    /**
+     * If true the opener asks the server to prefetch its content when the user is likely going to click.
+     */
+    public boolean prefetch = false;
+
+    /**
+     * If true the progress of the generation is shown in the pre-opened window.
+     */
+    public boolean progressPage = false;
+
+    /**
+     * Gets the key of the resource at the given position of the batch.
+     *
+     * @param index the position of the resource in the batch
+     * @return the key of the resource
+     */
+    public static String batchResource(int index) {
+        return batchResourcePrefix + index;
+    }
+
+    /**
+     * Gets the key of the resource opened by a single call.
+     *
+     * @param sequence the sequence number of the call, unique for the opener
+     * @return the key of the resource
+     */
+    public static String openResource(long sequence) {
+        return openResourcePrefix + sequence;
+    }
+
 }
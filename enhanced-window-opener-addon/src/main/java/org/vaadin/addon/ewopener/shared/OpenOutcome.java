@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.shared;
+
+/**
+ * Outcome of an attempt to open a window on the client.
+ */
+public enum OpenOutcome {
+
+    /**
+     * The window has been opened, or the pre-opened window has been navigated to the content.
+     */
+    OPENED,
+
+    /**
+     * The browser blocked the window.
+     */
+    BLOCKED,
+
+    /**
+     * The pre-opened window has been closed because there was nothing to open in it.
+     */
+    CANCELLED,
+
+    /**
+     * The user closed the pre-opened window before the content was ready.
+     */
+    CLOSED_BY_USER
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.shared;
+
+import java.io.Serializable;
+
+/**
+ * Client side report of an attempt to open a window.
+ */
+public class OpenReport implements Serializable {
+
+    public OpenOutcome outcome;
+
+    /**
+     * True if the window was pre-opened by the popup blocker workaround.
+     */
+    public boolean preOpened;
+
+    /**
+     * Milliseconds elapsed between the user click and the outcome, or -1 if
+     * the window was not opened as a result of a click.
+     */
+    public int latency = -1;
+}
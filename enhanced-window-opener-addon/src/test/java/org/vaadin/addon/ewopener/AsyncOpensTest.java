@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vaadin.server.ExternalResource;
+import com.vaadin.server.Resource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class AsyncOpensTest {
+
+	@Test
+	public void completionsAreDeliveredTogether() {
+		AsyncOpens opens = new AsyncOpens();
+		AtomicInteger scheduled = new AtomicInteger();
+		CompletableFuture<Resource> first = new CompletableFuture<>();
+		CompletableFuture<Resource> second = new CompletableFuture<>();
+		CompletableFuture<Resource> third = new CompletableFuture<>();
+		opens.track(first, o -> scheduled.incrementAndGet());
+		opens.track(second, o -> scheduled.incrementAndGet());
+		opens.track(third, o -> scheduled.incrementAndGet());
+
+		first.complete(new ExternalResource("http://localhost/1"));
+		second.completeExceptionally(new IOException("boom"));
+		assertEquals(1, scheduled.get());
+
+		List<Resource> resources = new ArrayList<>();
+		List<Throwable> failures = new ArrayList<>();
+		opens.drain(resources, failures);
+		assertEquals(1, resources.size());
+		assertEquals(1, failures.size());
+
+		third.complete(null);
+		assertEquals(2, scheduled.get());
+	}
+
+	@Test
+	public void cancelledComputationsDoNotRun() {
+		AsyncOpens opens = new AsyncOpens();
+		List<Runnable> queued = new ArrayList<>();
+		AtomicBoolean invoked = new AtomicBoolean();
+		AtomicBoolean scheduled = new AtomicBoolean();
+		opens.track(CompletableFuture.supplyAsync(() -> {
+			invoked.set(true);
+			return new ExternalResource("http://localhost/1");
+		}, queued::add), o -> scheduled.set(true));
+
+		opens.cancel();
+		queued.forEach(Runnable::run);
+		assertFalse(invoked.get());
+		assertFalse(scheduled.get());
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ByteBufferContentTest {
+
+	@Test
+	public void contentIsTheRemainingPartOfTheBuffer() throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[]{0, 1, 2, 3, 4, 5, 6, 7});
+		buffer.position(2);
+		ByteBufferContent content = new ByteBufferContent(buffer);
+		buffer.position(6);
+
+		assertEquals(6, content.size());
+		assertArrayEquals(new byte[]{2, 3, 4, 5, 6, 7}, write(content, 0, 6));
+		assertArrayEquals(new byte[]{4, 5}, write(content, 2, 2));
+	}
+
+	@Test
+	public void directBuffersAreWrittenAndRead() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+		buffer.put(new byte[]{9, 8, 7, 6}).flip();
+		ByteBufferContent content = new ByteBufferContent(buffer);
+
+		assertArrayEquals(new byte[]{8, 7}, write(content, 1, 2));
+		try (InputStream in = content.openStream()) {
+			byte[] read = new byte[4];
+			assertEquals(4, in.read(read));
+			assertArrayEquals(new byte[]{9, 8, 7, 6}, read);
+			assertEquals(-1, in.read());
+		}
+		assertEquals(MaterializedContent.toHex(MaterializedContent.newDigest().digest(new byte[]{9, 8, 7, 6})),
+			content.getDigest());
+	}
+
+	private static byte[] write(MaterializedContent content, long offset, long length) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		content.writeTo(out, offset, length);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ByteRangeTest {
+
+	@Test
+	public void parseClosedRange() {
+		ByteRange range = ByteRange.parse("bytes=10-19", 100);
+		assertEquals(10, range.getStart());
+		assertEquals(19, range.getEnd());
+		assertEquals(10, range.getLength());
+	}
+
+	@Test
+	public void parseOpenRange() {
+		ByteRange range = ByteRange.parse("bytes=90-", 100);
+		assertEquals(90, range.getStart());
+		assertEquals(99, range.getEnd());
+	}
+
+	@Test
+	public void parseSuffixRange() {
+		ByteRange range = ByteRange.parse("bytes=-30", 100);
+		assertEquals(70, range.getStart());
+		assertEquals(30, range.getLength());
+		assertEquals(100, ByteRange.parse("bytes=-300", 100).getLength());
+	}
+
+	@Test
+	public void endIsTruncatedToContentSize() {
+		assertEquals(99, ByteRange.parse("bytes=50-500", 100).getEnd());
+	}
+
+	@Test
+	public void unsatisfiableRanges() {
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=100-", 100));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 100));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-10", 0));
+	}
+
+	@Test
+	public void malformedOrMultipleRangesAreIgnored() {
+		assertNull(ByteRange.parse(null, 100));
+		assertNull(ByteRange.parse("items=0-10", 100));
+		assertNull(ByteRange.parse("bytes=0-10,20-30", 100));
+		assertNull(ByteRange.parse("bytes=20-10", 100));
+		assertNull(ByteRange.parse("bytes=a-10", 100));
+		assertNull(ByteRange.parse("bytes=--5", 100));
+		assertNull(ByteRange.parse("bytes=-", 100));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+
+	@Test
+	public void generationsOverTheLimitAreRejected() throws IOException {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+		GenerationPermit first = GenerationPermit.acquire(Arrays.asList(limiter), Duration.ZERO);
+		assertNotSame(GenerationPermit.REJECTED, first);
+		assertEquals(1, limiter.getActive());
+
+		assertSame(GenerationPermit.REJECTED, GenerationPermit.acquire(Arrays.asList(limiter), Duration.ofMillis(20)));
+		assertEquals(1, limiter.getRejected());
+
+		first.release();
+		assertEquals(0, limiter.getActive());
+		GenerationPermit second = GenerationPermit.acquire(Arrays.asList(limiter), Duration.ZERO);
+		assertNotSame(GenerationPermit.REJECTED, second);
+		second.release();
+	}
+
+	@Test
+	public void slotsAreReleasedWhenALaterLimiterRejects() throws IOException {
+		ConcurrencyLimiter session = new ConcurrencyLimiter(2);
+		ConcurrencyLimiter global = new ConcurrencyLimiter(1);
+		GenerationPermit first = GenerationPermit.acquire(Arrays.asList(session, global), Duration.ZERO);
+
+		assertSame(GenerationPermit.REJECTED, GenerationPermit.acquire(Arrays.asList(session, global), Duration.ZERO));
+		assertEquals(1, session.getActive());
+		assertEquals(1, global.getActive());
+
+		first.release();
+		assertEquals(0, session.getActive());
+		assertEquals(0, global.getActive());
+	}
+
+	@Test
+	public void waitingGenerationGetsTheReleasedSlot() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+		GenerationPermit first = GenerationPermit.acquire(Arrays.asList(limiter), Duration.ZERO);
+		Thread releaser = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			first.release();
+		});
+		releaser.start();
+		GenerationPermit second = GenerationPermit.acquire(Arrays.asList(limiter), Duration.ofSeconds(5));
+		assertNotSame(GenerationPermit.REJECTED, second);
+		second.release();
+		releaser.join();
+	}
+
+	@Test
+	public void releasedSlotGoesToTheQueuedGeneration() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+		assertTrue(limiter.tryAcquire(0));
+		CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> {
+			try {
+				return limiter.tryAcquire(TimeUnit.SECONDS.toNanos(5));
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (limiter.getQueued() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		// let the queued generation park on the semaphore
+		Thread.sleep(50);
+
+		limiter.release();
+		assertFalse("A new generation overtook the queued one", limiter.tryAcquire(0));
+		assertTrue(queued.get(5, TimeUnit.SECONDS));
+		limiter.release();
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContentBufferTest {
+
+	@Test
+	public void contentBelowThresholdIsKeptInMemory() throws IOException {
+		ContentBuffer buffer = new ContentBuffer(16, null);
+		buffer.write(bytes(16));
+		assertFalse(buffer.isSpilled());
+		MaterializedContent content = buffer.toContent();
+		assertEquals(16, content.size());
+		assertArrayEquals(bytes(16), read(content));
+	}
+
+	@Test
+	public void contentAboveThresholdIsSpilledAndDeletedOnRelease() throws IOException {
+		ContentBuffer buffer = new ContentBuffer(16, null);
+		buffer.write(bytes(10));
+		buffer.write(bytes(10));
+		assertTrue(buffer.isSpilled());
+		FileContent content = (FileContent) buffer.toContent();
+		Path file = content.getFile();
+		assertEquals(20, content.size());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		content.writeTo(out, 5, 10);
+		assertArrayEquals(new byte[]{5, 6, 7, 8, 9, 0, 1, 2, 3, 4}, out.toByteArray());
+
+		content.retain();
+		content.release();
+		assertTrue(Files.exists(file));
+		content.release();
+		assertFalse(Files.exists(file));
+	}
+
+	@Test
+	public void singleBytesAreBufferedAndSpilled() throws IOException {
+		ContentBuffer buffer = new ContentBuffer(16, null);
+		for (byte b : bytes(20)) {
+			buffer.write(b);
+			assertEquals(buffer.size() > 16, buffer.isSpilled());
+		}
+		MaterializedContent content = buffer.toContent();
+		assertEquals(20, content.size());
+		assertArrayEquals(bytes(20), read(content));
+		content.release();
+	}
+
+	@Test
+	public void discardDeletesSpilledFile() throws IOException {
+		ContentBuffer buffer = new ContentBuffer(0, null);
+		buffer.write(bytes(4));
+		FileContent content = (FileContent) buffer.toContent();
+		buffer.discard();
+		assertFalse(Files.exists(content.getFile()));
+	}
+
+	private static byte[] read(MaterializedContent content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		content.writeTo(out);
+		return out.toByteArray();
+	}
+
+	private static byte[] bytes(int size) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) i;
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ContentCacheTest {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	public void getReturnsCachedContentAndCountsHits() {
+		ContentCache cache = new ContentCache(100, Duration.ofMinutes(1), clock::get);
+		MaterializedContent content = content(10);
+		cache.put(key("a"), content);
+
+		assertSame(content, cache.get(key("a")));
+		assertNull(cache.get(key("b")));
+
+		ContentCache.Statistics statistics = cache.getStatistics();
+		assertEquals(1, statistics.getHitCount());
+		assertEquals(1, statistics.getMissCount());
+		assertEquals(1, statistics.getEntryCount());
+		assertEquals(10, statistics.getSize());
+	}
+
+	@Test
+	public void leastRecentlyUsedEntriesAreEvictedWhenFull() {
+		ContentCache cache = new ContentCache(20, Duration.ofMinutes(1), clock::get);
+		cache.put(key("a"), content(10));
+		cache.put(key("b"), content(10));
+		cache.get(key("a"));
+		cache.put(key("c"), content(10));
+
+		assertNotNull(cache.get(key("a")));
+		assertNull(cache.get(key("b")));
+		assertNotNull(cache.get(key("c")));
+		assertEquals(1, cache.getStatistics().getEvictionCount());
+	}
+
+	@Test
+	public void expiredEntriesAreNotReturned() {
+		ContentCache cache = new ContentCache(100, Duration.ofNanos(50), clock::get);
+		cache.put(key("a"), content(10));
+		clock.set(49);
+		assertNotNull(cache.get(key("a")));
+		clock.set(50);
+		assertNull(cache.get(key("a")));
+		assertEquals(0, cache.getStatistics().getSize());
+	}
+
+	@Test
+	public void contentLargerThanCacheIsIgnored() {
+		ContentCache cache = new ContentCache(5, Duration.ofMinutes(1), clock::get);
+		cache.put(key("a"), content(10));
+		assertNull(cache.get(key("a")));
+	}
+
+	@Test
+	public void keysWithDifferentParametersAreDistinct() {
+		ContentCacheKey key1 = new ContentCacheKey("reports", "f.txt", Collections.singletonMap("p", new String[]{"1"}), null);
+		ContentCacheKey key2 = new ContentCacheKey("reports", "f.txt", Collections.singletonMap("p", new String[]{"1"}), null);
+		ContentCacheKey key3 = new ContentCacheKey("reports", "f.txt", Collections.singletonMap("p", new String[]{"2"}), null);
+		assertEquals(key1, key2);
+		assertEquals(key1.hashCode(), key2.hashCode());
+		assertFalse(key1.equals(key3));
+	}
+
+	@Test
+	public void keysOfDifferentNamespacesAreDistinct() {
+		ContentCacheKey key1 = new ContentCacheKey("reports", "f.txt", Collections.emptyMap(), null);
+		ContentCacheKey key2 = new ContentCacheKey("invoices", "f.txt", Collections.emptyMap(), null);
+		assertFalse(key1.equals(key2));
+
+		GeneratedContentSettings settings = new GeneratedContentSettings();
+		assertFalse("Settings without namespace must not share content",
+			settings.getContentNamespace().equals(new GeneratedContentSettings().getContentNamespace()));
+		settings.setContentNamespace("reports");
+		assertEquals("reports", settings.getContentNamespace());
+	}
+
+	private static ContentCacheKey key(String userKey) {
+		return new ContentCacheKey("reports", "file.txt", Collections.emptyMap(), userKey);
+	}
+
+	private static MaterializedContent content(int size) {
+		return new ByteArrayContent(new byte[size], size);
+	}
+}
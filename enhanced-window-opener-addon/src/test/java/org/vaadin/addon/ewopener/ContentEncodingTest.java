@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContentEncodingTest {
+
+	@Test
+	public void gzipIsPreferred() {
+		assertSame(ContentEncoding.GZIP, ContentEncoding.negotiate("gzip, deflate, br"));
+		assertSame(ContentEncoding.GZIP, ContentEncoding.negotiate("*"));
+	}
+
+	@Test
+	public void qualityValuesAreHonored() {
+		assertSame(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0.5, deflate"));
+		assertSame(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0, *"));
+		assertNull(ContentEncoding.negotiate("gzip;q=0, deflate;q=0"));
+		assertNull(ContentEncoding.negotiate("identity"));
+		assertNull(ContentEncoding.negotiate(null));
+	}
+
+	@Test
+	public void alreadyCompressedTypesAreSkipped() {
+		assertTrue(ContentEncoding.isCompressible("text/csv; charset=UTF-8"));
+		assertTrue(ContentEncoding.isCompressible("application/json"));
+		assertTrue(ContentEncoding.isCompressible("image/svg+xml"));
+		assertFalse(ContentEncoding.isCompressible("image/png"));
+		assertFalse(ContentEncoding.isCompressible("application/zip"));
+		assertFalse(ContentEncoding.isCompressible("application/pdf"));
+		assertFalse(ContentEncoding.isCompressible(null));
+	}
+
+	@Test
+	public void gzipStreamProducesValidContent() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream out = ContentEncoding.GZIP.wrap(compressed, 9, 512)) {
+			out.write("hello hello hello".getBytes(StandardCharsets.UTF_8));
+		}
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		GeneratedContentResource.copy(
+			new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())), plain, 0);
+		assertEquals("hello hello hello", new String(plain.toByteArray(), StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContentGenerationMetricsTest {
+
+	private final GeneratedContentResource resource = new GeneratedContentResource("report.csv", out -> {
+	});
+
+	@Test
+	public void completedDownloadsAreAggregated() {
+		ContentGenerationMetrics metrics = new ContentGenerationMetrics(Duration.ofSeconds(1));
+		metrics.generationStarted(event(false, null, null, 0, null));
+		assertEquals(1, metrics.getActiveDownloads());
+		metrics.generationCompleted(event(false, Duration.ofMillis(100), Duration.ofMillis(400), 1000, null));
+		metrics.generationStarted(event(true, null, null, 0, null));
+		metrics.generationCompleted(event(true, Duration.ofMillis(10), Duration.ofMillis(1600), 3000, null));
+
+		assertEquals(0, metrics.getActiveDownloads());
+		assertEquals(2, metrics.getDownloads());
+		assertEquals(1, metrics.getCacheHits());
+		assertEquals(1, metrics.getSlowDownloads());
+		assertEquals(0, metrics.getFailures());
+		assertEquals(4000, metrics.getBytes());
+		assertEquals(1000d, metrics.getAverageDurationMillis(), 0.001);
+		assertEquals(1600, metrics.getMaxDurationMillis());
+		assertEquals(55d, metrics.getAverageTimeToFirstByteMillis(), 0.001);
+		assertEquals(2000d, metrics.getAverageThroughput(), 0.001);
+	}
+
+	@Test
+	public void failuresAreCounted() {
+		ContentGenerationMetrics metrics = new ContentGenerationMetrics(Duration.ofSeconds(1));
+		metrics.generationStarted(event(false, null, null, 0, null));
+		metrics.generationCompleted(event(false, null, Duration.ofMillis(5), 0, new IOException("broken")));
+		assertEquals(1, metrics.getFailures());
+		assertEquals(0d, metrics.getAverageTimeToFirstByteMillis(), 0.001);
+
+		metrics.reset();
+		assertEquals(0, metrics.getDownloads());
+		assertEquals(0, metrics.getFailures());
+	}
+
+	private ContentGenerationEvent event(boolean cacheHit, Duration timeToFirstByte, Duration duration,
+										 long bytes, Throwable failure) {
+		return new ContentGenerationEvent(resource, Instant.now(), cacheHit, timeToFirstByte, duration, bytes, failure);
+	}
+}
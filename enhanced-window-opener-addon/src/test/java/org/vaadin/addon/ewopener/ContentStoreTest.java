@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContentStoreTest {
+
+	private final Path directory = createDirectory();
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void identicalContentIsStoredOnce() throws IOException {
+		ContentStore store = new ContentStore(directory, 1024);
+		MaterializedContent first = materialize(store, 16, bytes(20));
+		MaterializedContent second = materialize(store, 16, bytes(20));
+		MaterializedContent spilled = materialize(store, 4, bytes(20));
+
+		assertSame(first, second);
+		assertSame(first, spilled);
+		assertEquals(1, store.getCount());
+		assertEquals(20, store.getSize());
+		assertEquals(1, store.getStoredCount());
+		assertEquals(2, store.getDeduplicatedCount());
+		assertArrayEquals(bytes(20), read(first));
+		assertEquals(MaterializedContent.toHex(sha256(bytes(20))), first.getDigest());
+	}
+
+	@Test
+	public void onlyContentNotInUseIsEvicted() throws IOException {
+		ContentStore store = new ContentStore(directory, 30);
+		MaterializedContent first = materialize(store, 64, bytes(20));
+		MaterializedContent second = materialize(store, 64, bytes(21));
+		assertEquals(2, store.getCount());
+		assertEquals(0, store.getEvictionCount());
+
+		first.release();
+		assertEquals(1, store.getCount());
+		assertEquals(1, store.getEvictionCount());
+		assertFalse(Files.exists(directory.resolve(first.getDigest())));
+		assertTrue(Files.exists(directory.resolve(second.getDigest())));
+
+		MaterializedContent regenerated = materialize(store, 64, bytes(20));
+		assertNotSame(first, regenerated);
+		assertEquals(3, store.getStoredCount());
+	}
+
+	@Test
+	public void storedFilesAreIndexedByNewStores() throws IOException {
+		ContentStore store = new ContentStore(directory, 1024);
+		MaterializedContent content = materialize(store, 64, bytes(20));
+		content.release();
+
+		ContentStore reopened = new ContentStore(directory, 1024);
+		assertEquals(1, reopened.getCount());
+		MaterializedContent stored = reopened.get(content.getDigest());
+		assertArrayEquals(bytes(20), read(stored));
+		stored.release();
+	}
+
+	@Test
+	public void concurrentStoresAndEvictionsKeepFilesConsistent() throws Exception {
+		ContentStore store = new ContentStore(directory, 30);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				int size = 20 + t % 2;
+				tasks.add(executor.submit(() -> {
+					for (int i = 0; i < 50; i++) {
+						MaterializedContent content = materialize(store, 4, bytes(size));
+						assertArrayEquals(bytes(size), read(content));
+						content.release();
+					}
+					return null;
+				}));
+			}
+			for (Future<?> task : tasks) {
+				task.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(1, store.getCount());
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	private static MaterializedContent materialize(ContentStore store, int threshold, byte[] bytes) throws IOException {
+		ContentBuffer buffer = new ContentBuffer(threshold, null, store);
+		buffer.write(bytes);
+		return buffer.toContent();
+	}
+
+	private static byte[] read(MaterializedContent content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		content.writeTo(out);
+		return out.toByteArray();
+	}
+
+	private static byte[] sha256(byte[] bytes) {
+		return MaterializedContent.newDigest().digest(bytes);
+	}
+
+	private static byte[] bytes(int size) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) (i % 10);
+		}
+		return bytes;
+	}
+
+	private static Path createDirectory() {
+		try {
+			return Files.createTempDirectory("ewopener-store");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.IOException;
+
+import com.vaadin.shared.Registration;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DownloadStoreRegistryTest {
+
+	@Test
+	public void storesAreResolvedUntilRemoved() {
+		DownloadStoreRegistry registry = new DownloadStoreRegistry();
+		DownloadStore store = new DownloadStore() {
+			@Override
+			public void put(String key, StoredDownload download) throws IOException {
+			}
+
+			@Override
+			public StoredDownload get(String key) throws IOException {
+				return null;
+			}
+
+			@Override
+			public void remove(String key) throws IOException {
+			}
+		};
+		Registration registration = registry.register("downloads", store);
+
+		assertSame(store, registry.get("downloads"));
+		assertNull(registry.get("reports"));
+		assertNull(registry.get(null));
+		registration.remove();
+		assertNull(registry.get("downloads"));
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vaadin.server.StreamResource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadTokenStoreTest {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	@Test
+	public void tokensResolveUntilTheyExpire() {
+		DownloadTokenStore store = new DownloadTokenStore(Duration.ofMinutes(1), clock::get);
+		StreamResource resource = new StreamResource(() -> null, "report.csv");
+		String token = store.register(resource);
+
+		assertEquals(43, token.length());
+		assertNotEquals(token, store.register(resource));
+		assertSame(resource, store.resolve(token));
+		assertSame(resource, store.resolve(token));
+
+		clock.addAndGet(Duration.ofMinutes(1).toNanos());
+		assertNull(store.resolve(token));
+		assertNull(store.resolve("unknown"));
+		assertNull(store.resolve(null));
+	}
+
+	@Test
+	public void revokedTokensDoNotResolve() {
+		DownloadTokenStore store = new DownloadTokenStore(Duration.ofMinutes(1), clock::get);
+		String token = store.register(new StreamResource(() -> null, "report.csv"));
+
+		assertTrue(store.revoke(token));
+		assertFalse(store.revoke(token));
+		assertNull(store.resolve(token));
+	}
+
+	@Test
+	public void expiredTokensArePurgedOnRegistration() {
+		DownloadTokenStore store = new DownloadTokenStore(Duration.ofMinutes(1), clock::get);
+		store.register(new StreamResource(() -> null, "a.csv"));
+		store.register(new StreamResource(() -> null, "b.csv"));
+		clock.addAndGet(Duration.ofMinutes(2).toNanos());
+
+		store.register(new StreamResource(() -> null, "c.csv"));
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	public void expiredTokensArePurgedOnResolution() {
+		DownloadTokenStore store = new DownloadTokenStore(Duration.ofMinutes(1), clock::get);
+		store.register(new StreamResource(() -> null, "a.csv"));
+		store.register(new StreamResource(() -> null, "b.csv"));
+		clock.addAndGet(Duration.ofMinutes(2).toNanos());
+
+		assertNull(store.resolve("unknown"));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void tokenIsTheFirstSegmentOfThePath() {
+		assertEquals("abc", DownloadTokenServlet.parseToken("/abc/report.csv"));
+		assertEquals("abc", DownloadTokenServlet.parseToken("/abc"));
+		assertNull(DownloadTokenServlet.parseToken("/"));
+		assertNull(DownloadTokenServlet.parseToken(null));
+	}
+}
@@ -15,8 +15,43 @@
  */
 package org.vaadin.addon.ewopener;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vaadin.server.ClientConnector;
+import com.vaadin.server.ClientMethodInvocation;
+import com.vaadin.server.ConnectorResource;
+import com.vaadin.server.ExternalResource;
+import com.vaadin.server.Resource;
+import com.vaadin.server.VaadinSession;
+import com.vaadin.shared.Registration;
+import com.vaadin.ui.Button;
 import junit.framework.Assert;
 import org.junit.Test;
+import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerState;
+import org.vaadin.addon.ewopener.shared.OpenOutcome;
+import org.vaadin.addon.ewopener.shared.OpenReport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class EnhancedBrowserWindowOpenerTest {
 
@@ -24,4 +59,282 @@ public class EnhancedBrowserWindowOpenerTest {
 	public void thisAlwaysPasses() {
 		Assert.assertEquals(true, true);
 	}
+
+	@Test
+	public void triggersAreAddedAndRemoved() {
+		EnhancedBrowserWindowOpener opener = new EnhancedBrowserWindowOpener();
+		Button first = new Button("First");
+		Button second = new Button("Second");
+		Registration registration = opener.addTrigger(first);
+		opener.addTrigger(second);
+		assertEquals(2, opener.getState(false).triggers.size());
+
+		registration.remove();
+		assertEquals(1, opener.getState(false).triggers.size());
+		assertTrue(opener.getState(false).triggers.contains(second));
+		assertTrue(first.getListeners(ClientConnector.AttachEvent.class).isEmpty());
+		assertTrue(first.getListeners(ClientConnector.DetachEvent.class).isEmpty());
+	}
+
+	@Test
+	public void detachedTriggersAreDroppedUntilAttachedAgain() {
+		EnhancedBrowserWindowOpener opener = new EnhancedBrowserWindowOpener();
+		Button trigger = new Button("Open");
+		opener.addTrigger(trigger);
+
+		for (Object listener : trigger.getListeners(ClientConnector.DetachEvent.class)) {
+			((ClientConnector.DetachListener) listener).detach(new ClientConnector.DetachEvent(trigger));
+		}
+		assertTrue(opener.getState(false).triggers.isEmpty());
+
+		for (Object listener : trigger.getListeners(ClientConnector.AttachEvent.class)) {
+			((ClientConnector.AttachListener) listener).attach(new ClientConnector.AttachEvent(trigger));
+		}
+		assertEquals(1, opener.getState(false).triggers.size());
+	}
+
+	@Test
+	public void concurrentOpensKeepTheirOwnResources() throws IOException {
+		TestOpener opener = new TestOpener();
+		int opens = 12;
+		for (int i = 0; i < opens; i++) {
+			int content = i;
+			GeneratedContentResource resource = new GeneratedContentResource("report-" + i + ".txt",
+				out -> out.write(content));
+			opener.open(resource, Collections.singletonMap("month", "2018-" + i), "page-" + i);
+		}
+
+		List<ClientMethodInvocation> calls = opener.retrievePendingRpcCalls();
+		assertEquals(opens, calls.size());
+		Set<Object> keys = new HashSet<>();
+		for (int i = 0; i < opens; i++) {
+			Object[] parameters = calls.get(i).getParameters();
+			assertEquals("openResource", calls.get(i).getMethodName());
+			assertTrue(keys.add(parameters[0]));
+			assertEquals(Collections.singletonMap("month", "2018-" + i), parameters[1]);
+			assertEquals("page-" + i, parameters[2]);
+			ConnectorResource resource = (ConnectorResource) opener.resource((String) parameters[0]);
+			assertEquals("report-" + i + ".txt", resource.getFilename());
+		}
+
+		String served = (String) calls.get(0).getParameters()[0];
+		TestDownloads.Response response = new TestDownloads.Response();
+		assertTrue(opener.handleConnectorRequest(TestDownloads.request(), response.proxy(),
+			served + "/report-0.txt"));
+		assertEquals(200, response.status);
+		assertArrayEquals(new byte[]{0}, response.body.toByteArray());
+		assertNull(opener.resource(served));
+		assertFalse(opener.session.lock.isLocked());
+		assertNotNull(opener.resource((String) calls.get(1).getParameters()[0]));
+	}
+
+	@Test
+	public void resourcesServingRangesAreKeptForFurtherRanges() throws IOException {
+		TestOpener opener = new TestOpener();
+		GeneratedContentResource resource = new GeneratedContentResource("report.txt",
+			out -> out.write("month;total".getBytes(StandardCharsets.UTF_8)));
+		resource.getSettings().setRangeRequests(true);
+		opener.open(resource, null, null);
+		String key = (String) opener.retrievePendingRpcCalls().get(0).getParameters()[0];
+
+		TestDownloads.Response first = new TestDownloads.Response();
+		assertTrue(opener.handleConnectorRequest(TestDownloads.request(Collections.singletonMap("Range", "bytes=0-4"),
+			Collections.emptyMap()), first.proxy(), key + "/report.txt"));
+		TestDownloads.Response second = new TestDownloads.Response();
+		assertTrue(opener.handleConnectorRequest(TestDownloads.request(Collections.singletonMap("Range", "bytes=6-"),
+			Collections.emptyMap()), second.proxy(), key + "/report.txt"));
+
+		assertEquals(206, first.status);
+		assertEquals("month", first.text());
+		assertEquals(206, second.status);
+		assertEquals("total", second.text());
+		assertSame(resource, opener.resource(key));
+	}
+
+	@Test
+	public void openAllRegistersTheBatchInASingleUpdate() {
+		TestOpener opener = new TestOpener();
+		List<Resource> resources = Arrays.asList(new ExternalResource("https://example.com/a"),
+			new GeneratedContentResource("b.txt", out -> out.write('b')),
+			new GeneratedContentResource("c.txt", out -> out.write('c')));
+
+		opener.openAll(resources);
+		EnhancedBrowserWindowOpenerState state = opener.getState(false);
+		assertEquals(3, state.batchSize);
+		long firstUpdate = state.batchUpdated;
+		assertTrue(firstUpdate > 0);
+		for (int i = 0; i < resources.size(); i++) {
+			assertSame(resources.get(i), opener.resource(EnhancedBrowserWindowOpenerState.batchResource(i)));
+		}
+		assertTrue(opener.retrievePendingRpcCalls().isEmpty());
+
+		opener.openAll(Collections.singletonList(resources.get(2)));
+		assertEquals(1, state.batchSize);
+		assertTrue(state.batchUpdated > firstUpdate);
+		assertSame(resources.get(2), opener.resource(EnhancedBrowserWindowOpenerState.batchResource(0)));
+		assertNull(opener.resource(EnhancedBrowserWindowOpenerState.batchResource(1)));
+		assertNull(opener.resource(EnhancedBrowserWindowOpenerState.batchResource(2)));
+	}
+
+	@Test
+	public void openAllUrlsOpensExternalResources() {
+		TestOpener opener = new TestOpener();
+
+		opener.openAllUrls(Arrays.asList("https://example.com/a", "https://example.com/b"));
+
+		assertEquals(2, opener.getState(false).batchSize);
+		for (int i = 0; i < 2; i++) {
+			Resource resource = opener.resource(EnhancedBrowserWindowOpenerState.batchResource(i));
+			assertTrue(resource instanceof ExternalResource);
+			assertEquals(i == 0 ? "https://example.com/a" : "https://example.com/b",
+				((ExternalResource) resource).getURL());
+		}
+	}
+
+	@Test
+	public void batchedOpenReportsAreFiredInOrder() {
+		EnhancedBrowserWindowOpener opener = new EnhancedBrowserWindowOpener().withTelemetry(0.25);
+		List<WindowOpenEvent> events = new ArrayList<>();
+		opener.addWindowOpenListener(events::add);
+
+		opener.onOpenReports(Arrays.asList(report(OpenOutcome.OPENED, true, 250), null,
+			report(OpenOutcome.BLOCKED, false, -1), report(null, false, 10),
+			report(OpenOutcome.CLOSED_BY_USER, true, 0)));
+
+		assertEquals(0.25, opener.getState(false).telemetrySampleRate, 0);
+		assertEquals(3, events.size());
+		assertSame(opener, events.get(0).getOpener());
+		assertEquals(OpenOutcome.OPENED, events.get(0).getOutcome());
+		assertTrue(events.get(0).isPreOpened());
+		assertEquals(Duration.ofMillis(250), events.get(0).getLatency());
+		// not opened by a click
+		assertEquals(OpenOutcome.BLOCKED, events.get(1).getOutcome());
+		assertFalse(events.get(1).isPreOpened());
+		assertNull(events.get(1).getLatency());
+		assertEquals(OpenOutcome.CLOSED_BY_USER, events.get(2).getOutcome());
+		assertEquals(Duration.ZERO, events.get(2).getLatency());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sampleRateOutOfRangeIsRejected() {
+		new EnhancedBrowserWindowOpener().withTelemetry(Double.NaN);
+	}
+
+	@Test
+	public void cachedContentIsPrivateToTheSessionByDefault() throws IOException {
+		ContentCache cache = new ContentCache(1024, Duration.ofMinutes(1));
+		AtomicInteger generations = new AtomicInteger();
+		TestOpener first = new TestOpener();
+		first.withContentCache(cache, "reports").withStreamingContent("report.txt", out -> out.write('a'));
+		TestOpener second = new TestOpener();
+		second.withContentCache(cache, "reports").withStreamingContent("report.txt", out -> {
+			generations.incrementAndGet();
+			out.write('b');
+		});
+
+		assertEquals("a", download(first));
+		assertEquals("b", download(second));
+		assertEquals("b", download(second));
+		assertEquals(1, generations.get());
+	}
+
+	@Test
+	public void cachedContentIsSharedByTheSessionsWithTheSameKey() throws IOException {
+		ContentCache cache = new ContentCache(1024, Duration.ofMinutes(1));
+		TestOpener first = new TestOpener();
+		first.withContentCache(cache, "reports", () -> "everybody")
+			.withStreamingContent("report.txt", out -> out.write('a'));
+		TestOpener second = new TestOpener();
+		second.withContentCache(cache, "reports", () -> "everybody")
+			.withStreamingContent("report.txt", out -> out.write('b'));
+
+		assertEquals("a", download(first));
+		assertEquals("a", download(second));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sharedDownloadsRequireARegisteredStore() {
+		new EnhancedBrowserWindowOpener().withSharedDownloads("unregistered", "/downloads");
+	}
+
+	@Test
+	public void sharedDownloadsActivateThePopupBlockerWorkaround() throws IOException {
+		Path directory = Files.createTempDirectory("ewopener");
+		Registration registration = DownloadStoreRegistry.getDefault().register("downloads",
+			new SharedDirectoryDownloadStore(directory, Duration.ofMinutes(1)));
+		try {
+			EnhancedBrowserWindowOpener opener = new EnhancedBrowserWindowOpener()
+				.withSharedDownloads("downloads", "/downloads");
+
+			assertTrue(opener.getState(false).popupBlockerWorkaround);
+		} finally {
+			registration.remove();
+			Files.delete(directory);
+		}
+	}
+
+	private static String download(EnhancedBrowserWindowOpener opener) throws IOException {
+		TestDownloads.Response response = new TestDownloads.Response();
+		((ConnectorResource) opener.getResource()).getStream()
+			.writeResponse(TestDownloads.request(), response.proxy());
+		return response.text();
+	}
+
+	private static OpenReport report(OpenOutcome outcome, boolean preOpened, int latency) {
+		OpenReport report = new OpenReport();
+		report.outcome = outcome;
+		report.preOpened = preOpened;
+		report.latency = latency;
+		return report;
+	}
+
+	private static class TestOpener extends EnhancedBrowserWindowOpener {
+
+		private final LockedSession session = new LockedSession();
+
+		@Override
+		public VaadinSession getSession() {
+			return session;
+		}
+
+		Resource resource(String key) {
+			return getResource(key);
+		}
+	}
+
+	private static class LockedSession extends VaadinSession {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final Map<String, Object> attributes = new HashMap<>();
+
+		LockedSession() {
+			super(null);
+		}
+
+		@Override
+		public Object getAttribute(String name) {
+			return attributes.get(name);
+		}
+
+		@Override
+		public void setAttribute(String name, Object value) {
+			attributes.put(name, value);
+		}
+
+		@Override
+		public void lock() {
+			lock.lock();
+		}
+
+		@Override
+		public void unlock() {
+			lock.unlock();
+		}
+
+		@Override
+		public boolean hasLock() {
+			return lock.isHeldByCurrentThread();
+		}
+	}
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.vaadin.server.DownloadStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeneratedContentResourceTest {
+
+	@Test
+	public void fileContentIsServedForEachDownload() throws IOException {
+		Path file = Files.createTempFile("ewopener", ".txt");
+		try {
+			Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+			GeneratedContentResource resource = new GeneratedContentResource("content.txt", file);
+			for (int i = 0; i < 3; i++) {
+				TestDownloads.Response response = download(resource);
+				assertEquals(200, response.status);
+				assertEquals("content", response.text());
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void deletedFileIsNotFound() throws IOException {
+		Path file = Files.createTempFile("ewopener", ".txt");
+		Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+		GeneratedContentResource resource = new GeneratedContentResource("content.txt", file);
+		Files.delete(file);
+
+		TestDownloads.Response response = download(resource);
+		assertEquals(404, response.status);
+		assertEquals(0, response.body.size());
+	}
+
+	@Test
+	public void executorModeGeneratesOutsideOfTheSessionLock() throws Exception {
+		ReentrantLock sessionLock = new ReentrantLock();
+		ExecutorService executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "generator"));
+		List<String> generations = new ArrayList<>();
+		GeneratedContentResource resource = new GeneratedContentResource("report.txt", () -> {
+			generations.add(Thread.currentThread().getName() + (sessionLock.isHeldByCurrentThread() ? " locked" : ""));
+			return new ByteArrayInputStream("report".getBytes(StandardCharsets.UTF_8));
+		});
+		resource.getSettings().setExecutor(executor);
+		try {
+			DownloadStream stream;
+			sessionLock.lock();
+			try {
+				stream = resource.getStream();
+			} finally {
+				sessionLock.unlock();
+			}
+			assertTrue(generations.isEmpty());
+
+			TestDownloads.Response response = new TestDownloads.Response();
+			stream.writeResponse(TestDownloads.request(), response.proxy());
+			assertEquals(Collections.singletonList("generator"), generations);
+			assertEquals("report", response.text());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void blockingModeInvokesTheSourceHoldingTheSessionLock() throws IOException {
+		ReentrantLock sessionLock = new ReentrantLock();
+		List<Boolean> locked = new ArrayList<>();
+		GeneratedContentResource resource = new GeneratedContentResource("report.txt", () -> {
+			locked.add(sessionLock.isHeldByCurrentThread());
+			return new ByteArrayInputStream("report".getBytes(StandardCharsets.UTF_8));
+		});
+
+		DownloadStream stream;
+		sessionLock.lock();
+		try {
+			stream = resource.getStream();
+		} finally {
+			sessionLock.unlock();
+		}
+		assertEquals(Collections.singletonList(true), locked);
+
+		TestDownloads.Response response = new TestDownloads.Response();
+		stream.writeResponse(TestDownloads.request(), response.proxy());
+		assertEquals(Collections.singletonList(true), locked);
+		assertEquals("report", response.text());
+	}
+
+	@Test
+	public void materializedContentIsCachedForItsParameters() throws IOException {
+		AtomicInteger generations = new AtomicInteger();
+		GeneratedContentResource resource = new GeneratedContentResource("report.txt",
+			out -> out.write(generations.incrementAndGet()));
+		resource.getSettings().setContentCache(new ContentCache(1024, Duration.ofMinutes(1)));
+		Map<String, String[]> may = Collections.singletonMap("month", new String[]{"2018-05"});
+		Map<String, String[]> june = Collections.singletonMap("month", new String[]{"2018-06"});
+
+		resource.materializeContent(may).release();
+		MaterializedContent cached = resource.materializeContent(may);
+		MaterializedContent other = resource.materializeContent(june);
+
+		assertEquals(2, generations.get());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		cached.writeTo(out);
+		other.writeTo(out);
+		cached.release();
+		other.release();
+		assertArrayEquals(new byte[]{1, 2}, out.toByteArray());
+	}
+
+	@Test
+	public void filesAreHandedOverToTomcatSendfile() throws IOException {
+		Path file = Files.createTempFile("ewopener", ".txt");
+		try {
+			Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+			GeneratedContentResource resource = new GeneratedContentResource("content.txt", file);
+			Map<String, Object> attributes = new HashMap<>();
+			attributes.put("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+			TestDownloads.Response response = new TestDownloads.Response();
+			resource.getStream().writeResponse(
+				TestDownloads.request(Collections.emptyMap(), Collections.emptyMap(), attributes), response.proxy());
+
+			assertEquals(200, response.status);
+			assertEquals("7", response.headers.get("Content-Length"));
+			assertEquals(0, response.body.size());
+			assertEquals(file.toAbsolutePath().toString(), attributes.get("org.apache.tomcat.sendfile.filename"));
+			assertEquals(0L, attributes.get("org.apache.tomcat.sendfile.start"));
+			assertEquals(7L, attributes.get("org.apache.tomcat.sendfile.end"));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void rangesOfFilesAreMappedForJettySendContent() throws IOException {
+		Path file = Files.createTempFile("ewopener", ".txt");
+		try {
+			Files.write(file, "monthly total".getBytes(StandardCharsets.UTF_8));
+			GeneratedContentResource resource = new GeneratedContentResource("content.txt", file);
+			resource.getSettings().setRangeRequests(true);
+			SendContentStream body = new SendContentStream();
+			TestDownloads.Response response = new TestDownloads.Response(body);
+			resource.getStream().writeResponse(TestDownloads.request(
+				Collections.singletonMap("Range", "bytes=8-"), Collections.emptyMap()), response.proxy());
+
+			assertEquals(206, response.status);
+			assertEquals("5", response.headers.get("Content-Length"));
+			assertEquals(1, body.sent.size());
+			assertTrue(body.sent.get(0).isDirect());
+			assertEquals("total", response.text());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void directBuffersAreHandedOverToJettySendContent() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(7);
+		buffer.put("content".getBytes(StandardCharsets.UTF_8)).flip();
+		GeneratedContentResource resource = new GeneratedContentResource("content.txt", buffer);
+		SendContentStream body = new SendContentStream();
+		TestDownloads.Response response = new TestDownloads.Response(body);
+		resource.getStream().writeResponse(TestDownloads.request(), response.proxy());
+
+		assertEquals("7", response.headers.get("Content-Length"));
+		assertEquals(1, body.sent.size());
+		assertEquals("content", response.text());
+	}
+
+	private static TestDownloads.Response download(GeneratedContentResource resource) throws IOException {
+		DownloadStream stream = resource.getStream();
+		TestDownloads.Response response = new TestDownloads.Response();
+		stream.writeResponse(TestDownloads.request(), response.proxy());
+		return response;
+	}
+
+	/**
+	 * A response stream exposing the same zero-copy method as the Jetty {@code HttpOutput}.
+	 */
+	static final class SendContentStream extends ByteArrayOutputStream {
+
+		final List<ByteBuffer> sent = new ArrayList<>();
+
+		public void sendContent(ByteBuffer buffer) {
+			sent.add(buffer);
+			ByteBuffer copy = buffer.duplicate();
+			while (copy.hasRemaining()) {
+				write(copy.get());
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GenerationMonitorTest {
+
+	private final List<GenerationProgressEvent> events = new ArrayList<>();
+	private final ContentGenerationListener listener = new ContentGenerationListener() {
+		@Override
+		public void generationProgress(GenerationProgressEvent event) {
+			events.add(event);
+		}
+
+		@Override
+		public void generationCompleted(ContentGenerationEvent event) {
+		}
+	};
+	private final GeneratedContentResource resource = new GeneratedContentResource("export.csv", out -> {
+	});
+
+	@Test
+	public void explicitProgressReplacesByteCount() throws IOException {
+		GenerationMonitor monitor = new GenerationMonitor(resource, Collections.singletonList(listener), Duration.ZERO);
+		monitor.track(out -> {
+			out.write(new byte[10]);
+			ProgressSink.current().rows(3, 4);
+			out.write(new byte[10]);
+		}).write(new ByteArrayOutputStream());
+		monitor.finish(null);
+
+		GenerationProgressEvent bytes = events.get(0);
+		assertEquals(10, bytes.getDone());
+		assertEquals("bytes", bytes.getUnit());
+		GenerationProgressEvent last = events.get(events.size() - 1);
+		assertTrue(last.isFinished());
+		assertEquals(3, last.getDone());
+		assertEquals(4, last.getTotal());
+		assertEquals("rows", last.getUnit());
+		assertEquals(0.75, last.getFraction(), 0.0001);
+	}
+
+	@Test
+	public void reportsAreThrottled() throws IOException {
+		GenerationMonitor monitor = new GenerationMonitor(resource, Collections.singletonList(listener),
+			Duration.ofHours(1));
+		monitor.track(out -> {
+			for (int i = 0; i <= 100; i++) {
+				ProgressSink.current().percent(i);
+			}
+		}).write(new ByteArrayOutputStream());
+		assertTrue(events.isEmpty());
+
+		monitor.finish(null);
+		assertEquals(1, events.size());
+		assertEquals(100, events.get(0).getDone());
+	}
+
+	@Test
+	public void sinkIsBoundOnlyWhileGenerating() throws IOException {
+		GenerationMonitor monitor = new GenerationMonitor(resource, Collections.singletonList(listener), Duration.ZERO);
+		monitor.track(out -> assertSame(monitor, ProgressSink.current())).write(new ByteArrayOutputStream());
+		ProgressSink.current().percent(50);
+		assertTrue(events.isEmpty());
+		assertFalse(ProgressSink.current() == monitor);
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GenerationTaskTest {
+
+	@Test
+	public void cancelledGenerationCannotWrite() throws IOException {
+		GenerationTask task = new GenerationTask("export.csv", null);
+		try {
+			task.guard(out -> {
+				assertSame(task, CancellationToken.current());
+				out.write(1);
+				task.cancel("window closed");
+				assertTrue(Thread.currentThread().isInterrupted());
+				out.write(2);
+			}).write(new ByteArrayOutputStream());
+			fail("Cancelled generation not stopped");
+		} catch (GenerationCancelledException expected) {
+			// expected
+		}
+		assertFalse("Interrupt leaked to the thread", Thread.currentThread().isInterrupted());
+		assertFalse(CancellationToken.current().isCancelled());
+	}
+
+	@Test
+	public void generationsSendingContentAreNotAbandoned() throws IOException {
+		GenerationTask task = new GenerationTask("export.csv", null);
+		task.watch(new ByteArrayOutputStream()).write(1);
+		task.cancelIfAbandoned("window closed");
+		assertFalse(task.isCancelled());
+
+		GenerationTask pending = new GenerationTask("export.csv", null);
+		pending.cancelIfAbandoned("window closed");
+		assertTrue(pending.isCancelled());
+	}
+
+	@Test
+	public void closedWindowCancelsOnlyItsDownload() {
+		GeneratedContentSettings settings = new GeneratedContentSettings();
+		GenerationTask closed = new GenerationTask("export.csv", "1");
+		GenerationTask other = new GenerationTask("export.csv", "2");
+		GenerationTask unidentified = new GenerationTask("export.csv", null);
+		settings.getRunning().add(closed);
+		settings.getRunning().add(other);
+		settings.getRunning().add(unidentified);
+
+		settings.cancelAbandonedGeneration("1", "window closed");
+		assertTrue(closed.isCancelled());
+		assertFalse(other.isCancelled());
+		assertFalse(unidentified.isCancelled());
+	}
+
+	@Test
+	public void writeFailuresCancelTheGeneration() {
+		GenerationTask task = new GenerationTask("export.csv", null);
+		OutputStream out = task.watch(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+		});
+		try {
+			out.write(1);
+			fail("Write failure not propagated");
+		} catch (IOException expected) {
+			// expected
+		}
+		assertTrue(task.isCancelled());
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+
+import com.vaadin.shared.Registration;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GeneratorRegistryTest {
+
+	@Test
+	public void generatorsAreResolvedUntilRemoved() {
+		GeneratorRegistry registry = new GeneratorRegistry();
+		ContentGenerator generator = (parameters, out) -> out.write(parameters.get("id").getBytes());
+		Registration registration = registry.register("invoice", generator);
+
+		assertSame(generator, registry.get("invoice"));
+		assertNull(registry.get("order"));
+		registration.remove();
+		assertNull(registry.get("invoice"));
+	}
+
+	@Test
+	public void descriptorSurvivesSerialization() throws IOException, ClassNotFoundException {
+		GeneratorDescriptor descriptor = new GeneratorDescriptor("invoice", Collections.singletonMap("id", "42"));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(descriptor);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			GeneratorDescriptor copy = (GeneratorDescriptor) in.readObject();
+			assertEquals(descriptor, copy);
+			assertEquals("42", copy.getParameters().get("id"));
+		}
+	}
+}
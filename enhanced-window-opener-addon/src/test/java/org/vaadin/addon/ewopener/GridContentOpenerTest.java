@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.vaadin.server.DownloadStream;
+import com.vaadin.server.StreamResource;
+import com.vaadin.ui.Grid;
+import com.vaadin.ui.components.grid.ItemClickListener;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GridContentOpenerTest {
+
+	private final Grid<String> grid = new Grid<>();
+	private final List<String> generated = new ArrayList<>();
+
+	@Test
+	public void contentIsGeneratedForTheClickedRowWhenDownloaded() throws IOException {
+		Grid.Column<String, String> name = grid.addColumn(String::toUpperCase);
+		GridContentOpener<String> opener = new GridContentOpener<>(grid, row -> row + ".txt", (row, out) -> {
+			generated.add(row);
+			out.write(row.getBytes(StandardCharsets.UTF_8));
+		});
+		assertEquals("march.txt", opener.getColumn().getValueProvider().apply("march"));
+		assertEquals(GridContentOpener.TRIGGER_STYLE_NAME, opener.getColumn().getStyleGenerator().apply("march"));
+
+		click(name, "march");
+		assertNull(opener.getOpener().getResource());
+
+		click(opener.getColumn(), "april");
+		StreamResource resource = (StreamResource) opener.getOpener().getResource();
+		assertEquals("april.txt", resource.getFilename());
+		assertTrue(generated.isEmpty());
+
+		assertEquals("april", download(resource));
+		assertEquals(Collections.singletonList("april"), generated);
+	}
+
+	@Test
+	public void streamIsRequestedForTheClickedRowWhenDownloaded() throws IOException {
+		GridContentOpener<String> opener = new GridContentOpener<>(grid, row -> row + ".txt", row -> {
+			generated.add(row);
+			return new ByteArrayInputStream(row.getBytes(StandardCharsets.UTF_8));
+		});
+
+		click(opener.getColumn(), "may");
+		click(opener.getColumn(), "june");
+		StreamResource resource = (StreamResource) opener.getOpener().getResource();
+		assertEquals("june.txt", resource.getFilename());
+		assertTrue(generated.isEmpty());
+
+		assertEquals("june", download(resource));
+		assertEquals(Collections.singletonList("june"), generated);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void click(Grid.Column<String, ?> column, String item) {
+		Grid.ItemClick<String> event = new Grid.ItemClick<>(grid, column, item, null, 0);
+		for (Object listener : grid.getListeners(Grid.ItemClick.class)) {
+			((ItemClickListener<String>) listener).itemClick(event);
+		}
+	}
+
+	private static String download(StreamResource resource) throws IOException {
+		DownloadStream stream = resource.getStream();
+		TestDownloads.Response response = new TestDownloads.Response();
+		stream.writeResponse(TestDownloads.request(), response.proxy());
+		return response.text();
+	}
+}
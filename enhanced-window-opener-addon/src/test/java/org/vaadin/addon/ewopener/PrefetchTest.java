@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrefetchTest {
+
+	private final ContentCacheKey key = new ContentCacheKey("reports", "report.txt", Collections.emptyMap(), null);
+
+	@Test
+	public void claimedContentIsServed() throws IOException {
+		Prefetch prefetch = new Prefetch(key, Duration.ofMinutes(1));
+		MaterializedContent content = new ByteArrayContent(new byte[]{1, 2, 3}, 3);
+		prefetch.complete(content);
+
+		assertTrue(prefetch.claim());
+		prefetch.cancel();
+		assertSame(content, prefetch.await());
+	}
+
+	@Test
+	public void cancelReleasesGeneratedContent() {
+		Prefetch prefetch = new Prefetch(key, Duration.ofMinutes(1));
+		ReleaseCountingContent content = new ReleaseCountingContent();
+		prefetch.complete(content);
+
+		prefetch.cancel();
+		assertEquals(1, content.released.get());
+		assertFalse(prefetch.claim());
+	}
+
+	@Test
+	public void contentCompletedAfterCancelIsReleased() {
+		Prefetch prefetch = new Prefetch(key, Duration.ofMinutes(1));
+		prefetch.cancel();
+		ReleaseCountingContent content = new ReleaseCountingContent();
+		prefetch.complete(content);
+		assertEquals(1, content.released.get());
+	}
+
+	@Test
+	public void cancelStopsGeneration() throws IOException {
+		Prefetch prefetch = new Prefetch(key, Duration.ofMinutes(1));
+		OutputStream out = prefetch.guard(new ByteArrayOutputStream());
+		out.write(1);
+		prefetch.cancel();
+		try {
+			out.write(2);
+			fail("Generation not stopped");
+		} catch (InterruptedIOException expected) {
+			// expected
+		}
+	}
+
+	@Test
+	public void expiredPrefetchCannotBeClaimed() throws InterruptedException {
+		Prefetch prefetch = new Prefetch(key, Duration.ofMillis(1));
+		Thread.sleep(5);
+		assertTrue(prefetch.isExpired());
+		assertFalse(prefetch.claim());
+	}
+
+	@Test
+	public void expirationReleasesContentWithoutDownloads() throws InterruptedException {
+		Prefetch prefetch = new Prefetch(key, Duration.ofMillis(20));
+		ReleaseCountingContent content = new ReleaseCountingContent();
+		prefetch.complete(content);
+		prefetch.scheduleExpiration();
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		// the content is released right after the prefetch is marked as cancelled
+		while (content.released.get() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue(prefetch.isCancelled());
+		assertEquals(1, content.released.get());
+	}
+
+	@Test
+	public void expirationStopsRunningGeneration() throws IOException, InterruptedException {
+		Prefetch prefetch = new Prefetch(key, Duration.ofMillis(20));
+		prefetch.scheduleExpiration();
+		OutputStream out = prefetch.guard(new ByteArrayOutputStream());
+		out.write(1);
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!prefetch.isCancelled() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		try {
+			out.write(2);
+			fail("Generation not stopped on expiration");
+		} catch (InterruptedIOException expected) {
+			// expected
+		}
+	}
+
+	@Test
+	public void claimedPrefetchDoesNotExpire() throws IOException, InterruptedException {
+		Prefetch prefetch = new Prefetch(key, Duration.ofMillis(20));
+		ReleaseCountingContent content = new ReleaseCountingContent();
+		prefetch.complete(content);
+		prefetch.scheduleExpiration();
+		assertTrue(prefetch.claim());
+
+		Thread.sleep(50);
+		assertFalse(prefetch.isCancelled());
+		assertEquals(0, content.released.get());
+		assertSame(content, prefetch.await());
+	}
+
+	@Test
+	public void prefetchIsIgnoredInBlockingMode() {
+		GeneratedContentSettings settings = new GeneratedContentSettings();
+		settings.setPrefetchTimeToLive(Duration.ofMinutes(1));
+		AtomicInteger generations = new AtomicInteger();
+		GeneratedContentResource resource = new GeneratedContentResource("report.txt",
+			out -> generations.incrementAndGet(), settings);
+
+		resource.prefetch(Collections.emptyMap());
+		settings.setExecutor(Runnable::run);
+		resource.prefetch(Collections.emptyMap());
+		assertEquals("Prefetch should run only with an executor", 1, generations.get());
+	}
+
+	private static class ReleaseCountingContent implements MaterializedContent {
+
+		private final AtomicInteger released = new AtomicInteger();
+
+		@Override
+		public long size() {
+			return 0;
+		}
+
+		@Override
+		public InputStream openStream() {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+
+		@Override
+		public void release() {
+			released.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SharedDirectoryDownloadStoreTest {
+
+	private final Path directory = createDirectory();
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void downloadsStoredByOneNodeAreServedByAnother() throws IOException {
+		Clock clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+		DownloadStore generating = new SharedDirectoryDownloadStore(directory, Duration.ofMinutes(1), clock);
+		DownloadStore serving = new SharedDirectoryDownloadStore(directory, Duration.ofMinutes(1), clock);
+		byte[] bytes = "month;total\n2018-05;42\n".getBytes(StandardCharsets.UTF_8);
+		generating.put("abc", new StoredDownload("report \u00e8.csv", "text/csv", new ByteArrayContent(bytes, bytes.length)));
+
+		StoredDownload download = serving.get("abc");
+		assertEquals("report \u00e8.csv", download.getFilename());
+		assertEquals("text/csv", download.getMimeType());
+		assertEquals(bytes.length, download.getContent().size());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		download.getContent().writeTo(out);
+		download.getContent().release();
+		assertArrayEquals(bytes, out.toByteArray());
+
+		serving.remove("abc");
+		assertNull(generating.get("abc"));
+	}
+
+	@Test
+	public void expiredAndInvalidKeysAreNotServed() throws IOException {
+		Instant now = Instant.EPOCH;
+		DownloadStore store = new SharedDirectoryDownloadStore(directory, Duration.ofMinutes(1),
+			Clock.fixed(now, ZoneOffset.UTC));
+		DownloadStore later = new SharedDirectoryDownloadStore(directory, Duration.ofMinutes(1),
+			Clock.fixed(now.plus(Duration.ofMinutes(1)), ZoneOffset.UTC));
+		store.put("abc", new StoredDownload("a.txt", null, new ByteArrayContent(new byte[4], 4)));
+
+		assertNull(store.get("../abc"));
+		assertNull(store.get(null));
+		assertNull(later.get("abc"));
+		assertNull(store.get("abc"));
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(0, files.count());
+		}
+	}
+
+	@Test
+	public void staleTemporaryFilesAreDeletedByPurge() throws IOException {
+		Instant now = Instant.EPOCH.plus(Duration.ofHours(1));
+		SharedDirectoryDownloadStore store = new SharedDirectoryDownloadStore(directory, Duration.ofMinutes(1),
+			Clock.fixed(now, ZoneOffset.UTC));
+		Path stale = Files.createFile(directory.resolve("abc-1.tmp"));
+		Files.setLastModifiedTime(stale, FileTime.from(now.minus(Duration.ofMinutes(1))));
+		Path writing = Files.createFile(directory.resolve("def-2.tmp"));
+		Files.setLastModifiedTime(writing, FileTime.from(now.minusSeconds(1)));
+
+		store.purgeExpired();
+
+		assertFalse(Files.exists(stale));
+		assertTrue(Files.exists(writing));
+	}
+
+	@Test
+	public void downloadsWithInvalidMetadataAreNotServed() throws IOException {
+		DownloadStore store = new SharedDirectoryDownloadStore(directory, Duration.ofMinutes(1),
+			Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+		Files.write(directory.resolve("abc.data"), new byte[4]);
+		Files.write(directory.resolve("abc.properties"),
+			"mimeType=text/plain\nsize=4\nexpiresAt=60000\n".getBytes(StandardCharsets.ISO_8859_1));
+		Files.write(directory.resolve("def.data"), new byte[4]);
+		Files.write(directory.resolve("def.properties"),
+			"filename=a.txt\nsize=four\nexpiresAt=60000\n".getBytes(StandardCharsets.ISO_8859_1));
+
+		assertNull(store.get("abc"));
+		assertNull(store.get("def"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingFilenameIsRejected() {
+		new StoredDownload(null, null, new ByteArrayContent(new byte[4], 4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void filenameWithLineBreaksIsRejected() {
+		new StoredDownload("a.txt\r\nSet-Cookie: a=b", null, new ByteArrayContent(new byte[4], 4));
+	}
+
+	private static Path createDirectory() {
+		try {
+			return Files.createTempDirectory("ewopener-downloads");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightGroupTest {
+
+	private final ContentCacheKey key = new ContentCacheKey("reports", "report.txt", Collections.emptyMap(), null);
+
+	@Test
+	public void followersReceiveTheContentOfTheLeader() throws IOException {
+		SingleFlightGroup group = new SingleFlightGroup();
+		SingleFlightGroup.Ticket leader = group.join(key, 1024);
+		SingleFlightGroup.Ticket follower = group.join(key, 1024);
+		assertTrue(leader.isLeader());
+		assertFalse(follower.isLeader());
+
+		ByteArrayOutputStream leaderOut = new ByteArrayOutputStream();
+		OutputStream tee = leader.getFlight().tee(leaderOut);
+		tee.write("hello ".getBytes(StandardCharsets.UTF_8));
+		tee.write("world".getBytes(StandardCharsets.UTF_8));
+		group.complete(leader, null);
+
+		ByteArrayOutputStream followerOut = new ByteArrayOutputStream();
+		assertTrue(follower.getFlight().awaitStart());
+		follower.getFlight().writeTo(followerOut);
+		assertArrayEquals(leaderOut.toByteArray(), followerOut.toByteArray());
+		assertEquals(1, group.getGenerations());
+		assertEquals(1, group.getJoined());
+		assertEquals(0, group.getInProgress());
+	}
+
+	@Test
+	public void generationIsNotJoinableOverTheLimit() throws IOException {
+		SingleFlightGroup group = new SingleFlightGroup();
+		SingleFlightGroup.Ticket leader = group.join(key, 4);
+		leader.getFlight().tee(new ByteArrayOutputStream()).write(new byte[8]);
+
+		SingleFlightGroup.Ticket other = group.join(key, 4);
+		assertTrue(other.isLeader());
+		assertEquals(2, group.getGenerations());
+
+		group.complete(leader, null);
+		assertEquals(1, group.getInProgress());
+		group.complete(other, null);
+		assertEquals(0, group.getInProgress());
+	}
+
+	@Test
+	public void chunksAreReleasedOnceCopiedByEveryFollower() throws Exception {
+		SingleFlightGroup group = new SingleFlightGroup();
+		SingleFlightGroup.Ticket leader = group.join(key, 4);
+		SingleFlightGroup.Ticket follower = group.join(key, 4);
+		Flight flight = leader.getFlight();
+		OutputStream tee = flight.tee(new ByteArrayOutputStream());
+		tee.write(new byte[4]);
+		assertEquals("Content retained while the generation is joinable", 4, flight.getRetained());
+
+		ByteArrayOutputStream followerOut = new ByteArrayOutputStream();
+		CompletableFuture<Void> copy = CompletableFuture.runAsync(() -> {
+			try {
+				follower.getFlight().writeTo(followerOut);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		for (int i = 0; i < 10; i++) {
+			tee.write(new byte[4]);
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (flight.getRetained() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals("Copied chunks not released while the leader is writing", 0, flight.getRetained());
+		assertFalse(copy.isDone());
+
+		group.complete(leader, null);
+		copy.get(5, TimeUnit.SECONDS);
+		assertEquals(44, followerOut.size());
+		assertEquals(0, flight.getRetained());
+	}
+
+	@Test
+	public void followersFailWhenTheLeaderFails() throws IOException {
+		SingleFlightGroup group = new SingleFlightGroup();
+		SingleFlightGroup.Ticket leader = group.join(key, 1024);
+		SingleFlightGroup.Ticket follower = group.join(key, 1024);
+		leader.getFlight().tee(new ByteArrayOutputStream()).write(1);
+		group.complete(leader, new IOException("boom"));
+
+		assertTrue(follower.getFlight().awaitStart());
+		try {
+			follower.getFlight().writeTo(new ByteArrayOutputStream());
+			fail("Failure of the leader not propagated");
+		} catch (IOException expected) {
+			assertEquals("boom", expected.getCause().getMessage());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void followerThatNeverStartsIsDetached() throws IOException {
+		SingleFlightGroup group = new SingleFlightGroup(Duration.ofMillis(50));
+		SingleFlightGroup.Ticket leader = group.join(key, 4);
+		SingleFlightGroup.Ticket follower = group.join(key, 4);
+		Flight flight = leader.getFlight();
+		OutputStream tee = flight.tee(new ByteArrayOutputStream());
+		for (int i = 0; i < 4; i++) {
+			tee.write(new byte[4]);
+		}
+		assertEquals(0, flight.getRetained());
+		group.complete(leader, null);
+
+		try {
+			follower.getFlight().writeTo(new ByteArrayOutputStream());
+			fail("Detached follower should fail");
+		} catch (IOException expected) {
+			// expected
+		}
+		assertFalse(flight.hasFollowers());
+	}
+
+	@Test(timeout = 10000)
+	public void stalledFollowerDoesNotBlockTheLeader() throws Exception {
+		SingleFlightGroup group = new SingleFlightGroup(Duration.ofMillis(50));
+		SingleFlightGroup.Ticket leader = group.join(key, 4);
+		SingleFlightGroup.Ticket follower = group.join(key, 4);
+		Flight flight = leader.getFlight();
+		OutputStream tee = flight.tee(new ByteArrayOutputStream());
+		CountDownLatch stalled = new CountDownLatch(1);
+		CountDownLatch resume = new CountDownLatch(1);
+		CompletableFuture<Void> copy = CompletableFuture.runAsync(() -> {
+			try {
+				follower.getFlight().writeTo(new OutputStream() {
+					@Override
+					public void write(int b) {
+						write(new byte[]{(byte) b}, 0, 1);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) {
+						stalled.countDown();
+						try {
+							resume.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		tee.write(new byte[4]);
+		stalled.await();
+		for (int i = 0; i < 4; i++) {
+			tee.write(new byte[4]);
+		}
+		assertEquals(0, flight.getRetained());
+		group.complete(leader, null);
+
+		resume.countDown();
+		try {
+			copy.get(5, TimeUnit.SECONDS);
+			fail("Detached follower should fail");
+		} catch (ExecutionException expected) {
+			assertTrue(expected.getCause().getCause() instanceof IOException);
+		}
+	}
+
+	@Test
+	public void followersOfMissingContentSeeItNotFound() throws IOException {
+		SingleFlightGroup group = new SingleFlightGroup();
+		SingleFlightGroup.Ticket leader = group.join(key, 1024);
+		SingleFlightGroup.Ticket follower = group.join(key, 1024);
+		leader.getFlight().notFound();
+		group.complete(leader, null);
+
+		assertTrue(follower.getFlight().awaitStart());
+		assertTrue(follower.getFlight().isNotFound());
+	}
+}
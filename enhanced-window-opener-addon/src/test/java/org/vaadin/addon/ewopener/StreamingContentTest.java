@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.vaadin.server.DownloadStream;
+import com.vaadin.server.StreamResource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class StreamingContentTest {
+
+	@Test
+	public void textIsEncodedWithTheCharset() throws IOException {
+		EnhancedBrowserWindowOpener opener = new EnhancedBrowserWindowOpener()
+			.withStreamingContent("menu.txt", StandardCharsets.ISO_8859_1, writer -> writer.write("caff\u00e8"));
+		StreamResource resource = (StreamResource) opener.getResource();
+		assertEquals("text/plain; charset=ISO-8859-1", resource.getMIMEType());
+
+		DownloadStream stream = resource.getStream();
+		TestDownloads.Response response = new TestDownloads.Response();
+		stream.writeResponse(TestDownloads.request(), response.proxy());
+		assertArrayEquals("caff\u00e8".getBytes(StandardCharsets.ISO_8859_1), response.body.toByteArray());
+	}
+
+	@Test
+	public void textIsFlushedWhenTheWriterFlushesAndWhenItReturns() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ContentWriter.ofText(StandardCharsets.UTF_8, writer -> {
+			writer.write("first;");
+			writer.flush();
+			assertEquals("first;", new String(out.toByteArray(), StandardCharsets.UTF_8));
+			writer.write("second");
+		}).write(out);
+
+		assertEquals("first;second", new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void failureKeepsTheTextAlreadyFlushed() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		IOException failure = new IOException("Database not available");
+		try {
+			ContentWriter.ofText(StandardCharsets.UTF_8, writer -> {
+				writer.write("month;total\n");
+				writer.flush();
+				writer.write("2018-05;");
+				throw failure;
+			}).write(out);
+			fail("The failure of the writer should be propagated");
+		} catch (IOException e) {
+			assertSame(failure, e);
+		}
+		assertEquals("month;total\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void failedDownloadPropagatesTheFailureAfterThePartialText() {
+		IOException failure = new IOException("Database not available");
+		EnhancedBrowserWindowOpener opener = new EnhancedBrowserWindowOpener()
+			.withStreamingContent("report.csv", StandardCharsets.UTF_8, writer -> {
+				writer.write("month;total\n");
+				writer.flush();
+				throw failure;
+			});
+		DownloadStream stream = ((StreamResource) opener.getResource()).getStream();
+		TestDownloads.Response response = new TestDownloads.Response();
+		try {
+			stream.writeResponse(TestDownloads.request(), response.proxy());
+			fail("The failure of the writer should be propagated");
+		} catch (IOException e) {
+			assertSame(failure, e);
+		}
+		assertEquals("month;total\n", response.text());
+	}
+}
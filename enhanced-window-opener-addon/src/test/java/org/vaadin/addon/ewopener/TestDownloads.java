@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+
+/**
+ * Minimal download requests and responses, recording what is written to the response.
+ */
+final class TestDownloads {
+
+	private TestDownloads() {
+	}
+
+	static VaadinRequest request() {
+		return request(Collections.emptyMap(), Collections.emptyMap());
+	}
+
+	static VaadinRequest request(Map<String, String> headers, Map<String, String[]> parameters) {
+		return request(headers, parameters, new HashMap<>());
+	}
+
+	static VaadinRequest request(Map<String, String> headers, Map<String, String[]> parameters,
+								 Map<String, Object> attributes) {
+		return (VaadinRequest) Proxy.newProxyInstance(TestDownloads.class.getClassLoader(),
+			new Class<?>[]{VaadinRequest.class}, (proxy, method, args) -> {
+				switch (method.getName()) {
+					case "getMethod":
+						return "GET";
+					case "getHeader":
+						return headers.get(args[0]);
+					case "getHeaders":
+						return headers.containsKey(args[0])
+							? Collections.enumeration(Collections.singleton(headers.get(args[0])))
+							: Collections.emptyEnumeration();
+					case "getDateHeader":
+						return -1L;
+					case "getParameterMap":
+						return parameters;
+					case "getAttribute":
+						return attributes.get(args[0]);
+					case "setAttribute":
+						attributes.put((String) args[0], args[1]);
+						return null;
+					case "getParameter":
+						String[] values = parameters.get(args[0]);
+						return values == null ? null : values[0];
+					default:
+						return defaultValue(method.getReturnType());
+				}
+			});
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+	/**
+	 * A response recording status, headers and body.
+	 */
+	static final class Response {
+
+		final ByteArrayOutputStream body;
+		final Map<String, String> headers = new HashMap<>();
+		int status = 200;
+
+		Response() {
+			this(new ByteArrayOutputStream());
+		}
+
+		Response(ByteArrayOutputStream body) {
+			this.body = body;
+		}
+
+		VaadinResponse proxy() {
+			return (VaadinResponse) Proxy.newProxyInstance(TestDownloads.class.getClassLoader(),
+				new Class<?>[]{VaadinResponse.class}, (proxy, method, args) -> {
+					switch (method.getName()) {
+						case "setStatus":
+							status = (Integer) args[0];
+							return null;
+						case "sendError":
+							status = (Integer) args[0];
+							return null;
+						case "setHeader":
+							headers.put((String) args[0], (String) args[1]);
+							return null;
+						case "setContentType":
+							headers.put("Content-Type", (String) args[0]);
+							return null;
+						case "getOutputStream":
+							return body;
+						case "getWriter":
+							return new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+						default:
+							return defaultValue(method.getReturnType());
+					}
+				});
+		}
+
+		String text() {
+			return new String(body.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.benchmarks;
+
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinResponse;
+
+/**
+ * Minimal request and response implementations, to serve downloads without a servlet container.
+ */
+final class DownloadExchange {
+
+    private DownloadExchange() {
+    }
+
+    static VaadinRequest request(String acceptEncoding) {
+        return (VaadinRequest) Proxy.newProxyInstance(DownloadExchange.class.getClassLoader(),
+            new Class<?>[]{VaadinRequest.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getHeader":
+                        return "Accept-Encoding".equalsIgnoreCase((String) args[0]) ? acceptEncoding : null;
+                    case "getParameterMap":
+                        return Collections.emptyMap();
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+    }
+
+    static VaadinResponse response(OutputStream out) {
+        return (VaadinResponse) Proxy.newProxyInstance(DownloadExchange.class.getClassLoader(),
+            new Class<?>[]{VaadinResponse.class}, (proxy, method, args) -> {
+                if ("getOutputStream".equals(method.getName())) {
+                    return out;
+                }
+                return defaultValue(method.getReturnType());
+            });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * An output stream that discards bytes, counting them.
+     */
+    static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
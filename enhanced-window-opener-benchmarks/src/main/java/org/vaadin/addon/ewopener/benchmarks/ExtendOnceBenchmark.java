@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.server.BrowserWindowOpener;
+import com.vaadin.ui.Button;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.addon.ewopener.EnhancedBrowserWindowOpener;
+
+/**
+ * Cost of {@link EnhancedBrowserWindowOpener#extendOnce} on components with a growing number of extensions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtendOnceBenchmark {
+
+    @Param({"0", "10", "100"})
+    public int extensions;
+
+    private Button target;
+
+    @Setup
+    public void setup() {
+        target = new Button();
+        for (int i = 0; i < extensions; i++) {
+            new BrowserWindowOpener("http://localhost/" + i).extend(target);
+        }
+        // the opener is the last extension, so the whole list is scanned
+        EnhancedBrowserWindowOpener.extendOnce(target);
+    }
+
+    @Benchmark
+    public EnhancedBrowserWindowOpener extendOnce() {
+        return EnhancedBrowserWindowOpener.extendOnce(target);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.server.ClientMethodInvocation;
+import com.vaadin.server.JsonCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.addon.ewopener.EnhancedBrowserWindowOpener;
+import org.vaadin.addon.ewopener.shared.EnhancedBrowserWindowOpenerState;
+
+/**
+ * Server side costs of configuring an opener and of synchronizing its state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenerBenchmark {
+
+    private static final byte[] CONTENT = new byte[0];
+
+    private EnhancedBrowserWindowOpener opener;
+    private EnhancedBrowserWindowOpenerState state;
+
+    @Setup
+    public void setup() {
+        opener = new EnhancedBrowserWindowOpener()
+            .popupBlockerWorkaround(true)
+            .withParameter("month", "2018-05")
+            .withGeneratedContent("report.csv", () -> new ByteArrayInputStream(CONTENT));
+        state = new EnhancedBrowserWindowOpenerState();
+        state.popupBlockerWorkaround = true;
+        state.parameters.put("month", "2018-05");
+    }
+
+    @Benchmark
+    public EnhancedBrowserWindowOpener withGeneratedContent() {
+        return opener.withGeneratedContent("report.csv", () -> new ByteArrayInputStream(CONTENT));
+    }
+
+    /**
+     * Open commands are client RPC calls; they are retrieved as when writing the response,
+     * otherwise they would pile up on the detached opener.
+     */
+    @Benchmark
+    public List<ClientMethodInvocation> open() {
+        opener.open();
+        return opener.retrievePendingRpcCalls();
+    }
+
+    @Benchmark
+    public String encodeState() {
+        return JsonCodec.encode(state, null, EnhancedBrowserWindowOpenerState.class, null)
+            .getEncodedValue().toJson();
+    }
+}
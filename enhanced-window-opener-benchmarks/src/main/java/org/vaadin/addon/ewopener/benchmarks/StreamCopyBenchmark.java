@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.vaadin.server.StreamResource;
+import com.vaadin.server.VaadinRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.addon.ewopener.ContentWriter;
+import org.vaadin.addon.ewopener.GeneratedContentResource;
+import org.vaadin.addon.ewopener.GeneratedContentSettings;
+
+/**
+ * Throughput of generated content served end to end, from the generator to the response stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamCopyBenchmark {
+
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+
+    /**
+     * How the content is produced and sent: a stream source, a content writer,
+     * a buffered content writer or a content writer compressed with gzip.
+     */
+    @Param({"source", "writer", "buffered", "gzip"})
+    public String mode;
+
+    private GeneratedContentResource resource;
+    private VaadinRequest request;
+    private DownloadExchange.CountingOutputStream out;
+
+    @Setup
+    public void setup() {
+        byte[] content = new byte[size];
+        // compressible but not trivial content
+        Random random = new Random(42);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(16));
+        }
+        GeneratedContentSettings settings = new GeneratedContentSettings();
+        if ("source".equals(mode)) {
+            resource = new GeneratedContentResource("content.txt",
+                (StreamResource.StreamSource) () -> new ByteArrayInputStream(content), settings);
+        } else {
+            resource = new GeneratedContentResource("content.txt", (ContentWriter) o -> o.write(content), settings);
+        }
+        settings.setBuffering("buffered".equals(mode));
+        settings.setCompression("gzip".equals(mode));
+        request = DownloadExchange.request("gzip, deflate");
+        out = new DownloadExchange.CountingOutputStream();
+    }
+
+    @Benchmark
+    public long serve() throws IOException {
+        resource.getStream().writeResponse(request, DownloadExchange.response(out));
+        return out.getCount();
+    }
+}
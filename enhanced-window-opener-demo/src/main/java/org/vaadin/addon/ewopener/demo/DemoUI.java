@@ -17,13 +17,16 @@ package org.vaadin.addon.ewopener.demo;
 
 import javax.servlet.annotation.WebServlet;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Collection;
 import java.util.Scanner;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.vaadin.annotations.Push;
@@ -119,12 +122,19 @@ public class DemoUI extends UI {
                 })
             .doExtend(link2);
 
+        Link link3 = new Link("Click me", null);
+        new EnhancedBrowserWindowOpener()
+            .clientSide(true)
+            .withStreamingContent("people.csv", StandardCharsets.UTF_8, this::writeCsv)
+            .doExtend(link3);
 
-        EnhancedBrowserWindowOpener opener5 = new EnhancedBrowserWindowOpener(new ClassResource(DemoUI.class, "static.txt"));
+        EnhancedBrowserWindowOpener opener5 = new EnhancedBrowserWindowOpener();
         CssLayout hiddenComponent = new MCssLayout().withWidth("0").withHeight("0");
         opener5.extend(hiddenComponent);
-        CompletableFuture.runAsync(this::doSomeLongProcessing)
-            .thenRun(() -> getUI().access(opener5::open));
+        opener5.openAsync(() -> {
+            doSomeLongProcessing();
+            return new ClassResource(DemoUI.class, "static.txt");
+        }, ForkJoinPool.commonPool());
 
         table = new Table("Select items to download", new BeanItemContainer<>(DummyService.Person.class, DummyService.data()));
         table.setImmediate(true);
@@ -194,6 +204,8 @@ public class DemoUI extends UI {
                         .alignAll(Alignment.MIDDLE_CENTER).withWidthUndefined().withMargin(false),
                     new MVerticalLayout(readMarkdown("code6.md"), link2)
                         .alignAll(Alignment.MIDDLE_CENTER).withWidthUndefined().withMargin(false),
+                    new MVerticalLayout(readMarkdown("code9.md"), link3)
+                        .alignAll(Alignment.MIDDLE_CENTER).withWidthUndefined().withMargin(false),
                     new MVerticalLayout(readMarkdown("code3.md"), button4)
                         .alignAll(Alignment.MIDDLE_CENTER).withWidthUndefined().withMargin(false),
                     new MVerticalLayout(readMarkdown("code8.md"), popupButton)
@@ -235,6 +247,14 @@ public class DemoUI extends UI {
         return new ByteArrayInputStream(content.toString().getBytes());
     }
 
+    private void writeCsv(Writer writer) throws IOException {
+        writer.write("name,age");
+        for (DummyService.Person person : DummyService.data()) {
+            writer.write(System.lineSeparator());
+            writer.write(person.getName() + "," + person.getAge());
+        }
+    }
+
     private StreamResource.StreamSource makeStreamSource() {
         return this::generateContent;
     }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local load test: starts {@link LoadTestUI} in an embedded server and drives simulated clients through
+ * the click, state change and resource fetch cycle, reporting throughput, latency percentiles and heap usage.
+ *
+ * Configured through system properties, see {@link LoadTestConfig}.
+ */
+public final class LoadTest {
+
+    private static volatile LoadTestConfig config;
+    private static volatile ExecutorService generators;
+    private static volatile byte[] content;
+
+    private LoadTest() {
+    }
+
+    static LoadTestConfig config() {
+        return config;
+    }
+
+    static ExecutorService generators() {
+        return generators;
+    }
+
+    static byte[] content() {
+        return content;
+    }
+
+    public static void main(String[] args) throws Exception {
+        config = LoadTestConfig.fromSystemProperties();
+        content = new byte[config.contentSize];
+        new Random(42).nextBytes(content);
+        if (config.executorThreads > 0) {
+            generators = Executors.newFixedThreadPool(config.executorThreads);
+        }
+        // keep alive connections for every client
+        System.setProperty("http.maxConnections", Integer.toString(Math.max(5, config.clients)));
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        LoadTestServer server = new LoadTestServer(config);
+        String baseUrl = server.start();
+        System.gc();
+        long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+        AtomicLong peakHeap = new AtomicLong(baselineHeap);
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+            0, 200, TimeUnit.MILLISECONDS);
+
+        System.out.println("Load test on " + baseUrl + ": " + config);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(config.warmupSeconds);
+        long deadline = measureFrom + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+        List<SimulatedClient> clients = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < config.clients; i++) {
+            SimulatedClient client = new SimulatedClient(baseUrl, measureFrom, deadline);
+            Thread thread = new Thread(client, "client-" + i);
+            clients.add(client);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        sampler.shutdownNow();
+        System.gc();
+        long retainedHeap = memory.getHeapMemoryUsage().getUsed();
+
+        report(clients, peakHeap.get(), baselineHeap, retainedHeap);
+
+        server.stop();
+        if (generators != null) {
+            generators.shutdownNow();
+        }
+    }
+
+    private static void report(List<SimulatedClient> clients, long peakHeap, long baselineHeap, long retainedHeap) {
+        Samples clicks = new Samples();
+        Samples downloads = new Samples();
+        Samples cycles = new Samples();
+        long bytes = 0;
+        int failures = 0;
+        for (SimulatedClient client : clients) {
+            clicks.addAll(client.clickLatencies);
+            downloads.addAll(client.downloadLatencies);
+            cycles.addAll(client.cycleLatencies);
+            bytes += client.bytes;
+            failures += client.failures;
+        }
+        double seconds = config.durationSeconds;
+        System.out.printf("Completed downloads: %d (%.1f/s), failures: %d, throughput: %.1f MiB/s%n",
+            cycles.size(), cycles.size() / seconds, failures, bytes / seconds / (1024 * 1024));
+        System.out.println("Latency (ms)        p50       p90       p99     p99.9       max");
+        print("click -> state", clicks);
+        print("resource fetch", downloads);
+        print("full cycle", cycles);
+        System.out.printf("Heap (MiB): baseline %.1f, peak %.1f, retained after GC %.1f%n",
+            mib(baselineHeap), mib(peakHeap), mib(retainedHeap));
+    }
+
+    private static void print(String name, Samples samples) {
+        System.out.printf("%-15s %9.1f %9.1f %9.1f %9.1f %9.1f%n", name,
+            samples.percentileMillis(50), samples.percentileMillis(90), samples.percentileMillis(99),
+            samples.percentileMillis(99.9), samples.percentileMillis(100));
+    }
+
+    private static double mib(long bytes) {
+        return bytes / (1024d * 1024d);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.loadtest;
+
+/**
+ * Load test configuration, read from system properties.
+ *
+ * <ul>
+ * <li>{@code loadtest.clients}: number of simulated clients, defaults to 20</li>
+ * <li>{@code loadtest.duration}: duration of the test in seconds, defaults to 30</li>
+ * <li>{@code loadtest.warmup}: seconds of warm up excluded from the results, defaults to 5</li>
+ * <li>{@code loadtest.size}: bytes of generated content, defaults to 256 KiB</li>
+ * <li>{@code loadtest.delay}: milliseconds spent by the generator before producing content, defaults to 50</li>
+ * <li>{@code loadtest.executor}: threads of the generator executor, 0 for blocking mode, defaults to 0</li>
+ * <li>{@code loadtest.port}: port of the embedded server, 0 for a random port, defaults to 0</li>
+ * </ul>
+ */
+final class LoadTestConfig {
+
+    final int clients;
+    final int durationSeconds;
+    final int warmupSeconds;
+    final int contentSize;
+    final int generationDelayMillis;
+    final int executorThreads;
+    final int port;
+
+    private LoadTestConfig(int clients, int durationSeconds, int warmupSeconds, int contentSize,
+                           int generationDelayMillis, int executorThreads, int port) {
+        this.clients = clients;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.contentSize = contentSize;
+        this.generationDelayMillis = generationDelayMillis;
+        this.executorThreads = executorThreads;
+        this.port = port;
+    }
+
+    static LoadTestConfig fromSystemProperties() {
+        return new LoadTestConfig(
+            Integer.getInteger("loadtest.clients", 20),
+            Integer.getInteger("loadtest.duration", 30),
+            Integer.getInteger("loadtest.warmup", 5),
+            Integer.getInteger("loadtest.size", 256 * 1024),
+            Integer.getInteger("loadtest.delay", 50),
+            Integer.getInteger("loadtest.executor", 0),
+            Integer.getInteger("loadtest.port", 0));
+    }
+
+    @Override
+    public String toString() {
+        return "clients=" + clients + ", duration=" + durationSeconds + "s, warmup=" + warmupSeconds
+            + "s, size=" + contentSize + " bytes, delay=" + generationDelayMillis + "ms, "
+            + (executorThreads > 0 ? "executor threads=" + executorThreads : "blocking mode");
+    }
+}
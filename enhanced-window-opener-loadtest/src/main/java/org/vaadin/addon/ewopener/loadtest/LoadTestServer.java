@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.loadtest;
+
+import com.vaadin.server.VaadinServlet;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Embedded Jetty server running {@link LoadTestUI}, bound to the loopback interface.
+ */
+final class LoadTestServer {
+
+    private final Server server;
+
+    LoadTestServer(LoadTestConfig config) {
+        server = new Server(new QueuedThreadPool(Math.max(200, config.clients * 2 + 20)));
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("localhost");
+        connector.setPort(config.port);
+        server.addConnector(connector);
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        ServletHolder holder = new ServletHolder(VaadinServlet.class);
+        holder.setInitParameter("UI", LoadTestUI.class.getName());
+        holder.setInitParameter("productionMode", "true");
+        // simulated clients do not track security keys and sync ids
+        holder.setInitParameter("disable-xsrf-protection", "true");
+        holder.setInitParameter("syncIdCheck", "false");
+        holder.setAsyncSupported(true);
+        context.addServlet(holder, "/*");
+        server.setHandler(context);
+    }
+
+    String start() throws Exception {
+        server.start();
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return "http://localhost:" + port;
+    }
+
+    void stop() throws Exception {
+        server.stop();
+    }
+}
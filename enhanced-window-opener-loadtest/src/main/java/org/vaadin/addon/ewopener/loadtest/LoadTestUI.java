@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.UI;
+import org.vaadin.addon.ewopener.EnhancedBrowserWindowOpener;
+
+/**
+ * Minimal UI with a button that opens generated content, driven by the simulated clients.
+ */
+public class LoadTestUI extends UI {
+
+    static final String BUTTON_ID = "download";
+
+    @Override
+    protected void init(VaadinRequest request) {
+        Button button = new Button("Download");
+        button.setId(BUTTON_ID);
+        EnhancedBrowserWindowOpener opener = new EnhancedBrowserWindowOpener()
+            .withGeneratedContent("report.csv", LoadTestUI::generate)
+            .doExtend(button);
+        if (LoadTest.generators() != null) {
+            opener.withGeneratorExecutor(LoadTest.generators());
+        }
+        button.addClickListener(opener::open);
+        setContent(button);
+    }
+
+    private static InputStream generate() {
+        try {
+            // simulates the time spent querying data
+            Thread.sleep(LoadTest.config().generationDelayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while generating content"));
+        }
+        return new ByteArrayInputStream(LoadTest.content());
+    }
+}
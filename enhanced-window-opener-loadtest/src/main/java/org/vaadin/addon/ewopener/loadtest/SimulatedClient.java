@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016-2018 Marco Collovati (mcollovati@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.addon.ewopener.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonType;
+import elemental.json.JsonValue;
+
+/**
+ * A client that speaks the Vaadin UIDL protocol, repeatedly clicking the download button of
+ * {@link LoadTestUI} and fetching the generated content opened by the server.
+ *
+ * Each client has its own HTTP session and UI.
+ */
+final class SimulatedClient implements Runnable {
+
+    private static final String UIDL_PREFIX = "for(;;);";
+    private static final String CLICK_RPC = "[\"%s\",\"com.vaadin.shared.ui.button.ButtonServerRpc\",\"click\","
+        + "[{\"button\":\"LEFT\",\"clientX\":10,\"clientY\":10,\"altKey\":false,\"ctrlKey\":false,"
+        + "\"metaKey\":false,\"shiftKey\":false,\"type\":1,\"relativeX\":5,\"relativeY\":5}]]";
+
+    private final String baseUrl;
+    private final long measureFromNanos;
+    private final long deadlineNanos;
+
+    final Samples clickLatencies = new Samples();
+    final Samples downloadLatencies = new Samples();
+    final Samples cycleLatencies = new Samples();
+    long bytes;
+    int failures;
+
+    private String sessionCookie;
+    private int uiId;
+    private int clientId;
+    private long syncId;
+    private String buttonId;
+    private String openerId;
+    private String downloadUrl;
+
+    SimulatedClient(String baseUrl, long measureFromNanos, long deadlineNanos) {
+        this.baseUrl = baseUrl;
+        this.measureFromNanos = measureFromNanos;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() < deadlineNanos) {
+            try {
+                if (buttonId == null) {
+                    init();
+                }
+                cycle();
+            } catch (IOException | RuntimeException e) {
+                failures++;
+                // start again with a new session
+                sessionCookie = null;
+                buttonId = null;
+            }
+        }
+    }
+
+    private void init() throws IOException {
+        String query = "v-browserDetails=1&theme=valo&v-appId=ROOT-2521314&v-sh=900&v-sw=1440&v-cw=1440&v-ch=900"
+            + "&v-curdate=" + System.currentTimeMillis() + "&v-tzo=0&v-dstd=0&v-rtzo=0&v-dston=false&v-tzid=UTC"
+            + "&v-vw=1440&v-vh=900&v-wn=ROOT-2521314-0." + System.nanoTime()
+            + "&v-loc=" + URLEncoder.encode(baseUrl + "/", "UTF-8");
+        JsonObject response = Json.parse(post("/?" + query, "application/x-www-form-urlencoded", ""));
+        uiId = (int) response.getNumber("v-uiId");
+        JsonObject uidl = Json.parse(response.getString("uidl"));
+        clientId = 0;
+        syncId = uidl.hasKey("syncId") ? (long) uidl.getNumber("syncId") : -1;
+        JsonObject state = uidl.getObject("state");
+        buttonId = null;
+        downloadUrl = null;
+        for (String connectorId : state.keys()) {
+            JsonObject connectorState = state.getObject(connectorId);
+            if (connectorState.hasKey("id") && LoadTestUI.BUTTON_ID.equals(connectorState.getString("id"))) {
+                buttonId = connectorId;
+            }
+            String url = resourceUrl(connectorState);
+            if (url != null) {
+                openerId = connectorId;
+                downloadUrl = url;
+            }
+        }
+        if (buttonId == null || downloadUrl == null) {
+            throw new IOException("Button or opener not found in initial UIDL");
+        }
+    }
+
+    private void cycle() throws IOException {
+        long start = System.nanoTime();
+        String body = "{\"csrfToken\":\"init\",\"rpc\":[" + String.format(CLICK_RPC, buttonId) + "],"
+            + "\"syncId\":" + syncId + ",\"clientId\":" + clientId++ + "}";
+        JsonObject uidl = parseUidl(post("/UIDL/?v-uiId=" + uiId, "application/json; charset=UTF-8", body));
+        if (uidl.hasKey("syncId")) {
+            syncId = (long) uidl.getNumber("syncId");
+        }
+        if (!hasOpenCommand(uidl)) {
+            throw new IOException("Open command not received after click");
+        }
+        JsonObject state = uidl.hasKey("state") ? uidl.getObject("state") : Json.createObject();
+        String url = state.hasKey(openerId) ? resourceUrl(state.getObject(openerId)) : null;
+        if (url != null) {
+            downloadUrl = url;
+        }
+        long clicked = System.nanoTime();
+        long read = get(downloadUrl);
+        long end = System.nanoTime();
+        if (start >= measureFromNanos && end <= deadlineNanos) {
+            clickLatencies.add(clicked - start);
+            downloadLatencies.add(end - clicked);
+            cycleLatencies.add(end - start);
+            bytes += read;
+        }
+    }
+
+    private boolean hasOpenCommand(JsonObject uidl) {
+        if (!uidl.hasKey("rpc")) {
+            return false;
+        }
+        JsonArray calls = uidl.getArray("rpc");
+        for (int i = 0; i < calls.length(); i++) {
+            JsonArray call = calls.getArray(i);
+            if (openerId.equals(call.getString(0)) && "openResource".equals(call.getString(2))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String resourceUrl(JsonObject connectorState) {
+        if (!connectorState.hasKey("resources")) {
+            return null;
+        }
+        JsonObject resources = connectorState.getObject("resources");
+        if (!resources.hasKey("url") || resources.get("url").getType() != JsonType.OBJECT) {
+            return null;
+        }
+        String url = resources.getObject("url").getString("uRL");
+        return url != null && url.startsWith("app://") ? baseUrl + "/" + url.substring("app://".length()) : null;
+    }
+
+    private static JsonObject parseUidl(String response) throws IOException {
+        String json = response.startsWith(UIDL_PREFIX) ? response.substring(UIDL_PREFIX.length()) : response;
+        JsonValue value = Json.parse(json);
+        if (value.getType() == JsonType.ARRAY) {
+            value = ((JsonArray) value).get(0);
+        }
+        JsonObject uidl = (JsonObject) value;
+        if (uidl.hasKey("meta") && uidl.getObject("meta").hasKey("appError")) {
+            throw new IOException("Application error: " + uidl.getObject("meta").toJson());
+        }
+        return uidl;
+    }
+
+    private String post(String path, String contentType, String body) throws IOException {
+        HttpURLConnection connection = open(baseUrl + path);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        read(connection, response);
+        return new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private long get(String url) throws IOException {
+        return read(open(url), null);
+    }
+
+    private HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setInstanceFollowRedirects(false);
+        if (sessionCookie != null) {
+            connection.setRequestProperty("Cookie", sessionCookie);
+        }
+        return connection;
+    }
+
+    private long read(HttpURLConnection connection, OutputStream sink) throws IOException {
+        int status = connection.getResponseCode();
+        rememberSession(connection.getHeaderFields());
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unexpected status " + status + " for " + connection.getURL());
+        }
+        long total = 0;
+        byte[] buffer = new byte[32 * 1024];
+        try (InputStream in = connection.getInputStream()) {
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                total += count;
+                if (sink != null) {
+                    sink.write(buffer, 0, count);
+                }
+            }
+        }
+        return total;
+    }
+
+    private void rememberSession(Map<String, List<String>> headers) {
+        List<String> cookies = headers.get("Set-Cookie");
+        if (cookies != null) {
+            for (String cookie : cookies) {
+                if (cookie.startsWith("JSESSIONID=")) {
+                    sessionCookie = cookie.split(";", 2)[0];
+                }
+            }
+        }
+    }
+}